@@ -0,0 +1,69 @@
+-- Search latency on a 1M-book dataset.
+-- Run against an empty scratch database migrated by Flyway (start the application once against it):
+--   psql -d book_shelf_bench -f benchmark/search-1m.sql
+-- Every query is run with EXPLAIN (ANALYZE, BUFFERS); compare the Execution Time lines,
+-- and the LIKE baselines against the indexed full-text and trigram queries.
+
+\timing on
+
+INSERT INTO Book (title, author, publication_year, isbn, status)
+SELECT (ARRAY['war', 'peace', 'night', 'garden', 'river', 'silent', 'winter', 'empire', 'shadow', 'glass'])[1 + i % 10]
+           || ' ' || md5(i::text) || ' ' ||
+       (ARRAY['chronicles', 'stories', 'letters', 'journey', 'secrets'])[1 + (i / 10) % 5],
+       'Author ' || (i % 50000),
+       1900 + i % 125,
+       lpad(i::text, 13, '0'),
+       (ARRAY['AVAILABLE', 'READ', 'IN_PROGRESS'])[1 + i % 3]
+FROM generate_series(1, 1000000) AS i;
+
+INSERT INTO Review (content, rating, book_id)
+SELECT (ARRAY['a moving story about war', 'slow but rewarding', 'the garden scenes are beautiful',
+              'could not put it down', 'too long, weak ending'])[1 + i % 5],
+       1 + i % 5,
+       b.id
+FROM generate_series(1, 2000000) AS i
+JOIN Book b ON b.isbn = lpad((1 + (i * 7919) % 1000000)::text, 13, '0');
+
+ANALYZE Book;
+ANALYZE Review;
+
+-- Baseline: the substring finders this endpoint replaces.
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT id FROM Book WHERE lower(author) LIKE '%author 4242%';
+
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT id FROM Book WHERE title LIKE '%winter%' LIMIT 21;
+
+-- First page of a full-text search (BookRepository.searchFullText).
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT m.book_id AS id, ROUND(CAST(SUM(m.rank) AS numeric), 6) AS score
+FROM (SELECT b.id AS book_id, ts_rank(b.search_vector, websearch_to_tsquery('simple', 'winter letters')) AS rank
+      FROM Book b WHERE b.search_vector @@ websearch_to_tsquery('simple', 'winter letters')
+      UNION ALL
+      SELECT r.book_id, 0.5 * ts_rank(r.search_vector, websearch_to_tsquery('simple', 'winter letters'))
+      FROM Review r WHERE r.search_vector @@ websearch_to_tsquery('simple', 'winter letters')) m
+GROUP BY m.book_id
+HAVING ROUND(CAST(SUM(m.rank) AS numeric), 6) < 1000000000
+ORDER BY score DESC, id DESC
+LIMIT 21;
+
+-- Selective full-text search hitting a single author.
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT m.book_id AS id, ROUND(CAST(SUM(m.rank) AS numeric), 6) AS score
+FROM (SELECT b.id AS book_id, ts_rank(b.search_vector, websearch_to_tsquery('simple', '"author 4242"')) AS rank
+      FROM Book b WHERE b.search_vector @@ websearch_to_tsquery('simple', '"author 4242"')
+      UNION ALL
+      SELECT r.book_id, 0.5 * ts_rank(r.search_vector, websearch_to_tsquery('simple', '"author 4242"'))
+      FROM Review r WHERE r.search_vector @@ websearch_to_tsquery('simple', '"author 4242"')) m
+GROUP BY m.book_id
+HAVING ROUND(CAST(SUM(m.rank) AS numeric), 6) < 1000000000
+ORDER BY score DESC, id DESC
+LIMIT 21;
+
+-- Trigram fallback for a word fragment (BookRepository.searchTrigram).
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT b.id AS id, ROUND(CAST(word_similarity('chronic', b.title || ' ' || b.author) AS numeric), 6) AS score
+FROM Book b
+WHERE 'chronic' <% (b.title || ' ' || b.author)
+ORDER BY score DESC, id DESC
+LIMIT 21;
@@ -0,0 +1,27 @@
+#!/usr/bin/env bash
+# Throughput and p99 of platform-thread vs virtual-thread request handling at 1k and 10k
+# concurrent clients, using the load test harness. Needs JDK 21 and Docker.
+# Every run seeds its own database; BOOKS/REVIEWS keep that short.
+# To look for pinning, add -Djdk.tracePinnedThreads=short to the exec commandlineArgs in pom.xml.
+set -euo pipefail
+
+BOOKS=${BOOKS:-200000}
+REVIEWS=${REVIEWS:-4000000}
+DURATION=${DURATION:-PT2M}
+OUT=target/virtual-threads
+mkdir -p "$OUT"
+
+for clients in 1000 10000; do
+  for virtual in false true; do
+    ./mvnw -q -Pjava21,loadtest test-compile exec:exec \
+      -Dloadtest.books="$BOOKS" -Dloadtest.reviews="$REVIEWS" -Dloadtest.duration="$DURATION" \
+      -Dloadtest.clients="$clients" -Dloadtest.virtual-threads="$virtual" \
+      -Dloadtest.report="$OUT/clients-$clients-virtual-$virtual.json"
+  done
+done
+
+printf 'run\tthroughput/s\tp99 ms\terrors\n'
+for report in "$OUT"/*.json; do
+  jq -r --arg run "$(basename "$report" .json)" \
+    '[$run, .total.throughputPerSecond, .total.latencyMs.p99, .total.errors] | @tsv' "$report"
+done
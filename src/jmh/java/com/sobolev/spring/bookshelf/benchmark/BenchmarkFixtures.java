@@ -0,0 +1,76 @@
+package com.sobolev.spring.bookshelf.benchmark;
+
+import com.sobolev.spring.bookshelf.model.Book;
+import com.sobolev.spring.bookshelf.model.BookStatus;
+import com.sobolev.spring.bookshelf.model.Genre;
+import com.sobolev.spring.bookshelf.model.Review;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Detached entities shaped like the ones the services map: a handful of genres per book,
+ * rating aggregates filled in, and reviews that point back to their book.
+ */
+final class BenchmarkFixtures {
+
+    static final int GENRES = 20;
+    static final int GENRES_PER_BOOK = 3;
+
+    private BenchmarkFixtures() {
+    }
+
+    static List<Genre> genres() {
+        List<Genre> genres = new ArrayList<>(GENRES);
+        for (long id = 1; id <= GENRES; id++) {
+            Genre genre = new Genre();
+            genre.setId(id);
+            genre.setName("Genre " + id);
+            genres.add(genre);
+        }
+        return genres;
+    }
+
+    static Map<Long, String> genreNames(List<Genre> genres) {
+        Map<Long, String> names = new LinkedHashMap<>();
+        genres.forEach(genre -> names.put(genre.getId(), genre.getName()));
+        return names;
+    }
+
+    static Book book(long id, List<Genre> genres) {
+        Book book = new Book();
+        book.setId(id);
+        book.setTitle("The Book Number " + id);
+        book.setAuthor("Author " + id % 1000);
+        book.setIsbn(String.format("%013d", id));
+        book.setPublicationYear(1900 + (int) (id % 120));
+        book.setStatus(BookStatus.values()[(int) (id % BookStatus.values().length)]);
+        book.setReviewCount((int) (id % 50));
+        book.setRatingSum(book.getReviewCount() * (1 + id % 5));
+        for (int i = 0; i < GENRES_PER_BOOK; i++) {
+            book.getGenres().add(genres.get((int) ((id + i) % genres.size())));
+        }
+        return book;
+    }
+
+    static List<Book> books(int count, List<Genre> genres) {
+        List<Book> books = new ArrayList<>(count);
+        for (long id = 1; id <= count; id++) {
+            books.add(book(id, genres));
+        }
+        return books;
+    }
+
+    static Review review(long id, Book book) {
+        Review review = new Review();
+        review.setId(id);
+        review.setRating(1 + (int) (id % 5));
+        review.setContent("A review of " + book.getTitle() + " that is about as long as most of them are.");
+        review.setCreatedAt(LocalDateTime.of(2024, 1, 1, 12, 0).plusMinutes(id));
+        review.setBook(book);
+        return review;
+    }
+}
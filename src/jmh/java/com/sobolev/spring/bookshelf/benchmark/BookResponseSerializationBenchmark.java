@@ -0,0 +1,68 @@
+package com.sobolev.spring.bookshelf.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.sobolev.spring.bookshelf.dto.response.BookResponse;
+import com.sobolev.spring.bookshelf.model.Book;
+import com.sobolev.spring.bookshelf.rating.PendingRatings;
+import com.sobolev.spring.bookshelf.util.BookMapper;
+import com.sobolev.spring.bookshelf.util.GenreMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Jackson serialization of a list of BookResponse, as written for a page (10),
+ * an oversized listing (1k) and a full export buffered in memory (100k).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BookResponseSerializationBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int size;
+
+    private ObjectWriter writer;
+    private List<BookResponse> books;
+
+    @Setup
+    public void setUp() {
+        writer = JsonMapper.builder().findAndAddModules().build()
+                .writerFor(new TypeReference<List<BookResponse>>() { });
+        BookMapper bookMapper = new BookMapper(new GenreMapper(), new PendingRatings());
+        List<Book> entities = BenchmarkFixtures.books(size, BenchmarkFixtures.genres());
+        books = entities.stream().map(bookMapper::toResponse).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public byte[] writeToBytes() throws IOException {
+        return writer.writeValueAsBytes(books);
+    }
+
+    /**
+     * What a response body write costs without the growing byte[] of {@link #writeToBytes()}.
+     */
+    @Benchmark
+    public void writeToStream() throws IOException {
+        writer.writeValue(OutputStream.nullOutputStream(), books);
+    }
+}
@@ -0,0 +1,80 @@
+package com.sobolev.spring.bookshelf.benchmark;
+
+import com.sobolev.spring.bookshelf.dto.response.BookResponse;
+import com.sobolev.spring.bookshelf.dto.response.GenreResponse;
+import com.sobolev.spring.bookshelf.dto.response.ReviewResponse;
+import com.sobolev.spring.bookshelf.model.Book;
+import com.sobolev.spring.bookshelf.model.Genre;
+import com.sobolev.spring.bookshelf.model.Review;
+import com.sobolev.spring.bookshelf.rating.PendingRatings;
+import com.sobolev.spring.bookshelf.util.BookMapper;
+import com.sobolev.spring.bookshelf.util.GenreMapper;
+import com.sobolev.spring.bookshelf.util.ReviewMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity to response mapping for a single object. ReviewMapper maps only the id and title of the review's book.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MapperBenchmark {
+
+    private GenreMapper genreMapper;
+    private BookMapper bookMapper;
+    private ReviewMapper reviewMapper;
+
+    private Genre genre;
+    private Book book;
+    private Map<Long, String> genreNames;
+    private Review review;
+
+    @Setup
+    public void setUp() {
+        genreMapper = new GenreMapper();
+        bookMapper = new BookMapper(genreMapper, new PendingRatings());
+        reviewMapper = new ReviewMapper();
+
+        List<Genre> genres = BenchmarkFixtures.genres();
+        genre = genres.get(0);
+        genreNames = BenchmarkFixtures.genreNames(genres);
+        book = BenchmarkFixtures.book(42, genres);
+        review = BenchmarkFixtures.review(7, book);
+    }
+
+    @Benchmark
+    public GenreResponse genreToResponse() {
+        return genreMapper.toResponse(genre);
+    }
+
+    @Benchmark
+    public BookResponse bookToResponse() {
+        return bookMapper.toResponse(book);
+    }
+
+    @Benchmark
+    public BookResponse bookToResponseWithGenreNames() {
+        return bookMapper.toResponse(book, genreNames);
+    }
+
+    @Benchmark
+    public ReviewResponse reviewToResponse() {
+        return reviewMapper.toResponse(review);
+    }
+}
@@ -0,0 +1,81 @@
+package com.sobolev.spring.bookshelf.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Fills an empty, migrated database with a synthetic catalog in plain SQL.
+ * Review counts per book follow a Zipf distribution with exponent 1: the book of popularity rank k
+ * gets reviews in proportion to 1/k, drawn as {@code floor(books ^ random())}. Ranks follow book ids,
+ * and loadtest_book_rank keeps the mapping so the workload can draw the same distribution.
+ */
+@Slf4j
+class CatalogSeeder {
+
+    private static final int CHUNK = 1_000_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LoadTestSettings settings;
+
+    CatalogSeeder(JdbcTemplate jdbcTemplate, LoadTestSettings settings) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.settings = settings;
+    }
+
+    void seed() {
+        log.info("Seeding {} genres, {} books, {} reviews", settings.genres(), settings.books(), settings.reviews());
+        jdbcTemplate.execute("INSERT INTO genre (name) " +
+                "SELECT 'Genre ' || g FROM generate_series(1, " + settings.genres() + ") AS g");
+
+        for (long from = 1; from <= settings.books(); from += CHUNK) {
+            long to = Math.min(settings.books(), from + CHUNK - 1);
+            jdbcTemplate.execute("INSERT INTO book (title, author, publication_year, isbn, status) " +
+                    "SELECT (ARRAY['The', 'A', 'Silent', 'Last', 'Winter', 'Hidden', 'Broken', 'Golden'])[1 + i % 8] || ' ' || " +
+                    "       (ARRAY['River', 'Garden', 'Empire', 'Letters', 'Journey', 'Shadow', 'Night', 'Crown'])[1 + (i / 8) % 8] || ' ' || i, " +
+                    "       'Author ' || (i % " + settings.authors() + "), " +
+                    "       1900 + i % 124, lpad(i::text, 13, '0'), " +
+                    "       (ARRAY['AVAILABLE', 'READ', 'IN_PROGRESS'])[1 + i % 3] " +
+                    "FROM generate_series(" + from + ", " + to + ") AS i");
+            log.info("Seeded books up to {}", to);
+        }
+
+        jdbcTemplate.execute("CREATE UNLOGGED TABLE loadtest_book_rank AS " +
+                "SELECT row_number() OVER (ORDER BY id) AS rank, id FROM book");
+        jdbcTemplate.execute("CREATE UNIQUE INDEX ON loadtest_book_rank (rank)");
+
+        // one to three distinct genres per book
+        jdbcTemplate.execute("INSERT INTO book_genre (book_id, genre_id) " +
+                "SELECT r.id, (SELECT array_agg(id ORDER BY id) FROM genre)[1 + (r.rank + j * 7) % " + settings.genres() + "] " +
+                "FROM loadtest_book_rank r, generate_series(0, (r.rank % 3)::int) AS j " +
+                "ON CONFLICT DO NOTHING");
+
+        for (long from = 1; from <= settings.reviews(); from += CHUNK) {
+            long to = Math.min(settings.reviews(), from + CHUNK - 1);
+            // OFFSET 0 keeps the volatile rank draw in the subquery, evaluated once per review
+            jdbcTemplate.execute("INSERT INTO review (content, rating, created_at, book_id) " +
+                    "SELECT (ARRAY['Loved it.', 'Slow start, strong ending.', 'Not for me.', " +
+                    "              'Read it twice already.', 'The characters stay with you.'])[1 + s.i % 5], " +
+                    "       1 + floor(random() * 5)::int, now() - s.i * interval '1 second', r.id " +
+                    "FROM (SELECT i, GREATEST(1, floor(exp(random() * ln(" + settings.books() + "))))::bigint AS rank " +
+                    "      FROM generate_series(" + from + ", " + to + ") AS i OFFSET 0) s " +
+                    "JOIN loadtest_book_rank r ON r.rank = s.rank");
+            log.info("Seeded reviews up to {}", to);
+        }
+
+        jdbcTemplate.execute("UPDATE book b SET review_count = s.review_count, rating_sum = s.rating_sum " +
+                "FROM (SELECT book_id, COUNT(*) AS review_count, SUM(rating) AS rating_sum FROM review GROUP BY book_id) s " +
+                "WHERE b.id = s.book_id");
+        jdbcTemplate.execute("VACUUM ANALYZE");
+        log.info("Seeding done");
+    }
+
+    long[] bookIdsByRank() {
+        return jdbcTemplate.queryForList("SELECT id FROM loadtest_book_rank ORDER BY rank", Long.class)
+                .stream().mapToLong(Long::longValue).toArray();
+    }
+
+    long[] genreIds() {
+        return jdbcTemplate.queryForList("SELECT id FROM genre ORDER BY id", Long.class)
+                .stream().mapToLong(Long::longValue).toArray();
+    }
+}
@@ -0,0 +1,58 @@
+package com.sobolev.spring.bookshelf.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and error count of one endpoint, recorded only during the measured phase.
+ */
+class EndpointStats {
+
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Histogram latencies = new ConcurrentHistogram(MAX_LATENCY_NANOS, 3);
+    private final LongAdder errors = new LongAdder();
+
+    void record(long latencyNanos, boolean success) {
+        latencies.recordValue(Math.min(latencyNanos, MAX_LATENCY_NANOS));
+        if (!success) {
+            errors.increment();
+        }
+    }
+
+    Histogram latencies() {
+        return latencies;
+    }
+
+    Map<String, Object> toReport(double seconds) {
+        return toReport(latencies, errors.sum(), seconds);
+    }
+
+    static Map<String, Object> toReport(Histogram latencies, long errors, double seconds) {
+        Map<String, Object> latencyMs = new LinkedHashMap<>();
+        latencyMs.put("p50", millis(latencies.getValueAtPercentile(50)));
+        latencyMs.put("p99", millis(latencies.getValueAtPercentile(99)));
+        latencyMs.put("p999", millis(latencies.getValueAtPercentile(99.9)));
+        latencyMs.put("max", millis(latencies.getMaxValue()));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("requests", latencies.getTotalCount());
+        report.put("errors", errors);
+        report.put("throughputPerSecond", Math.round(latencies.getTotalCount() / seconds * 10) / 10.0);
+        report.put("latencyMs", latencyMs);
+        return report;
+    }
+
+    long errors() {
+        return errors.sum();
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+}
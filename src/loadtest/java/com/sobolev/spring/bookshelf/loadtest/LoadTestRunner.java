@@ -0,0 +1,152 @@
+package com.sobolev.spring.bookshelf.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sobolev.spring.bookshelf.BookShelfApplication;
+import com.sobolev.spring.bookshelf.service.BookRankingService;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts PostgreSQL in a container and the application against it, seeds a synthetic catalog,
+ * drives the REST endpoints from {@code loadtest.clients} concurrent closed-loop clients and writes
+ * p50/p99/p999 latency and throughput per endpoint to a JSON report.
+ * <p>
+ * Clients and server share the machine, and each client waits for its response before sending the next
+ * request, so latencies under overload are understated; compare runs made on the same hardware.
+ * Clients are chains of asynchronous requests rather than threads, so 10k of them need no 10k client threads.
+ */
+@Slf4j
+public final class LoadTestRunner {
+
+    private LoadTestRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+
+        try (PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine")
+                .withCommand("postgres", "-c", "shared_buffers=1GB", "-c", "max_wal_size=8GB")) {
+            postgres.start();
+
+            ConfigurableApplicationContext app = new SpringApplicationBuilder(BookShelfApplication.class)
+                    .properties(
+                            "spring.datasource.url=" + postgres.getJdbcUrl(),
+                            "spring.datasource.username=" + postgres.getUsername(),
+                            "spring.datasource.password=" + postgres.getPassword(),
+                            "spring.jpa.show-sql=false",
+                            "spring.jpa.properties.hibernate.format_sql=false",
+                            "logging.level.com.sobolev.spring.bookshelf=WARN",
+                            "logging.level.com.sobolev.spring.bookshelf.loadtest=INFO",
+                            "spring.threads.virtual.enabled=" + settings.virtualThreads(),
+                            "server.tomcat.max-connections=" + Math.max(8192, settings.clients() + 1000),
+                            "server.tomcat.accept-count=1000",
+                            "server.port=0")
+                    .run();
+            try {
+                CatalogSeeder seeder = new CatalogSeeder(app.getBean(JdbcTemplate.class), settings);
+                seeder.seed();
+                app.getBean(BookRankingService.class).reconcile();
+                CacheManager cacheManager = app.getBean(CacheManager.class);
+                cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+
+                int port = app.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+                Workload workload = new Workload(URI.create("http://localhost:" + port),
+                        seeder.bookIdsByRank(), seeder.genreIds(), settings.authors());
+                Map<String, Object> report = run(workload, settings);
+
+                File file = new File(settings.report());
+                file.getAbsoluteFile().getParentFile().mkdirs();
+                new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, report);
+                log.info("Load test report written to {}", file.getAbsolutePath());
+            } finally {
+                app.close();
+            }
+        }
+    }
+
+    private static Map<String, Object> run(Workload workload, LoadTestSettings settings) throws InterruptedException {
+        Map<String, EndpointStats> stats = new LinkedHashMap<>();
+        workload.operations().forEach(operation -> stats.put(operation.endpoint(), new EndpointStats()));
+
+        ExecutorService callbacks = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(callbacks)
+                .build();
+        long start = System.nanoTime();
+        long measureFrom = start + settings.warmup().toNanos();
+        long end = measureFrom + settings.duration().toNanos();
+
+        log.info("Running {} clients on {} threads: {} warmup, {} measured", settings.clients(),
+                settings.virtualThreads() ? "virtual" : "platform", settings.warmup(), settings.duration());
+        CountDownLatch finished = new CountDownLatch(settings.clients());
+        for (int i = 0; i < settings.clients(); i++) {
+            sendNext(client, callbacks, workload, stats, measureFrom, end, finished);
+        }
+        finished.await(settings.warmup().plus(settings.duration()).toSeconds() + 60, TimeUnit.SECONDS);
+        callbacks.shutdownNow();
+
+        double seconds = settings.duration().toNanos() / 1e9;
+        Histogram total = new Histogram(TimeUnit.MINUTES.toNanos(1), 3);
+        long totalErrors = 0;
+        List<Map<String, Object>> endpoints = new ArrayList<>();
+        for (Map.Entry<String, EndpointStats> entry : stats.entrySet()) {
+            Map<String, Object> endpoint = new LinkedHashMap<>();
+            endpoint.put("endpoint", entry.getKey());
+            endpoint.putAll(entry.getValue().toReport(seconds));
+            endpoints.add(endpoint);
+            total.add(entry.getValue().latencies());
+            totalErrors += entry.getValue().errors();
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("finishedAt", Instant.now().toString());
+        report.put("settings", settings.toReport());
+        report.put("total", EndpointStats.toReport(total, totalErrors, seconds));
+        report.put("endpoints", endpoints);
+        return report;
+    }
+
+    /**
+     * One client: sends a request, records it when the response arrives, then sends the next one until the end.
+     */
+    private static void sendNext(HttpClient client, ExecutorService callbacks, Workload workload,
+                                 Map<String, EndpointStats> stats, long measureFrom, long end, CountDownLatch finished) {
+        if (System.nanoTime() >= end) {
+            finished.countDown();
+            return;
+        }
+        Workload.Operation operation = workload.next();
+        long sent = System.nanoTime();
+        client.sendAsync(operation.request().apply(workload), HttpResponse.BodyHandlers.discarding())
+                .whenCompleteAsync((response, error) -> {
+                    if (sent >= measureFrom) {
+                        boolean success = error == null && response.statusCode() < 400;
+                        stats.get(operation.endpoint()).record(System.nanoTime() - sent, success);
+                    }
+                    sendNext(client, callbacks, workload, stats, measureFrom, end, finished);
+                }, callbacks);
+    }
+}
@@ -0,0 +1,38 @@
+package com.sobolev.spring.bookshelf.loadtest;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Load test parameters, read from {@code loadtest.*} system properties.
+ */
+record LoadTestSettings(int books, long reviews, int genres, int authors,
+                        int clients, boolean virtualThreads, Duration warmup, Duration duration, String report) {
+
+    static LoadTestSettings fromSystemProperties() {
+        return new LoadTestSettings(
+                Integer.getInteger("loadtest.books", 1_000_000),
+                Long.getLong("loadtest.reviews", 20_000_000L),
+                Integer.getInteger("loadtest.genres", 50),
+                Integer.getInteger("loadtest.authors", 100_000),
+                Integer.getInteger("loadtest.clients", 32),
+                Boolean.getBoolean("loadtest.virtual-threads"),
+                Duration.parse(System.getProperty("loadtest.warmup", "PT30S")),
+                Duration.parse(System.getProperty("loadtest.duration", "PT2M")),
+                System.getProperty("loadtest.report", "target/loadtest-report.json"));
+    }
+
+    Map<String, Object> toReport() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("books", books);
+        report.put("reviews", reviews);
+        report.put("genres", genres);
+        report.put("authors", authors);
+        report.put("clients", clients);
+        report.put("virtualThreads", virtualThreads);
+        report.put("warmupSeconds", warmup.toSeconds());
+        report.put("durationSeconds", duration.toSeconds());
+        return report;
+    }
+}
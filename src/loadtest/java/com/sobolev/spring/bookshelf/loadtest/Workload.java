@@ -0,0 +1,112 @@
+package com.sobolev.spring.bookshelf.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * Weighted mix of reads and writes. Books are picked by the same Zipf popularity the reviews were seeded with,
+ * so hot books are read and reviewed far more often than the long tail.
+ */
+class Workload {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final String[] WORDS = {"winter", "garden", "silent river", "golden crown", "hidden letters", "night"};
+
+    record Operation(String endpoint, int weight, Function<Workload, HttpRequest> request) {
+    }
+
+    private final URI baseUri;
+    private final long[] bookIdsByRank;
+    private final long[] genreIds;
+    private final int authors;
+    private final List<Operation> operations;
+    private final int totalWeight;
+
+    Workload(URI baseUri, long[] bookIdsByRank, long[] genreIds, int authors) {
+        this.baseUri = baseUri;
+        this.bookIdsByRank = bookIdsByRank;
+        this.genreIds = genreIds;
+        this.authors = authors;
+        this.operations = List.of(
+                new Operation("GET /api/books/{id}", 35, w -> w.get("/api/books/" + w.popularBookId())),
+                new Operation("GET /api/books", 5, w -> w.get("/api/books?limit=20")),
+                new Operation("POST /api/books/batch-get", 3, w -> w.post("/api/books/batch-get", w.shelfIds())),
+                new Operation("GET /api/books/popular", 10, w -> w.get("/api/books/popular?limit=20")),
+                new Operation("GET /api/books/high-rated", 5, w -> w.get("/api/books/high-rated?minRating=4.0&limit=20")),
+                new Operation("GET /api/books/search?q", 10, w -> w.get("/api/books/search?limit=20&q=" + w.searchWords())),
+                new Operation("GET /api/books/search", 10, w -> w.get("/api/books/search?limit=20&status=READ"
+                        + "&yearFrom=" + (1900 + w.random().nextInt(100)) + "&yearTo=" + (2000 + w.random().nextInt(23))
+                        + "&author=Author%20" + w.random().nextInt(w.authors))),
+                new Operation("GET /api/books/genre/{genreId}", 5, w -> w.get("/api/books/genre/"
+                        + w.genreIds[w.random().nextInt(w.genreIds.length)] + "?limit=20")),
+                new Operation("GET /api/reviews", 5, w -> w.get("/api/reviews?limit=20")),
+                new Operation("GET /api/reviews/book/{bookId}/feed", 5, w -> w.get("/api/reviews/book/"
+                        + w.popularBookId() + "/feed?limit=20&sort=" + (w.random().nextBoolean() ? "NEWEST" : "RATING"))),
+                new Operation("POST /api/reviews", 12, w -> w.post("/api/reviews", "{\"bookId\":" + w.popularBookId()
+                        + ",\"rating\":" + (1 + w.random().nextInt(5)) + ",\"content\":\"Load test review\"}")),
+                new Operation("POST /api/books", 3, w -> w.post("/api/books", "{\"title\":\"Load Test Book\","
+                        + "\"author\":\"Author " + w.random().nextInt(w.authors) + "\",\"publicationYear\":2020,"
+                        + "\"status\":\"AVAILABLE\",\"genreIds\":[" + w.genreIds[0] + "]}"))
+        );
+        this.totalWeight = operations.stream().mapToInt(Operation::weight).sum();
+    }
+
+    List<Operation> operations() {
+        return operations;
+    }
+
+    Operation next() {
+        int pick = random().nextInt(totalWeight);
+        for (Operation operation : operations) {
+            pick -= operation.weight();
+            if (pick < 0) {
+                return operation;
+            }
+        }
+        throw new IllegalStateException("Weights do not add up");
+    }
+
+    /**
+     * Rank k is drawn with probability close to 1/k, the continuous counterpart of Zipf with exponent 1.
+     */
+    long popularBookId() {
+        int rank = (int) Math.floor(Math.pow(bookIdsByRank.length, random().nextDouble()));
+        return bookIdsByRank[Math.max(1, Math.min(rank, bookIdsByRank.length)) - 1];
+    }
+
+    /**
+     * A shelf of 50 books as a batch-get body.
+     */
+    private String shelfIds() {
+        StringJoiner ids = new StringJoiner(",", "{\"ids\":[", "]}");
+        for (int i = 0; i < 50; i++) {
+            ids.add(String.valueOf(popularBookId()));
+        }
+        return ids.toString();
+    }
+
+    private String searchWords() {
+        return WORDS[random().nextInt(WORDS.length)].replace(" ", "%20");
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).timeout(TIMEOUT).GET().build();
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(baseUri.resolve(path))
+                .timeout(TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private ThreadLocalRandom random() {
+        return ThreadLocalRandom.current();
+    }
+}
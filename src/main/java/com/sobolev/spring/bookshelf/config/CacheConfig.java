@@ -0,0 +1,52 @@
+package com.sobolev.spring.bookshelf.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String GENRES = "genres";
+    public static final String GENRE_BY_ID = "genreById";
+    public static final String GENRE_BY_NAME = "genreByName";
+    public static final String GENRE_NAMES = "genreNames";
+    public static final String BOOK_BY_ID = "bookById";
+
+    /**
+     * Caffeine caches with statistics enabled, so Actuator publishes hit/miss metrics for them.
+     * Evictions are deferred until the surrounding transaction commits.
+     */
+    @Bean
+    public CacheManager cacheManager(
+            @Value("${bookshelf.cache.genres.maximum-size:10000}") long genreMaximumSize,
+            @Value("${bookshelf.cache.genres.expire-after-write:1h}") Duration genreTtl,
+            @Value("${bookshelf.cache.books.maximum-size:50000}") long bookMaximumSize,
+            @Value("${bookshelf.cache.books.expire-after-write:10m}") Duration bookTtl) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setAllowNullValues(false);
+        for (String name : List.of(GENRES, GENRE_BY_ID, GENRE_BY_NAME, GENRE_NAMES)) {
+            cacheManager.registerCustomCache(name, Caffeine.newBuilder()
+                    .maximumSize(genreMaximumSize)
+                    .expireAfterWrite(genreTtl)
+                    .recordStats()
+                    .build());
+        }
+        // Caffeine's W-TinyLFU policy keeps hot books resident while one-off lookups are evicted first
+        cacheManager.registerCustomCache(BOOK_BY_ID, Caffeine.newBuilder()
+                .maximumSize(bookMaximumSize)
+                .expireAfterWrite(bookTtl)
+                .recordStats()
+                .build());
+        return new TransactionAwareCacheManagerProxy(cacheManager);
+    }
+}
@@ -1,38 +1,70 @@
 package com.sobolev.spring.bookshelf.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sobolev.spring.bookshelf.dto.request.BookBatchRequest;
+import com.sobolev.spring.bookshelf.dto.request.BookFilter;
+import com.sobolev.spring.bookshelf.dto.request.BookPatchRequest;
 import com.sobolev.spring.bookshelf.dto.request.BookRequest;
+import com.sobolev.spring.bookshelf.dto.request.ImportFormat;
+import com.sobolev.spring.bookshelf.dto.response.BookBatchResponse;
 import com.sobolev.spring.bookshelf.dto.response.BookResponse;
+import com.sobolev.spring.bookshelf.dto.response.CursorPage;
+import com.sobolev.spring.bookshelf.dto.response.ImportReport;
 import com.sobolev.spring.bookshelf.model.BookStatus;
+import com.sobolev.spring.bookshelf.service.BookSearchService;
 import com.sobolev.spring.bookshelf.service.BookService;
+import com.sobolev.spring.bookshelf.service.ImportService;
+import com.sobolev.spring.bookshelf.util.ETags;
+import com.sobolev.spring.bookshelf.util.KeysetCursor;
+import com.sobolev.spring.bookshelf.util.OptimisticRetry;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
+import org.springdoc.core.annotations.ParameterObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.Optional;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/books")
 @Tag(name = "BookController", description = "Controller for managing books")
 @Slf4j
 public class BookController {
 
     private final BookService bookService;
+    private final ImportService importService;
+    private final BookSearchService bookSearchService;
+    private final ObjectWriter bookWriter;
+    private final OptimisticRetry optimisticRetry;
 
     @Autowired
-    public BookController(BookService bookService) {
+    public BookController(BookService bookService, ImportService importService,
+                          BookSearchService bookSearchService, ObjectMapper objectMapper,
+                          OptimisticRetry optimisticRetry) {
         this.bookService = bookService;
+        this.importService = importService;
+        this.bookSearchService = bookSearchService;
+        this.bookWriter = objectMapper.writerFor(BookResponse.class);
+        this.optimisticRetry = optimisticRetry;
     }
 
     @GetMapping
@@ -40,60 +72,146 @@ public class BookController {
             summary = "Get all books",
             description = "return all books"
     )
-    public ResponseEntity<List<BookResponse>> getAllBooks() {
-        log.info("Get all books");
-        List<BookResponse> books = bookService.findAll();
-        log.info("Found {} books", books.size());
+    public ResponseEntity<CursorPage<BookResponse>> getAllBooks(
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit) {
+        log.debug("Get all books");
+        CursorPage<BookResponse> books = bookService.findAll(after, limit);
+        log.debug("Found {} books", books.getContent().size());
         return new ResponseEntity<>(books, HttpStatus.OK);
     }
 
+    @GetMapping(value = "/search", params = "q")
+    @Operation(
+            summary = "Search books",
+            description = "Return books matching q in title, author or review content, best match first"
+    )
+    public ResponseEntity<CursorPage<BookResponse>> searchBooks(
+            @RequestParam @Parameter(description = "Search words; quoted phrases, OR and -word are supported") String q,
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit) {
+        log.debug("Search books: {}", q);
+        CursorPage<BookResponse> books = bookSearchService.search(q, after, limit);
+        log.debug("Found {} books", books.getContent().size());
+        return ResponseEntity.ok(books);
+    }
+
+    @GetMapping("/search")
+    @Operation(
+            summary = "Filter books",
+            description = "Return books matching every given criterion in the requested order"
+    )
+    public ResponseEntity<CursorPage<BookResponse>> filterBooks(
+            @ParameterObject BookFilter filter,
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit) {
+        log.debug("Filter books");
+        CursorPage<BookResponse> books = bookService.search(filter, after, limit);
+        log.debug("Found {} books", books.getContent().size());
+        return ResponseEntity.ok(books);
+    }
+
     @GetMapping("/{id}")
     @Operation(
             summary = "Get book by id",
             description = "Return book by id"
     )
     @ApiResponse(responseCode = "404", description = "Not found book")
+    @ApiResponse(responseCode = "304", description = "Book not modified since the ETag given in If-None-Match")
     public ResponseEntity<BookResponse> getBookById(@PathVariable @Parameter(description = "Identifier of book", required = true) Long id){
-        log.info("Get book by id: {}", id);
+        log.debug("Get book by id: {}", id);
         Optional<BookResponse> book = bookService.findById(id);
         if(book.isPresent()){
-            log.info("Found book: {}", book.get().getId());
-            return new ResponseEntity<>(book.get(), HttpStatus.OK);
+            log.debug("Found book: {}", book.get().getId());
+            // a matching If-None-Match is answered with 304 before the body is serialized
+            return ResponseEntity.ok()
+                    .eTag(ETags.of(book.get()))
+                    .body(book.get());
         }
-        log.info("Not found book by id: {}", id);
+        log.debug("Not found book by id: {}", id);
         return new ResponseEntity<>(HttpStatus.NOT_FOUND);
     }
 
+    @PostMapping("/batch-get")
+    @Operation(
+            summary = "Get books by ids",
+            description = "Return the requested books in request order, plus the ids that were not found"
+    )
+    public ResponseEntity<BookBatchResponse> getBooksByIds(@Valid @RequestBody BookBatchRequest batchRequest) {
+        log.debug("Get {} books by ids", batchRequest.getIds().size());
+        BookBatchResponse batch = bookService.findAllById(batchRequest.getIds());
+        log.debug("Found {} books, missing {}", batch.getBooks().size(), batch.getMissingIds().size());
+        return ResponseEntity.ok(batch);
+    }
+
     @PostMapping
     @Operation(
             summary = "Create book",
             description = "endpoint for create book"
     )
     public ResponseEntity<BookResponse> createBook(@Valid @RequestBody BookRequest bookRequest){
-        log.info("Create book: {}", bookRequest);
+        log.debug("Create book: {}", bookRequest);
         BookResponse book = bookService.create(bookRequest);
-        log.info("Created book: {}", book);
+        log.debug("Created book: {}", book);
         return new ResponseEntity<>(book, HttpStatus.CREATED);
     }
 
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, ImportFormat.TEXT_CSV_VALUE})
+    @Operation(
+            summary = "Bulk import books",
+            description = "Import books from NDJSON or CSV (header: title,author,isbn,publicationYear,status,genres; " +
+                    "genres are names separated by '|'). Invalid rows are reported without aborting the load"
+    )
+    public ResponseEntity<ImportReport> importBooks(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                    InputStream body) throws IOException {
+        log.debug("Import books");
+        ImportReport report = importService.importBooks(body, ImportFormat.fromContentType(contentType));
+        log.debug("Imported {} books, failed {}", report.getImported(), report.getFailed());
+        return ResponseEntity.ok(report);
+    }
+
     @PutMapping("/{id}")
     @Operation(
             summary = "Update book",
             description = "endpoint for update book"
     )
     @ApiResponse(responseCode = "404", description = "Not found book")
+    @ApiResponse(responseCode = "412", description = "Book changed since the ETag given in If-Match")
     public ResponseEntity<BookResponse> updateBook(@PathVariable @Parameter(description = "Identifier of book", required = true) Long id,
+                                                   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+                                                   @Parameter(description = "ETag of the book this update is based on; without it the last writer wins") String ifMatch,
                                                    @Valid @RequestBody BookRequest bookRequest){
-        log.info("Update book: {}", bookRequest);
-        Optional<BookResponse> book = bookService.update(id, bookRequest);
+        log.debug("Update book: {}", bookRequest);
+        Long expectedVersion = ETags.versionOf(ifMatch);
+        Optional<BookResponse> book = optimisticRetry.run(() -> bookService.update(id, bookRequest, expectedVersion));
         if (book.isPresent()){
-            log.info("Found book: {}", book.get());
-            return new ResponseEntity<>(book.get(), HttpStatus.OK);
+            log.debug("Found book: {}", book.get());
+            return ResponseEntity.ok()
+                    .eTag(ETags.of(book.get()))
+                    .body(book.get());
         }
-        log.info("Not found book update");
+        log.debug("Not found book update");
         return new ResponseEntity<>(HttpStatus.NOT_FOUND);
     }
 
+    @PatchMapping("/{id}")
+    @Operation(
+            summary = "Partially update book",
+            description = "Change only the fields present in the body; genres are replaced only when genreIds is sent"
+    )
+    @ApiResponse(responseCode = "404", description = "Not found book")
+    @ApiResponse(responseCode = "412", description = "Book changed since the ETag given in If-Match")
+    public ResponseEntity<BookResponse> patchBook(@PathVariable @Parameter(description = "Identifier of book", required = true) Long id,
+                                                  @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+                                                  @Parameter(description = "ETag of the book this patch is based on; without it the last writer wins") String ifMatch,
+                                                  @Valid @RequestBody BookPatchRequest patchRequest){
+        log.debug("Patch book: {}", id);
+        Long expectedVersion = ETags.versionOf(ifMatch);
+        return optimisticRetry.run(() -> bookService.patch(id, patchRequest, expectedVersion))
+                .map(book -> ResponseEntity.ok().eTag(ETags.of(book)).body(book))
+                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
     @DeleteMapping("/{id}")
     @Operation(
             summary = "Delete book",
@@ -101,14 +219,14 @@ public class BookController {
     )
     @ApiResponse(responseCode = "404", description = "Not found book")
     public ResponseEntity<Void> deleteBook(@PathVariable @Parameter(description = "Identifier of book", required = true) Long id){
-        log.info("Delete book: {}", id);
+        log.debug("Delete book: {}", id);
         boolean deleted = bookService.deleteById(id);
 
         if (deleted){
-            log.info("Deleted book: {}", id);
+            log.debug("Deleted book: {}", id);
             return ResponseEntity.ok().build();
         }
-        log.info("Not found book deleted");
+        log.debug("Not found book deleted");
         return ResponseEntity.notFound().build();
     }
 
@@ -130,8 +248,11 @@ public class BookController {
             summary = "Get books by status",
             description = "Return book by status"
     )
-    public ResponseEntity<List<BookResponse>> getBooksByStatus(@PathVariable BookStatus status){
-        List<BookResponse> books = bookService.findByStatus(status);
+    public ResponseEntity<CursorPage<BookResponse>> getBooksByStatus(
+            @PathVariable BookStatus status,
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit){
+        CursorPage<BookResponse> books = bookService.findByStatus(status, after, limit);
         return ResponseEntity.ok(books);
     }
 
@@ -140,8 +261,11 @@ public class BookController {
             summary = "Get books by publicationYear",
             description = "Return book by publicationYear"
     )
-    public ResponseEntity<List<BookResponse>> getBooksByPublicationYear(@PathVariable Integer year){
-        List<BookResponse> books = bookService.findByPublicationYear(year);
+    public ResponseEntity<CursorPage<BookResponse>> getBooksByPublicationYear(
+            @PathVariable Integer year,
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit){
+        CursorPage<BookResponse> books = bookService.findByPublicationYear(year, after, limit);
         return ResponseEntity.ok(books);
     }
 
@@ -150,10 +274,12 @@ public class BookController {
             summary = "Get books by year range",
             description = "Return books where publicationYear between startYear and endYear"
     )
-    public ResponseEntity<List<BookResponse>> getBooksByYearRange(
+    public ResponseEntity<CursorPage<BookResponse>> getBooksByYearRange(
             @RequestParam Integer startYear,
-            @RequestParam Integer endYear){
-        List<BookResponse> books = bookService.findByPublicationYearBetween(startYear, endYear);
+            @RequestParam Integer endYear,
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit){
+        CursorPage<BookResponse> books = bookService.findByPublicationYearBetween(startYear, endYear, after, limit);
         return ResponseEntity.ok(books);
     }
 
@@ -162,8 +288,11 @@ public class BookController {
             summary = "Get books by genreId",
             description = "Return books by genreId"
     )
-    public ResponseEntity<List<BookResponse>> getBooksByGenre(@PathVariable Long genreId){
-        List<BookResponse> books = bookService.findBooksByGenreId(genreId);
+    public ResponseEntity<CursorPage<BookResponse>> getBooksByGenre(
+            @PathVariable Long genreId,
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit){
+        CursorPage<BookResponse> books = bookService.findBooksByGenreId(genreId, after, limit);
         return ResponseEntity.ok(books);
     }
 
@@ -172,29 +301,36 @@ public class BookController {
             summary = "Get books by genreName",
             description = "Return books by genreName"
     )
-    public ResponseEntity<List<BookResponse>> getBooksByGenreName(@PathVariable String genreName){
-        List<BookResponse> books = bookService.findBooksByGenreName(genreName);
+    public ResponseEntity<CursorPage<BookResponse>> getBooksByGenreName(
+            @PathVariable String genreName,
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit){
+        CursorPage<BookResponse> books = bookService.findBooksByGenreName(genreName, after, limit);
         return ResponseEntity.ok(books);
     }
 
     @GetMapping("/popular")
     @Operation(
             summary = "Get popular books",
-            description = "Return popular books sorted by rating"
+            description = "Return the most reviewed books, most reviews first"
     )
-    public ResponseEntity<List<BookResponse>> getPopularBooks(){
-        List<BookResponse> books = bookService.findPopularBooks();
+    public ResponseEntity<CursorPage<BookResponse>> getPopularBooks(
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit){
+        CursorPage<BookResponse> books = bookService.findPopularBooks(after, limit);
         return ResponseEntity.ok(books);
     }
 
     @GetMapping("/high-rated")
     @Operation(
             summary = "Get books with higher rating",
-            description = "Return books with average rating grater when minRating"
+            description = "Return top rated books with average rating grater when minRating, best rated first"
     )
-    public ResponseEntity<List<BookResponse>> getHighRatedBooks(
-            @RequestParam(defaultValue = "4.0") Double minRating){
-        List<BookResponse> books = bookService.findBooksWithAverageRatingAbove(minRating);
+    public ResponseEntity<CursorPage<BookResponse>> getHighRatedBooks(
+            @RequestParam(defaultValue = "4.0") Double minRating,
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit){
+        CursorPage<BookResponse> books = bookService.findBooksWithAverageRatingAbove(minRating, after, limit);
         return ResponseEntity.ok(books);
     }
 
@@ -206,4 +342,27 @@ public class BookController {
         long bookCount = bookService.countByAuthor(author);
         return ResponseEntity.ok(bookCount);
     }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(
+            summary = "Export all books",
+            description = "Stream the whole catalog as newline-delimited JSON"
+    )
+    public ResponseEntity<StreamingResponseBody> exportBooks() {
+        log.debug("Export all books");
+        StreamingResponseBody body = outputStream -> {
+            long exported = bookService.exportAll(book -> {
+                try {
+                    outputStream.write(bookWriter.writeValueAsBytes(book));
+                    outputStream.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            log.info("Exported {} books", exported);
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
 }
@@ -1,8 +1,12 @@
 package com.sobolev.spring.bookshelf.controller;
 
 import com.sobolev.spring.bookshelf.dto.request.GenreRequest;
+import com.sobolev.spring.bookshelf.dto.response.GenreBookCountResponse;
+import com.sobolev.spring.bookshelf.dto.response.GenreBooksResponse;
 import com.sobolev.spring.bookshelf.dto.response.GenreResponse;
+import com.sobolev.spring.bookshelf.service.BookService;
 import com.sobolev.spring.bookshelf.service.GenreService;
+import com.sobolev.spring.bookshelf.util.KeysetCursor;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -10,6 +14,7 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -17,16 +22,19 @@ import org.springframework.web.bind.annotation.*;
 import java.util.List;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/genres")
 @Tag(name = "Genre Controller", description = "Controller for managing genres")
 @Slf4j
 public class GenreController {
 
     private final GenreService genreService;
+    private final BookService bookService;
 
     @Autowired
-    public GenreController(GenreService genreService) {
+    public GenreController(GenreService genreService, BookService bookService) {
         this.genreService = genreService;
+        this.bookService = bookService;
     }
 
     @GetMapping
@@ -34,7 +42,7 @@ public class GenreController {
             summary = "find all genres"
     )
     public ResponseEntity<List<GenreResponse>> findAll() {
-        log.info("find all genres");
+        log.debug("find all genres");
         return new ResponseEntity<>(genreService.findAll(), HttpStatus.OK);
     }
 
@@ -44,19 +52,44 @@ public class GenreController {
     )
     @ApiResponse(responseCode = "404", description = "Not found genre")
     public ResponseEntity<GenreResponse> findById(@PathVariable @Parameter(required = true) Long id) {
-        log.info("find genre by id: {}", id);
+        log.debug("find genre by id: {}", id);
         return genreService.findById(id)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    @GetMapping("/{id}/books")
+    @Operation(
+            summary = "find genre with a page of its books",
+            description = "Return the genre, its book count and books ordered by id"
+    )
+    @ApiResponse(responseCode = "404", description = "Not found genre")
+    public ResponseEntity<GenreBooksResponse> findWithBooks(
+            @PathVariable @Parameter(required = true) Long id,
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit) {
+        log.debug("find genre with books by id: {}", id);
+        return bookService.findGenreWithBooks(id, after, limit)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/book-counts")
+    @Operation(
+            summary = "find book counts of all genres"
+    )
+    public ResponseEntity<List<GenreBookCountResponse>> findBookCounts() {
+        log.debug("find book counts of genres");
+        return ResponseEntity.ok(genreService.findBookCounts());
+    }
+
     @GetMapping("/name/{name}")
     @Operation(
             summary = "find genre by name of genre"
     )
     public ResponseEntity<GenreResponse> getGenreByName(@PathVariable
                                                             @Parameter(description = "name of genre", required = true) String name) {
-        log.info("find genre by name: {}", name);
+        log.debug("find genre by name: {}", name);
         return genreService.findByName(name)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
@@ -77,7 +110,7 @@ public class GenreController {
     @ApiResponse(responseCode = "404", description = "Not found genre")
     public ResponseEntity<GenreResponse> updateGenre(@Valid @RequestBody GenreRequest genreRequest,
                                                      @PathVariable @Parameter(required = true) Long id) {
-        log.info("update genre by id: {}", id);
+        log.debug("update genre by id: {}", id);
         return genreService.update(id, genreRequest)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
@@ -1,40 +1,70 @@
 package com.sobolev.spring.bookshelf.controller;
 
+import com.sobolev.spring.bookshelf.dto.request.ImportFormat;
 import com.sobolev.spring.bookshelf.dto.request.ReviewRequest;
+import com.sobolev.spring.bookshelf.dto.request.ReviewSort;
+import com.sobolev.spring.bookshelf.dto.response.CursorPage;
+import com.sobolev.spring.bookshelf.dto.response.ImportReport;
 import com.sobolev.spring.bookshelf.dto.response.ReviewResponse;
+import com.sobolev.spring.bookshelf.ingest.ReviewIngestQueue;
+import com.sobolev.spring.bookshelf.service.ImportService;
 import com.sobolev.spring.bookshelf.service.ReviewService;
+import com.sobolev.spring.bookshelf.util.ETags;
+import com.sobolev.spring.bookshelf.util.KeysetCursor;
+import com.sobolev.spring.bookshelf.util.OptimisticRetry;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/reviews")
 @Tag(name = "Review controller", description = "controller for review of books")
 @Slf4j
 public class ReviewController {
 
+    private static final String PREFER = "Prefer";
+    private static final String PREFERENCE_APPLIED = "Preference-Applied";
+    private static final String RESPOND_ASYNC = "respond-async";
+
     private final ReviewService reviewService;
+    private final ImportService importService;
+    private final OptimisticRetry optimisticRetry;
+    private final ReviewIngestQueue reviewIngestQueue;
 
     @Autowired
-    public ReviewController(ReviewService reviewService) {
+    public ReviewController(ReviewService reviewService, ImportService importService, OptimisticRetry optimisticRetry,
+                            ReviewIngestQueue reviewIngestQueue) {
         this.reviewService = reviewService;
+        this.importService = importService;
+        this.optimisticRetry = optimisticRetry;
+        this.reviewIngestQueue = reviewIngestQueue;
     }
 
     @GetMapping
     @Operation(
             summary = "get list of all reviews"
     )
-    public ResponseEntity<List<ReviewResponse>> getAllReviews() {
-        log.info("get list of all reviews");
-        return new ResponseEntity<>(reviewService.findAll(), HttpStatus.OK);
+    public ResponseEntity<CursorPage<ReviewResponse>> getAllReviews(
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit,
+            @RequestParam(required = false) @Parameter(description = "Pass \"book\" to embed the full book in each review") String expand) {
+        log.debug("get list of all reviews");
+        return new ResponseEntity<>(reviewService.findAll(after, limit, expandsBook(expand)), HttpStatus.OK);
     }
 
     @GetMapping("/{id}")
@@ -42,10 +72,16 @@ public class ReviewController {
             summary = "get Review by id"
     )
     @ApiResponse(responseCode = "404", description = "Not found review")
-    public ResponseEntity<ReviewResponse> getReviewById(@PathVariable("id") Long id) {
-        log.info("get review by id: {}", id);
-        return reviewService.findById(id)
-                .map(ResponseEntity::ok)
+    public ResponseEntity<ReviewResponse> getReviewById(
+            @PathVariable("id") Long id,
+            @RequestParam(required = false) @Parameter(description = "Pass \"book\" to embed the full book in each review") String expand) {
+        log.debug("get review by id: {}", id);
+        boolean expandBook = expandsBook(expand);
+        // the tag does not cover an embedded book, so expanded responses go without one
+        return reviewService.findById(id, expandBook)
+                .map(review -> expandBook
+                        ? ResponseEntity.ok(review)
+                        : ResponseEntity.ok().eTag(ETags.of(review)).body(review))
                 .orElse(ResponseEntity.notFound().build());
     }
 
@@ -54,36 +90,76 @@ public class ReviewController {
             summary = "get all Reviews by book id"
     )
     @ApiResponse(responseCode = "404", description = "Not found review or book")
-    public ResponseEntity<List<ReviewResponse>> getAllReviewsByBookId(@PathVariable("bookId") Long bookId) {
-        log.info("get all Reviews by book id: {}", bookId);
-        List<ReviewResponse> reviews = reviewService.findByBookId(bookId);
-        log.info("size reviews: {}", reviews.size());
+    public ResponseEntity<List<ReviewResponse>> getAllReviewsByBookId(
+            @PathVariable("bookId") Long bookId,
+            @RequestParam(required = false) @Parameter(description = "Pass \"book\" to embed the full book in each review") String expand) {
+        log.debug("get all Reviews by book id: {}", bookId);
+        List<ReviewResponse> reviews = reviewService.findByBookId(bookId, expandsBook(expand));
+        log.debug("size reviews: {}", reviews.size());
         if (reviews.isEmpty()) {
-            log.info("reviews is empty");
             return ResponseEntity.noContent().build();
         }
-        log.info("reviews size: {}", reviews.size());
         return ResponseEntity.ok(reviews);
     }
 
+    @GetMapping("/book/{bookId}/feed")
+    @Operation(
+            summary = "get a page of Reviews of a book",
+            description = "Return reviews of the book newest first or best rated first"
+    )
+    public ResponseEntity<CursorPage<ReviewResponse>> getReviewFeed(
+            @PathVariable("bookId") Long bookId,
+            @RequestParam(defaultValue = "NEWEST") @Parameter(description = "NEWEST or RATING") ReviewSort sort,
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit,
+            @RequestParam(required = false) @Parameter(description = "Pass \"book\" to embed the full book in each review") String expand) {
+        log.debug("get review feed of book {} by {}", bookId, sort);
+        return ResponseEntity.ok(reviewService.findFeed(bookId, sort, after, limit, expandsBook(expand)));
+    }
+
     @PostMapping()
     @Operation(
-            summary = "create review"
+            summary = "create review",
+            description = "With Prefer: respond-async and the review queue enabled, queue the review and answer 202 without a body"
     )
-    public ResponseEntity<ReviewResponse> createReview(@Valid @RequestBody ReviewRequest reviewRequest) {
-        log.info("create review: {}", reviewRequest);
+    @ApiResponse(responseCode = "202", description = "Review queued, it is written within moments")
+    @ApiResponse(responseCode = "503", description = "Review queue is full, retry after the Retry-After delay")
+    public ResponseEntity<ReviewResponse> createReview(
+            @Valid @RequestBody ReviewRequest reviewRequest,
+            @RequestHeader(value = PREFER, required = false) @Parameter(description = "respond-async to queue the review") String prefer) {
+        log.debug("create review: {}", reviewRequest);
+        if (reviewIngestQueue.isEnabled() && prefersAsync(prefer)) {
+            reviewIngestQueue.submit(reviewRequest);
+            return ResponseEntity.accepted().header(PREFERENCE_APPLIED, RESPOND_ASYNC).build();
+        }
         return new ResponseEntity<>(reviewService.create(reviewRequest), HttpStatus.CREATED);
     }
 
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, ImportFormat.TEXT_CSV_VALUE})
+    @Operation(
+            summary = "bulk import reviews from NDJSON or CSV (header: bookId,rating,content)"
+    )
+    public ResponseEntity<ImportReport> importReviews(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                      InputStream body) throws IOException {
+        log.debug("import reviews");
+        return ResponseEntity.ok(importService.importReviews(body, ImportFormat.fromContentType(contentType)));
+    }
+
     @PutMapping("/{id}")
     @Operation(
             summary = "update review"
     )
     @ApiResponse(responseCode = "404", description = "Not found review")
-    public ResponseEntity<ReviewResponse> updateReview(@PathVariable("id") Long id, @Valid @RequestBody ReviewRequest reviewRequest) {
-        log.info("update review: {}", reviewRequest);
-        return reviewService.update(id, reviewRequest)
-                .map(ResponseEntity::ok)
+    @ApiResponse(responseCode = "412", description = "Review changed since the ETag given in If-Match")
+    public ResponseEntity<ReviewResponse> updateReview(@PathVariable("id") Long id,
+                                                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+                                                       @Parameter(description = "ETag of the review this update is based on; without it the last writer wins") String ifMatch,
+                                                       @Valid @RequestBody ReviewRequest reviewRequest) {
+        log.debug("update review: {}", reviewRequest);
+        Long expectedVersion = ETags.versionOf(ifMatch);
+        // a retry rereads the old rating, so the aggregate delta is never computed from a stale review
+        return optimisticRetry.run(() -> reviewService.update(id, reviewRequest, expectedVersion))
+                .map(review -> ResponseEntity.ok().eTag(ETags.of(review)).body(review))
                 .orElse(ResponseEntity.notFound().build());
     }
 
@@ -93,14 +169,32 @@ public class ReviewController {
     )
     @ApiResponse(responseCode = "404", description = "Not found review")
     public ResponseEntity<Void> deleteReview(@PathVariable("id") Long id) {
-        log.info("Start delete review: {}", id);
+        log.debug("Start delete review: {}", id);
         boolean deleted = reviewService.deleteById(id);
 
         if (deleted){
-            log.info("Deleted review: {}", id);
+            log.debug("Deleted review: {}", id);
             return ResponseEntity.noContent().build();
         }
-        log.info("Not delete review: {}", id);
+        log.debug("Not delete review: {}", id);
         return ResponseEntity.notFound().build();
     }
+
+    private static boolean expandsBook(String expand) {
+        return "book".equalsIgnoreCase(expand);
+    }
+
+    private static boolean prefersAsync(String prefer) {
+        if (prefer == null) {
+            return false;
+        }
+        for (String preference : prefer.split(",")) {
+            // a preference may carry parameters after ';'
+            String token = preference.split(";", 2)[0];
+            if (RESPOND_ASYNC.equalsIgnoreCase(token.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
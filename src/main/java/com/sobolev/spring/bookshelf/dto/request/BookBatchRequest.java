@@ -0,0 +1,22 @@
+package com.sobolev.spring.bookshelf.dto.request;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Schema(description = "ids of books to fetch in one call")
+public class BookBatchRequest {
+    public static final int MAX_IDS = 500;
+
+    @NotEmpty(message = "ids are required")
+    @Size(max = MAX_IDS, message = "At most " + MAX_IDS + " ids per call")
+    @Schema(description = "book ids; books come back in this order")
+    private List<@NotNull Long> ids;
+}
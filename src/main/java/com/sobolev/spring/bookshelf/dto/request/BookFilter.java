@@ -0,0 +1,34 @@
+package com.sobolev.spring.bookshelf.dto.request;
+
+import com.sobolev.spring.bookshelf.model.BookStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Set;
+
+@Getter
+@Setter
+@Schema(description = "Book filter, all given criteria must match")
+public class BookFilter {
+    @Schema(description = "exact author name")
+    private String author;
+
+    @Schema(description = "status of book in shelf", allowableValues = {"AVAILABLE", "READ", "IN_PROGRESS"})
+    private BookStatus status;
+
+    @Schema(description = "first publication year, inclusive")
+    private Integer yearFrom;
+
+    @Schema(description = "last publication year, inclusive")
+    private Integer yearTo;
+
+    @Schema(description = "book has at least one of these genres")
+    private Set<Long> genreIds;
+
+    @Schema(description = "average rating strictly greater than this value")
+    private Double minRating;
+
+    @Schema(description = "order of results; books without publication year are left out of YEAR orders")
+    private BookSort sort = BookSort.ID;
+}
@@ -0,0 +1,34 @@
+package com.sobolev.spring.bookshelf.dto.request;
+
+import com.sobolev.spring.bookshelf.model.BookStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Set;
+
+@Getter
+@Setter
+@Schema(description = "Book row of a bulk import")
+public class BookImportRequest {
+    @NotBlank(message = "Title is required")
+    @Size(max = 255, message = "Title must be less than 255 characters")
+    private String title;
+
+    @NotBlank(message = "Author is required")
+    @Size(max = 255, message = "Author must be less than 255 characters")
+    private String author;
+
+    @Size(min = 10, max = 13, message = "ISBN must be between 10 and 13 characters")
+    private String isbn;
+
+    @Min(value = 1, message = "Publication year must be at least 1")
+    private Integer publicationYear;
+
+    @NotNull(message = "Status is required")
+    private BookStatus status;
+
+    @Schema(description = "set of genre names")
+    private Set<String> genres;
+}
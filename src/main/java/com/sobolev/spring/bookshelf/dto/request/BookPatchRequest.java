@@ -0,0 +1,39 @@
+package com.sobolev.spring.bookshelf.dto.request;
+
+import com.sobolev.spring.bookshelf.model.BookStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Set;
+
+/**
+ * Partial book update: null fields are left as they are, and genres are only touched when genreIds is sent.
+ */
+@Getter
+@Setter
+@Schema(description = "Partial book dto, null fields are not changed")
+public class BookPatchRequest {
+    @Pattern(regexp = ".*\\S.*", message = "Title must not be blank")
+    @Size(max = 255, message = "Title must be less than 255 characters")
+    @Schema(description = "title of book", example = "Ironman")
+    private String title;
+
+    @Pattern(regexp = ".*\\S.*", message = "Author must not be blank")
+    @Size(max = 255, message = "Author must be less than 255 characters")
+    private String author;
+
+    @Size(min = 10, max = 13, message = "ISBN must be between 10 and 13 characters")
+    @Schema(description = "unique number of ISBN")
+    private String isbn;
+
+    @Min(value = 1, message = "Publication year must be at least 1")
+    private Integer publicationYear;
+
+    @Schema(description = "status of book in shelf", allowableValues = {"AVAILABLE", "READ", "IN_PROGRESS"})
+    private BookStatus status;
+
+    @Schema(description = "set of genre id`s, replaces the current genres when present")
+    private Set<Long> genreIds;
+}
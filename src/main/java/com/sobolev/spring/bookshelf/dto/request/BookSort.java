@@ -0,0 +1,37 @@
+package com.sobolev.spring.bookshelf.dto.request;
+
+import com.sobolev.spring.bookshelf.model.Book;
+import lombok.Getter;
+import org.springframework.data.domain.Sort;
+
+import java.util.function.Function;
+
+/**
+ * Orders supported by the book filter. Every order ends with the id in the same direction,
+ * so it is total and can be paged with a (key, id) cursor.
+ */
+@Getter
+public enum BookSort {
+    ID("id", Sort.Direction.ASC, Book::getId),
+    YEAR("publicationYear", Sort.Direction.ASC, Book::getPublicationYear),
+    YEAR_DESC("publicationYear", Sort.Direction.DESC, Book::getPublicationYear),
+    TITLE("title", Sort.Direction.ASC, Book::getTitle),
+    POPULAR("reviewCount", Sort.Direction.DESC, Book::getReviewCount);
+
+    private final String property;
+    private final Sort.Direction direction;
+    private final Function<Book, Object> key;
+
+    BookSort(String property, Sort.Direction direction, Function<Book, Object> key) {
+        this.property = property;
+        this.direction = direction;
+        this.key = key;
+    }
+
+    public Sort toSort() {
+        if (this == ID) {
+            return Sort.by(direction, property);
+        }
+        return Sort.by(direction, property).and(Sort.by(direction, "id"));
+    }
+}
@@ -0,0 +1,17 @@
+package com.sobolev.spring.bookshelf.dto.request;
+
+import org.springframework.http.MediaType;
+
+public enum ImportFormat {
+    NDJSON, CSV;
+
+    public static final String TEXT_CSV_VALUE = "text/csv";
+
+    public static ImportFormat fromContentType(String contentType) {
+        MediaType mediaType = MediaType.parseMediaType(contentType);
+        if (mediaType.isCompatibleWith(MediaType.parseMediaType(TEXT_CSV_VALUE))) {
+            return CSV;
+        }
+        return NDJSON;
+    }
+}
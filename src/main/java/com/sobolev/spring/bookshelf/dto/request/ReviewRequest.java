@@ -5,6 +5,7 @@ import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -16,6 +17,8 @@ public class ReviewRequest {
     @Schema(description = "Type Long")
     private Long bookId;
 
+    // PostgreSQL text cannot store NUL, so such a review must be refused here rather than fail its insert later
+    @Pattern(regexp = "[^\\x00]*", message = "Content must not contain NUL characters")
     private String content;
 
     @NotNull
@@ -0,0 +1,22 @@
+package com.sobolev.spring.bookshelf.dto.request;
+
+import com.sobolev.spring.bookshelf.repository.projection.ReviewView;
+import lombok.Getter;
+
+import java.util.function.Function;
+
+/**
+ * Orders of a book's review feed. Both end with the id descending, so the feed is paged
+ * with a (key, id) cursor.
+ */
+@Getter
+public enum ReviewSort {
+    NEWEST(ReviewView::getCreatedAt),
+    RATING(ReviewView::getRating);
+
+    private final Function<ReviewView, Object> key;
+
+    ReviewSort(Function<ReviewView, Object> key) {
+        this.key = key;
+    }
+}
@@ -0,0 +1,17 @@
+package com.sobolev.spring.bookshelf.dto.response;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+public class BookBatchResponse {
+    /**
+     * Found books in the order their ids were requested, each id once.
+     */
+    private List<BookResponse> books = new ArrayList<>();
+    private List<Long> missingIds = new ArrayList<>();
+}
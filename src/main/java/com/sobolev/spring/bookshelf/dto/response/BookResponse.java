@@ -18,4 +18,5 @@ public class BookResponse {
     private Set<GenreResponse> genres;
     private Integer reviewCount;
     private Double averageRating;
+    private long version;
 }
@@ -0,0 +1,12 @@
+package com.sobolev.spring.bookshelf.dto.response;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class GenreBookCountResponse {
+    private Long id;
+    private String name;
+    private long bookCount;
+}
@@ -0,0 +1,13 @@
+package com.sobolev.spring.bookshelf.dto.response;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class GenreBooksResponse {
+    private Long id;
+    private String name;
+    private long bookCount;
+    private CursorPage<BookResponse> books;
+}
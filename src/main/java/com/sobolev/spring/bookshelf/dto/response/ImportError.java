@@ -0,0 +1,11 @@
+package com.sobolev.spring.bookshelf.dto.response;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class ImportError {
+    private long line;
+    private String message;
+}
@@ -0,0 +1,18 @@
+package com.sobolev.spring.bookshelf.dto.response;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+public class ImportReport {
+    private long imported;
+    private long failed;
+    /**
+     * First errors of the import; {@code failed} keeps counting past this list.
+     */
+    private List<ImportError> errors = new ArrayList<>();
+}
@@ -1,5 +1,6 @@
 package com.sobolev.spring.bookshelf.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -12,5 +13,13 @@ public class ReviewResponse {
     private String content;
     private Integer rating;
     private LocalDateTime createdAt;
+    private Long bookId;
+    private String bookTitle;
+    private long version;
+
+    /**
+     * The full book, only filled in when the client asks for {@code expand=book}.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private BookResponse book;
 }
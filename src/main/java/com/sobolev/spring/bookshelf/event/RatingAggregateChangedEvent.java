@@ -0,0 +1,18 @@
+package com.sobolev.spring.bookshelf.event;
+
+import com.sobolev.spring.bookshelf.repository.projection.BookRatingView;
+import lombok.Getter;
+
+/**
+ * A book's stored rating aggregates changed; carries the values written.
+ */
+@Getter
+public class RatingAggregateChangedEvent {
+    private final Long bookId;
+    private final BookRatingView rating;
+
+    public RatingAggregateChangedEvent(BookRatingView rating) {
+        this.bookId = rating.getId();
+        this.rating = rating;
+    }
+}
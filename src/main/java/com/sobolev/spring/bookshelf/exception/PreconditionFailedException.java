@@ -0,0 +1,7 @@
+package com.sobolev.spring.bookshelf.exception;
+
+public class PreconditionFailedException extends RuntimeException {
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,30 @@
+package com.sobolev.spring.bookshelf.ingest;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.sobolev.spring.bookshelf.dto.request.ReviewRequest;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * A validated review waiting in the queue, as it is stored in the {@link ReviewIngestLog}. It keeps the time
+ * it was accepted as its creation time, so the feed orders it by when the client posted it rather than when
+ * the batch was written. Sequence numbers follow the log order and only grow.
+ */
+@Getter
+public final class AcceptedReview {
+
+    private final long sequence;
+    private final ReviewRequest request;
+    private final LocalDateTime createdAt;
+
+    @JsonCreator
+    public AcceptedReview(@JsonProperty("sequence") long sequence,
+                          @JsonProperty("request") ReviewRequest request,
+                          @JsonProperty("createdAt") LocalDateTime createdAt) {
+        this.sequence = sequence;
+        this.request = request;
+        this.createdAt = createdAt;
+    }
+}
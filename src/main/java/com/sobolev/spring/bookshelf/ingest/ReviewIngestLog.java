@@ -0,0 +1,377 @@
+package com.sobolev.spring.bookshelf.ingest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sobolev.spring.bookshelf.dto.request.ReviewRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Append-only file log behind the {@link ReviewIngestQueue}, in {@code bookshelf.reviews.queue.log-dir}.
+ * A review is acknowledged only once its entry is forced to disk, and {@link #open} returns the entries the
+ * database checkpoint does not cover yet, so accepted reviews survive a crash or a drain that timed out.
+ * Entries are JSON lines in segment files named after their first sequence number; a segment is deleted once
+ * the checkpoint covers its last entry. Forces are shared: one force covers every entry appended before it.
+ * <p>
+ * A review the database refuses for a reason other than a transient one is {@linkplain #park parked} in
+ * {@code unwritable.log}, which is never replayed nor deleted and is reported on every start.
+ */
+@Component
+@Slf4j
+public class ReviewIngestLog {
+
+    private static final String ID_FILE = "log-id";
+    private static final String SEGMENT_PREFIX = "reviews-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String UNWRITABLE_FILE = "unwritable.log";
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final ObjectMapper objectMapper;
+
+    // Where both are held, forceLock is taken first.
+    private final ReentrantLock forceLock = new ReentrantLock();
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    private volatile UUID id;
+    // Guarded by appendLock; replaced only while forceLock is held too.
+    private FileChannel segment;
+    private Path segmentPath;
+    private long segmentSize;
+    private long lastSequence;
+    // Bytes appended over all segments, guarded by appendLock, and how many of them are on disk.
+    private long appendedBytes;
+    private volatile long forcedBytes;
+    // Set when a failed append could not be undone: the segment may end in a partial line.
+    private boolean broken;
+    // Segments no longer appended to, oldest first; used by open() and then by the consumer thread only.
+    private final Deque<Segment> fullSegments = new ArrayDeque<>();
+    private FileChannel unwritable;
+    private volatile int unwritableCount;
+
+    @Autowired
+    public ReviewIngestLog(ObjectMapper objectMapper,
+                           @Value("${bookshelf.reviews.queue.log-dir:review-log}") Path directory,
+                           @Value("${bookshelf.reviews.queue.segment-size:16MB}") DataSize segmentSize) {
+        this.objectMapper = objectMapper;
+        this.directory = directory;
+        this.segmentBytes = segmentSize.toBytes();
+    }
+
+    /**
+     * Id of the log under which its checkpoint is stored, created with the log directory on first use.
+     */
+    public UUID loadId() throws IOException {
+        if (id == null) {
+            Files.createDirectories(directory);
+            Path idFile = directory.resolve(ID_FILE);
+            if (!Files.exists(idFile)) {
+                Path tmp = directory.resolve(ID_FILE + ".tmp");
+                Files.writeString(tmp, UUID.randomUUID().toString());
+                try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+                Files.move(tmp, idFile, StandardCopyOption.ATOMIC_MOVE);
+                forceDirectory();
+            }
+            id = UUID.fromString(Files.readString(idFile).trim());
+        }
+        return id;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int unwritableCount() {
+        return unwritableCount;
+    }
+
+    /**
+     * Opens the log for appending and returns, oldest first, the entries after {@code writtenSequence} that
+     * were not parked. New entries are numbered after every sequence number seen, in the log or the database.
+     */
+    public List<AcceptedReview> open(long writtenSequence) throws IOException {
+        loadId();
+        Set<Long> parked = new HashSet<>();
+        Path unwritablePath = directory.resolve(UNWRITABLE_FILE);
+        if (Files.exists(unwritablePath)) {
+            read(unwritablePath, review -> parked.add(review.getSequence()));
+        }
+        unwritableCount = parked.size();
+
+        List<AcceptedReview> unwritten = new ArrayList<>();
+        long last = writtenSequence;
+        fullSegments.clear();
+        for (Path path : segmentPaths()) {
+            long[] segmentLast = {0};
+            read(path, review -> {
+                segmentLast[0] = Math.max(segmentLast[0], review.getSequence());
+                if (review.getSequence() > writtenSequence && !parked.contains(review.getSequence())) {
+                    unwritten.add(review);
+                }
+            });
+            if (segmentLast[0] == 0) {
+                // No entry to keep, and its name may be the one the new segment gets.
+                Files.delete(path);
+                continue;
+            }
+            last = Math.max(last, segmentLast[0]);
+            fullSegments.add(new Segment(path, segmentLast[0]));
+        }
+
+        forceLock.lock();
+        appendLock.lock();
+        try {
+            lastSequence = last;
+            appendedBytes = 0;
+            forcedBytes = 0;
+            broken = false;
+            switchSegment();
+        } finally {
+            appendLock.unlock();
+            forceLock.unlock();
+        }
+        unwritable = FileChannel.open(unwritablePath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        deleteWritten(writtenSequence);
+        return unwritten;
+    }
+
+    /**
+     * Appends the review and adds it to the queue, under one lock so the queue holds entries in log order.
+     * Returns the position to {@linkplain #force force} the log to, or -1 when the queue has no room, in
+     * which case nothing is appended. Apart from the replay of {@link #open}'s entries, which precedes every
+     * append, only this method may add to the queue.
+     */
+    public long append(ReviewRequest request, BlockingQueue<AcceptedReview> queue) throws IOException {
+        appendLock.lock();
+        try {
+            if (segment == null || broken) {
+                throw new IOException("Review log in " + directory + " is not open for appending");
+            }
+            // Only appenders add, so room seen here is still there after the write.
+            if (queue.remainingCapacity() == 0) {
+                return -1;
+            }
+            AcceptedReview review = new AcceptedReview(lastSequence + 1, request, LocalDateTime.now());
+            ByteBuffer line = encode(review);
+            int length = line.remaining();
+            try {
+                while (line.hasRemaining()) {
+                    segment.write(line, segmentSize + length - line.remaining());
+                }
+            } catch (IOException e) {
+                undoAppend();
+                throw e;
+            }
+            lastSequence++;
+            segmentSize += length;
+            appendedBytes += length;
+            queue.add(review);
+            return appendedBytes;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Returns once everything up to the position is on disk. A caller finding a force under way waits for
+     * it and then forces whatever was appended meanwhile, including the entries of the callers behind it.
+     */
+    public void force(long position) throws IOException {
+        forceLock.lock();
+        try {
+            if (forcedBytes >= position) {
+                return;
+            }
+            FileChannel channel;
+            long target;
+            appendLock.lock();
+            try {
+                channel = segment;
+                target = appendedBytes;
+            } finally {
+                appendLock.unlock();
+            }
+            if (channel == null) {
+                throw new IOException("Review log in " + directory + " is closed");
+            }
+            channel.force(false);
+            forcedBytes = target;
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    /**
+     * Called by the consumer once the database checkpoint covers {@code sequence}: starts a new segment when
+     * the current one is full and deletes the segments that are written entirely.
+     */
+    public void written(long sequence) {
+        try {
+            forceLock.lock();
+            appendLock.lock();
+            try {
+                if (segment != null && segmentSize >= segmentBytes) {
+                    segment.force(false);
+                    fullSegments.add(new Segment(segmentPath, lastSequence));
+                    switchSegment();
+                    forcedBytes = appendedBytes;
+                }
+            } finally {
+                appendLock.unlock();
+                forceLock.unlock();
+            }
+            deleteWritten(sequence);
+        } catch (IOException e) {
+            // The entries stay and the checkpoint filters them on replay; the next call tries again.
+            log.error("Failed to clean up the review log in {}", directory, e);
+        }
+    }
+
+    /**
+     * Keeps a review the database refused in {@code unwritable.log}, on disk when this returns.
+     */
+    public void park(AcceptedReview review) throws IOException {
+        ByteBuffer line = encode(review);
+        while (line.hasRemaining()) {
+            unwritable.write(line);
+        }
+        unwritable.force(false);
+        unwritableCount++;
+    }
+
+    public void close() {
+        forceLock.lock();
+        appendLock.lock();
+        try {
+            if (segment != null) {
+                segment.force(false);
+                segment.close();
+                segment = null;
+                forcedBytes = appendedBytes;
+            }
+            if (unwritable != null) {
+                unwritable.close();
+                unwritable = null;
+            }
+        } catch (IOException e) {
+            log.error("Failed to close the review log in {}", directory, e);
+        } finally {
+            appendLock.unlock();
+            forceLock.unlock();
+        }
+    }
+
+    private void undoAppend() {
+        try {
+            segment.truncate(segmentSize);
+        } catch (IOException e) {
+            broken = true;
+            log.error("Failed to undo a partial append to {}, not appending to the review log until restart",
+                    segmentPath, e);
+        }
+    }
+
+    /**
+     * Starts a segment for the entries after lastSequence; the current one, if any, is closed only once the
+     * new one is open.
+     */
+    private void switchSegment() throws IOException {
+        Path path = directory.resolve(SEGMENT_PREFIX + String.format("%020d", lastSequence + 1) + SEGMENT_SUFFIX);
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        forceDirectory();
+        if (segment != null) {
+            segment.close();
+        }
+        segment = channel;
+        segmentPath = path;
+        segmentSize = 0;
+    }
+
+    private void deleteWritten(long sequence) throws IOException {
+        while (!fullSegments.isEmpty() && fullSegments.peekFirst().lastSequence <= sequence) {
+            Files.deleteIfExists(fullSegments.pollFirst().path);
+        }
+    }
+
+    private List<Path> segmentPaths() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private void read(Path path, Consumer<AcceptedReview> action) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    action.accept(objectMapper.readValue(line, AcceptedReview.class));
+                } catch (JsonProcessingException e) {
+                    // Only the append cut short by a crash, which was never acknowledged, ends up here.
+                    log.warn("Skipping an incomplete entry in {}", path);
+                }
+            }
+        }
+    }
+
+    private ByteBuffer encode(AcceptedReview review) throws IOException {
+        // JSON escapes line breaks inside strings, so an entry is exactly one line.
+        byte[] json = objectMapper.writeValueAsBytes(review);
+        ByteBuffer line = ByteBuffer.allocate(json.length + 1);
+        line.put(json).put((byte) '\n').flip();
+        return line;
+    }
+
+    private void forceDirectory() {
+        // Makes a created or renamed file's directory entry durable; not supported on every platform.
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Cannot force the directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private record Segment(Path path, long lastSequence) {
+    }
+}
@@ -0,0 +1,384 @@
+package com.sobolev.spring.bookshelf.ingest;
+
+import com.sobolev.spring.bookshelf.dto.request.ReviewRequest;
+import com.sobolev.spring.bookshelf.exception.QueueFullException;
+import com.sobolev.spring.bookshelf.repository.BookRepository;
+import com.sobolev.spring.bookshelf.service.ReviewService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind queue for {@code POST /api/reviews} with {@code Prefer: respond-async}, enabled by
+ * {@code bookshelf.reviews.async.enabled}. A review is acknowledged only once it is in the bounded queue and
+ * forced to the {@link ReviewIngestLog}; a full queue rejects it with 503 instead. Before that, the request
+ * passes every check the insert makes: validation of the request, and the book's existence. One consumer
+ * thread writes batches with a multi-row insert that advances the log's checkpoint in the same transaction.
+ * Failures are retried with backoff, so a database outage turns into backpressure, not loss. A failure that
+ * is not transient is caused by some row of the batch, so the batch is split until the rows the database
+ * refuses are isolated; those are parked in the log, reported, and never dropped.
+ * <p>
+ * A graceful shutdown drains the queue (it stops after the web server and before the rating flush), for at
+ * most {@code spring.lifecycle.timeout-per-shutdown-phase}. Whatever it could not write, or a killed process
+ * left behind, stays in the log and is written on the next start, before new reviews are taken.
+ */
+@Component
+@Slf4j
+public class ReviewIngestQueue implements SmartLifecycle {
+
+    private static final long POLL_MILLIS = 200;
+    private static final long MIN_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+    // Left to a consumer that is still inside a write when the drain timeout is up.
+    private static final long INTERRUPT_GRACE_MILLIS = 1000;
+
+    private final ReviewService reviewService;
+    private final BookRepository bookRepository;
+    private final ReviewIngestLog reviewLog;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration drainTimeout;
+    private final BlockingQueue<AcceptedReview> queue;
+    private final Counter accepted;
+    private final Counter rejected;
+    private final Counter written;
+    private final Counter skipped;
+    // Accepted and neither written, skipped nor parked yet: the queue plus the batch being written.
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    // Submitters announce themselves before checking accepting, and stop() clears accepting before
+    // waiting for them, so no review is offered after the consumer saw the queue closed and empty.
+    private final AtomicInteger submitting = new AtomicInteger();
+    private volatile boolean accepting;
+    private volatile boolean closed;
+    private volatile long drainDeadline;
+    private UUID logId;
+    private Thread consumer;
+
+    @Autowired
+    public ReviewIngestQueue(ReviewService reviewService, BookRepository bookRepository, ReviewIngestLog reviewLog,
+                             MeterRegistry meterRegistry,
+                             @Value("${bookshelf.reviews.async.enabled:false}") boolean enabled,
+                             @Value("${bookshelf.reviews.queue.capacity:10000}") int capacity,
+                             @Value("${bookshelf.reviews.queue.batch-size:500}") int batchSize,
+                             @Value("${spring.lifecycle.timeout-per-shutdown-phase:30s}") Duration drainTimeout) {
+        this.reviewService = reviewService;
+        this.bookRepository = bookRepository;
+        this.reviewLog = reviewLog;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.drainTimeout = drainTimeout;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+
+        Gauge.builder("bookshelf.reviews.queue.depth", queue, BlockingQueue::size)
+                .description("Accepted reviews not written yet")
+                .register(meterRegistry);
+        Gauge.builder("bookshelf.reviews.queue.remaining", queue, BlockingQueue::remainingCapacity)
+                .description("Reviews the queue can take before it answers 503")
+                .register(meterRegistry);
+        this.accepted = Counter.builder("bookshelf.reviews.queue.accepted")
+                .description("Reviews acknowledged with 202")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("bookshelf.reviews.queue.rejected")
+                .description("Reviews refused with 503 because the queue was full or closed, or the log not writable")
+                .register(meterRegistry);
+        this.written = Counter.builder("bookshelf.reviews.queue.written")
+                .description("Queued reviews inserted")
+                .register(meterRegistry);
+        this.skipped = Counter.builder("bookshelf.reviews.queue.skipped")
+                .description("Queued reviews not inserted because their book was deleted meanwhile")
+                .register(meterRegistry);
+        Gauge.builder("bookshelf.reviews.queue.outstanding", outstanding, AtomicInteger::get)
+                .description("Accepted reviews not written yet, including the batch being written")
+                .register(meterRegistry);
+        Gauge.builder("bookshelf.reviews.queue.unwritable", reviewLog, ReviewIngestLog::unwritableCount)
+                .description("Accepted reviews the database refused, kept in the log's unwritable file")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the review or throws; returning normally is the only case in which the caller may answer 202.
+     */
+    public void submit(ReviewRequest reviewRequest) {
+        Long bookId = reviewRequest.getBookId();
+        if (!bookRepository.existsById(bookId)) {
+            log.error("Book not found");
+            throw new RuntimeException("Book not found with id " + bookId);
+        }
+
+        submitting.incrementAndGet();
+        try {
+            if (!accepting) {
+                rejected.increment();
+                throw new QueueFullException("Review queue is not accepting reviews, retry later");
+            }
+            // Counted before the append, so the consumer can never resolve a review that is not counted yet.
+            outstanding.incrementAndGet();
+            long position;
+            try {
+                position = reviewLog.append(reviewRequest, queue);
+            } catch (IOException e) {
+                outstanding.decrementAndGet();
+                rejected.increment();
+                log.error("Failed to append a review to the review log", e);
+                throw new QueueFullException("Review log is not writable, retry later");
+            }
+            if (position < 0) {
+                outstanding.decrementAndGet();
+                rejected.increment();
+                throw new QueueFullException("Review queue is full, retry later");
+            }
+            try {
+                reviewLog.force(position);
+            } catch (IOException e) {
+                // Queued already, so it is written unless the process dies first; not durable, so not acknowledged.
+                rejected.increment();
+                log.error("Failed to force the review log to disk", e);
+                throw new QueueFullException("Review log is not writable, retry later");
+            }
+            accepted.increment();
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Opens the log and queues what it holds beyond the checkpoint before taking new reviews, so the queue
+     * stays in log order. Fails the startup when the log cannot be read.
+     */
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        List<AcceptedReview> unwritten;
+        try {
+            logId = reviewLog.loadId();
+            unwritten = reviewLog.open(reviewService.findWrittenSequence(logId));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open the review log in " + reviewLog.getDirectory(), e);
+        }
+        if (reviewLog.unwritableCount() > 0) {
+            log.error("{} accepted reviews the database refused are kept in {}",
+                    reviewLog.unwritableCount(), reviewLog.getDirectory());
+        }
+        // Anything left from a previous run in this process is in the log, and so in unwritten.
+        queue.clear();
+        outstanding.set(0);
+        closed = false;
+        consumer = new Thread(this::consume, "review-ingest");
+        consumer.start();
+        if (!unwritten.isEmpty()) {
+            log.warn("Writing {} reviews accepted before the last shutdown", unwritten.size());
+            try {
+                for (AcceptedReview review : unwritten) {
+                    outstanding.incrementAndGet();
+                    queue.put(review);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while replaying the review log", e);
+            }
+        }
+        accepting = true;
+        log.info("Started review queue with capacity {}", queue.remainingCapacity() + queue.size());
+    }
+
+    /**
+     * Drains the queue for at most {@code spring.lifecycle.timeout-per-shutdown-phase}, so the later phases,
+     * including the rating flush of the drained reviews, still run when the database is down.
+     */
+    @Override
+    public void stop() {
+        if (consumer == null) {
+            return;
+        }
+        accepting = false;
+        while (submitting.get() != 0) {
+            Thread.onSpinWait();
+        }
+        drainDeadline = System.nanoTime() + drainTimeout.toNanos();
+        closed = true;
+        log.info("Draining {} queued reviews", queue.size());
+        try {
+            consumer.join(drainTimeout.toMillis());
+            if (consumer.isAlive()) {
+                consumer.interrupt();
+                consumer.join(INTERRUPT_GRACE_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int unwritten = outstanding.get();
+        if (consumer.isAlive()) {
+            // Still inside a write, which may yet commit; the checkpoint tells the next start either way.
+            log.error("Review queue did not drain within {}, {} accepted reviews not written yet are kept in {}",
+                    drainTimeout, unwritten, reviewLog.getDirectory());
+            return;
+        }
+        reviewLog.close();
+        consumer = null;
+        if (unwritten > 0) {
+            log.error("Review queue did not drain within {}, {} accepted reviews are kept in {} and written on the next start",
+                    drainTimeout, unwritten, reviewLog.getDirectory());
+        } else {
+            log.info("Drained the review queue");
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return accepting;
+    }
+
+    @Override
+    public int getPhase() {
+        // Between the web server and RatingFlushJob, which flushes the deltas of the last batches.
+        return SmartLifecycle.DEFAULT_PHASE - 3072;
+    }
+
+    private void consume() {
+        List<AcceptedReview> batch = new ArrayList<>(batchSize);
+        while (!closed || !queue.isEmpty()) {
+            if (drainTimedOut()) {
+                return;
+            }
+            try {
+                AcceptedReview first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                if (!write(batch)) {
+                    return;
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                log.error("Review queue consumer interrupted");
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes the batch, retrying transient failures with backoff. Returns false when it gave up at shutdown;
+     * nothing behind the batch may be written then, or the checkpoint would pass reviews that are not.
+     */
+    private boolean write(List<AcceptedReview> batch) throws InterruptedException {
+        long backoff = MIN_BACKOFF_MILLIS;
+        while (true) {
+            try {
+                int count = reviewService.createAll(logId, batch);
+                written.increment(count);
+                if (count < batch.size()) {
+                    skipped.increment(batch.size() - count);
+                    log.warn("Skipped {} queued reviews of deleted books", batch.size() - count);
+                }
+                outstanding.addAndGet(-batch.size());
+                reviewLog.written(batch.get(batch.size() - 1).getSequence());
+                return true;
+            } catch (RuntimeException e) {
+                if (!isTransient(e)) {
+                    return batch.size() == 1 ? park(batch.get(0), e) : split(batch, e);
+                }
+                if (drainTimedOut()) {
+                    log.error("Failed to write {} queued reviews, leaving them in the review log at shutdown",
+                            batch.size(), e);
+                    return false;
+                }
+                log.error("Failed to write {} queued reviews, retrying in {} ms", batch.size(), backoff, e);
+                TimeUnit.MILLISECONDS.sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Writes the halves of a batch that failed for a reason retrying cannot fix, down to the single rows
+     * that fail on their own.
+     */
+    private boolean split(List<AcceptedReview> batch, RuntimeException cause) throws InterruptedException {
+        log.warn("Failed to write {} queued reviews, writing them in halves: {}", batch.size(), cause.getMessage());
+        int half = batch.size() / 2;
+        return write(batch.subList(0, half)) && write(batch.subList(half, batch.size()));
+    }
+
+    /**
+     * Moves a review the database refuses out of the way of the reviews behind it, into the log's unwritable
+     * file, from which it is reported until someone deals with it. Until it is there, it blocks the queue.
+     */
+    private boolean park(AcceptedReview review, RuntimeException cause) throws InterruptedException {
+        long backoff = MIN_BACKOFF_MILLIS;
+        while (true) {
+            try {
+                reviewLog.park(review);
+                outstanding.decrementAndGet();
+                log.error("Database refused queued review {} of book {}, kept in {}", review.getSequence(),
+                        review.getRequest().getBookId(), reviewLog.getDirectory(), cause);
+                return true;
+            } catch (IOException e) {
+                if (drainTimedOut()) {
+                    log.error("Failed to keep refused review {} aside, leaving it in the review log at shutdown",
+                            review.getSequence(), e);
+                    return false;
+                }
+                log.error("Failed to keep refused review {} aside, retrying in {} ms", review.getSequence(), backoff, e);
+                TimeUnit.MILLISECONDS.sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    private boolean drainTimedOut() {
+        return closed && System.nanoTime() - drainDeadline > 0;
+    }
+
+    /**
+     * Failures that the same statement may not hit again: lost or refused connections, and conflicts
+     * with concurrent transactions.
+     */
+    private static boolean isTransient(RuntimeException e) {
+        if (e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException || e instanceof CannotCreateTransactionException) {
+            return true;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTransientException || cause instanceof SQLRecoverableException) {
+                return true;
+            }
+            // SQLSTATE class 08: connection exception
+            if (cause instanceof SQLException sqlException && sqlException.getSQLState() != null
+                    && sqlException.getSQLState().startsWith("08")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
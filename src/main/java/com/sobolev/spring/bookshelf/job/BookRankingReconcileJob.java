@@ -0,0 +1,33 @@
+package com.sobolev.spring.bookshelf.job;
+
+import com.sobolev.spring.bookshelf.service.BookRankingService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@Slf4j
+public class BookRankingReconcileJob {
+
+    private final BookRankingService bookRankingService;
+
+    @Autowired
+    public BookRankingReconcileJob(BookRankingService bookRankingService) {
+        this.bookRankingService = bookRankingService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        log.info("Start initial load of book rankings");
+        bookRankingService.reconcile();
+    }
+
+    @Scheduled(fixedDelayString = "${bookshelf.rankings.reconcile-interval:5m}",
+            initialDelayString = "${bookshelf.rankings.reconcile-interval:5m}")
+    public void run() {
+        bookRankingService.reconcile();
+    }
+}
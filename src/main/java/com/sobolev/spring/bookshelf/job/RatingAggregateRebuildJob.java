@@ -0,0 +1,51 @@
+package com.sobolev.spring.bookshelf.job;
+
+import com.sobolev.spring.bookshelf.service.RatingAggregateService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@Slf4j
+public class RatingAggregateRebuildJob {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final RatingAggregateService ratingAggregateService;
+    private final int chunkSize;
+
+    @Autowired
+    public RatingAggregateRebuildJob(RatingAggregateService ratingAggregateService,
+                                     @Value("${bookshelf.ratings.rebuild-chunk-size:10000}") int chunkSize) {
+        this.ratingAggregateService = ratingAggregateService;
+        this.chunkSize = chunkSize;
+    }
+
+    @Scheduled(cron = "${bookshelf.ratings.rebuild-cron:0 30 3 * * *}")
+    public void run() {
+        long maxId = ratingAggregateService.findMaxBookId().orElse(0L);
+        log.info("Start rebuild of rating aggregates up to book id {}", maxId);
+        int repaired = 0;
+        for (long fromId = 1; fromId <= maxId; fromId += chunkSize) {
+            repaired += rebuildChunk(fromId, fromId + chunkSize - 1);
+        }
+        log.info("End rebuild of rating aggregates, repaired {} books", repaired);
+    }
+
+    private int rebuildChunk(long fromId, long toId) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return ratingAggregateService.rebuildRange(fromId, toId);
+            } catch (ConcurrencyFailureException e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    log.error("Skip rebuild of book range [{}, {}] after {} attempts", fromId, toId, attempt);
+                    return 0;
+                }
+                log.info("Concurrent review write in book range [{}, {}], retrying", fromId, toId);
+            }
+        }
+    }
+}
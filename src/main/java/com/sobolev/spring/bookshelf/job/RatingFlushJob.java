@@ -0,0 +1,100 @@
+package com.sobolev.spring.bookshelf.job;
+
+import com.sobolev.spring.bookshelf.rating.PendingRatings;
+import com.sobolev.spring.bookshelf.rating.RatingDelta;
+import com.sobolev.spring.bookshelf.service.RatingAggregateService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Moves buffered rating deltas into the book table. Runs in a lifecycle phase below the web server's,
+ * so on startup a crashed previous run is repaired before the first request, and on shutdown the
+ * final flush happens after the last request has finished.
+ */
+@Component
+@Slf4j
+public class RatingFlushJob implements SmartLifecycle {
+
+    private final PendingRatings pendingRatings;
+    private final RatingAggregateService ratingAggregateService;
+    private final RatingAggregateRebuildJob rebuildJob;
+    private final int batchSize;
+    // A lock rather than synchronized, which would pin a virtual thread's carrier across the JDBC calls.
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private volatile boolean running;
+
+    @Autowired
+    public RatingFlushJob(PendingRatings pendingRatings, RatingAggregateService ratingAggregateService,
+                          RatingAggregateRebuildJob rebuildJob,
+                          @Value("${bookshelf.ratings.flush-batch-size:500}") int batchSize) {
+        this.pendingRatings = pendingRatings;
+        this.ratingAggregateService = ratingAggregateService;
+        this.rebuildJob = rebuildJob;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void start() {
+        if (!ratingAggregateService.markRunning()) {
+            log.warn("Previous run did not shut down cleanly, rebuilding rating aggregates from reviews");
+            rebuildJob.run();
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            flush();
+            ratingAggregateService.markStopped();
+            log.info("Flushed pending rating deltas on shutdown");
+        } catch (RuntimeException e) {
+            log.error("Failed to flush rating deltas on shutdown, aggregates will be rebuilt on next start", e);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    @Scheduled(fixedDelayString = "${bookshelf.ratings.flush-interval:1s}")
+    public void run() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // The deltas stay pending and are retried on the next run.
+            log.error("Failed to flush rating deltas", e);
+        }
+    }
+
+    private void flush() {
+        flushLock.lock();
+        try {
+            List<RatingDelta> deltas = pendingRatings.unflushed();
+            for (int from = 0; from < deltas.size(); from += batchSize) {
+                ratingAggregateService.flush(deltas.subList(from, Math.min(from + batchSize, deltas.size())));
+            }
+            pendingRatings.retireIdle();
+            if (!deltas.isEmpty()) {
+                log.debug("Flushed rating deltas of {} books", deltas.size());
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+}
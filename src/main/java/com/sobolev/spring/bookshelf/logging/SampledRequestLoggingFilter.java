@@ -0,0 +1,57 @@
+package com.sobolev.spring.bookshelf.logging;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * One access line for a random sample of requests, plus every server error and every slow request.
+ * Replaces the per-call INFO logging of controllers, which now log at DEBUG.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Slf4j
+public class SampledRequestLoggingFilter extends OncePerRequestFilter {
+
+    private final double sampleRate;
+    private final long slowThresholdMillis;
+
+    @Autowired
+    public SampledRequestLoggingFilter(@Value("${bookshelf.logging.request-sample-rate:0.01}") double sampleRate,
+                                       @Value("${bookshelf.logging.slow-request-threshold:1s}") Duration slowThreshold) {
+        this.sampleRate = sampleRate;
+        this.slowThresholdMillis = slowThreshold.toMillis();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            int status = response.getStatus();
+            if (log.isInfoEnabled() && (status >= 500 || millis >= slowThresholdMillis
+                    || ThreadLocalRandom.current().nextDouble() < sampleRate)) {
+                log.atInfo()
+                        .addKeyValue("method", request.getMethod())
+                        .addKeyValue("uri", request.getRequestURI())
+                        .addKeyValue("status", status)
+                        .addKeyValue("durationMs", millis)
+                        .log("{} {} {} {}ms", request.getMethod(), request.getRequestURI(), status, millis);
+            }
+        }
+    }
+}
@@ -5,6 +5,8 @@ import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -14,9 +16,13 @@ import java.util.Set;
 @Entity
 @Getter
 @Setter
+@NamedEntityGraph(name = Book.GRAPH_GENRES, attributeNodes = @NamedAttributeNode("genres"))
 public class Book {
+    public static final String GRAPH_GENRES = "Book.genres";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+    @SequenceGenerator(name = "book_seq", sequenceName = "book_id_seq", allocationSize = 50)
     private Long id;
 
     @NotNull
@@ -35,7 +41,34 @@ public class Book {
     @Enumerated(EnumType.STRING)
     private BookStatus status = BookStatus.AVAILABLE;
 
+    /**
+     * Bumped by every edit of the book itself or of its genres. The rating aggregates below are not edits and
+     * leave it alone, so reviews never conflict with a client holding this version.
+     */
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private long version;
+
+    /**
+     * Denormalized review aggregates. They are maintained only by the batched delta updates
+     * {@code RatingAggregateService} flushes, so entity flushes never write them; deltas of
+     * the latest reviews are merged in from {@code PendingRatings} when a book is mapped.
+     */
+    @ColumnDefault("0")
+    @Column(name = "review_count", nullable = false, insertable = false, updatable = false)
+    private int reviewCount;
+
+    @ColumnDefault("0")
+    @Column(name = "rating_sum", nullable = false, insertable = false, updatable = false)
+    private long ratingSum;
+
+    /**
+     * Only the book side maps book_genre. Genres keep no back-reference, since touching the books of a large genre
+     * would load all of them; books of a genre are paged by id from the join table instead.
+     */
     @ManyToMany
+    @BatchSize(size = 100)
     @JoinTable(
             name = "book_genre",
             joinColumns = @JoinColumn(name = "book_id"),
@@ -55,14 +88,4 @@ public class Book {
         this.reviews.remove(review);
         review.setBook(null);
     }
-
-    public void addGenre(Genre genre) {
-        this.genres.add(genre);
-        genre.getBooks().add(this);
-    }
-
-    public void removeGenre(Genre genre) {
-        this.genres.remove(genre);
-        genre.getBooks().remove(this);
-    }
 }
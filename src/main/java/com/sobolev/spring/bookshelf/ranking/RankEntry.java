@@ -0,0 +1,24 @@
+package com.sobolev.spring.bookshelf.ranking;
+
+import lombok.Getter;
+
+import java.util.Comparator;
+
+@Getter
+public final class RankEntry {
+
+    /**
+     * Highest score first, ties broken by the highest book id, so every entry has a unique position.
+     */
+    public static final Comparator<RankEntry> ORDER = Comparator
+            .comparingDouble(RankEntry::getScore).reversed()
+            .thenComparing(Comparator.comparingLong(RankEntry::getBookId).reversed());
+
+    private final long bookId;
+    private final double score;
+
+    public RankEntry(long bookId, double score) {
+        this.bookId = bookId;
+        this.score = score;
+    }
+}
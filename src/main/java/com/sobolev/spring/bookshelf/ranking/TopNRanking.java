@@ -0,0 +1,91 @@
+package com.sobolev.spring.bookshelf.ranking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoublePredicate;
+
+/**
+ * Lock-free bounded ranking of books by score. Entries are kept in a skip list ordered by
+ * {@link RankEntry#ORDER}, so a page after a given entry costs O(log n + page).
+ * When the ranking grows past its capacity the lowest entries are dropped; a book that fell
+ * out comes back on its next score update or on the next reconciliation. Once that happened the
+ * ranking is {@linkplain #isTruncated() truncated}: books may exist below its last entry.
+ */
+public class TopNRanking {
+
+    private final int capacity;
+    private final ConcurrentSkipListSet<RankEntry> entries = new ConcurrentSkipListSet<>(RankEntry.ORDER);
+    private final ConcurrentHashMap<Long, RankEntry> byBookId = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile boolean truncated;
+
+    public TopNRanking(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void update(long bookId, double score) {
+        RankEntry next = new RankEntry(bookId, score);
+        byBookId.compute(bookId, (id, previous) -> {
+            if (previous != null && entries.remove(previous)) {
+                size.decrementAndGet();
+            }
+            if (entries.add(next)) {
+                size.incrementAndGet();
+            }
+            return next;
+        });
+        trim();
+    }
+
+    public void remove(long bookId) {
+        byBookId.computeIfPresent(bookId, (id, previous) -> {
+            if (entries.remove(previous)) {
+                size.decrementAndGet();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Records that books were left out when the ranking was filled, e.g. because the source had more than capacity.
+     */
+    public void markTruncated() {
+        truncated = true;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Returns up to {@code limit} entries strictly after {@code after} (from the top when null),
+     * stopping at the first entry whose score does not match {@code scoreFilter}.
+     */
+    public List<RankEntry> page(RankEntry after, int limit, DoublePredicate scoreFilter) {
+        NavigableSet<RankEntry> view = after == null ? entries : entries.tailSet(after, false);
+        List<RankEntry> page = new ArrayList<>(limit);
+        for (RankEntry entry : view) {
+            if (page.size() == limit || !scoreFilter.test(entry.getScore())) {
+                break;
+            }
+            page.add(entry);
+        }
+        return page;
+    }
+
+    private void trim() {
+        while (size.get() > capacity) {
+            RankEntry last = entries.pollLast();
+            if (last == null) {
+                return;
+            }
+            size.decrementAndGet();
+            byBookId.remove(last.getBookId(), last);
+            truncated = true;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.sobolev.spring.bookshelf.rating;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Rating deltas of committed review writes that are not in the book table yet, striped by book id.
+ * Writers {@linkplain #reserve reserve} their book before they commit and {@linkplain #add add} their delta
+ * after, without locks. The flush job moves a batch {@linkplain #beginFlush in flight} before its UPDATE and
+ * {@linkplain #endFlush drops it} once the UPDATE committed. Reads only add deltas that are neither flushed nor
+ * in flight, so {@code stored + pending} never counts a review twice; while a batch is being written a read may
+ * miss it until the UPDATE commits. Only the flush job may begin and end flushes and {@link #retireIdle()}.
+ */
+@Component
+public class PendingRatings {
+
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Marks the book as written by a transaction that has not completed yet, so the rating rebuild skips it
+     * even when the transaction commits before the rebuild's snapshot but adds its delta after.
+     * Every reservation must be {@linkplain #release released}, after the delta of a commit was added.
+     */
+    public void reserve(long bookId) {
+        entryFor(bookId, Entry::tryReserve);
+    }
+
+    public void release(long bookId) {
+        Entry entry = entries.get(bookId);
+        if (entry != null) {
+            entry.reserved.decrementAndGet();
+        }
+    }
+
+    public void add(long bookId, long count, long sum) {
+        if (count == 0 && sum == 0) return;
+        entryFor(bookId, entry -> entry.tryAdd(count, sum));
+    }
+
+    /**
+     * Count and rating sum added for the book that are neither flushed nor in flight, zero when nothing is pending.
+     */
+    public RatingDelta pending(long bookId) {
+        Entry entry = entries.get(bookId);
+        return entry == null ? new RatingDelta(bookId, 0, 0) : entry.unflushed(bookId);
+    }
+
+    /**
+     * Non-empty deltas in book id order, so concurrent row updates always lock books in the same order.
+     */
+    public List<RatingDelta> unflushed() {
+        List<RatingDelta> deltas = new ArrayList<>();
+        entries.forEach((bookId, entry) -> {
+            RatingDelta delta = entry.unflushed(bookId);
+            if (!delta.isEmpty()) {
+                deltas.add(delta);
+            }
+        });
+        deltas.sort(Comparator.comparingLong(RatingDelta::getBookId));
+        return deltas;
+    }
+
+    /**
+     * Moves the deltas, taken from {@link #unflushed()}, in flight: reads stop adding them from now on.
+     */
+    public void beginFlush(Collection<RatingDelta> batch) {
+        for (RatingDelta delta : batch) {
+            Entry entry = entries.get(delta.getBookId());
+            entry.state = entry.state.begin(delta);
+        }
+    }
+
+    /**
+     * Ends the flush begun with the same batch: committed deltas count as flushed, rolled back ones are pending again.
+     */
+    public void endFlush(Collection<RatingDelta> batch, boolean committed) {
+        for (RatingDelta delta : batch) {
+            Entry entry = entries.get(delta.getBookId());
+            entry.state = committed ? entry.state.commit() : entry.state.rollback();
+        }
+    }
+
+    /**
+     * Book ids in [fromId, toId] that are reserved by a writer, have deltas pending or in flight, or were flushed
+     * recently; their stored aggregates may be about to change and must not be recomputed from the review table.
+     */
+    public List<Long> bookIdsBetween(long fromId, long toId) {
+        List<Long> ids = new ArrayList<>();
+        for (Long bookId : entries.keySet()) {
+            if (bookId >= fromId && bookId <= toId) {
+                ids.add(bookId);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Drops entries that are fully flushed, not reserved and saw no write since the previous call, so the map
+     * only holds recently reviewed books.
+     */
+    public void retireIdle() {
+        for (Map.Entry<Long, Entry> mapping : entries.entrySet()) {
+            Long bookId = mapping.getKey();
+            Entry entry = mapping.getValue();
+            if (entry.touched) {
+                entry.touched = false;
+                continue;
+            }
+            if (!entry.isIdle(bookId)) {
+                continue;
+            }
+            entry.retire();
+            // A writer may have got in between the check and retire(); it is done now, so look again.
+            if (entry.isIdle(bookId)) {
+                entries.remove(bookId, entry);
+            } else {
+                entry.retired = false;
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void entryFor(long bookId, Predicate<Entry> action) {
+        while (true) {
+            Entry entry = entries.get(bookId);
+            if (entry == null) {
+                entry = entries.computeIfAbsent(bookId, id -> new Entry());
+            }
+            if (action.test(entry)) {
+                return;
+            }
+            // Retired under us; the flusher either removes it, after which a fresh entry is created, or reopens it.
+            Thread.onSpinWait();
+        }
+    }
+
+    private static final class Entry {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicInteger reserved = new AtomicInteger();
+        // Writers announce themselves before checking retired, and retire() sets retired before
+        // reading writers, so either the writer sees the flag or retire() waits for it.
+        private final AtomicInteger writers = new AtomicInteger();
+        private volatile boolean retired;
+        private volatile boolean touched;
+        // Replaced by the flush job only; one immutable object so a read never sees a delta both flushed and in flight.
+        private volatile FlushState state = FlushState.NONE;
+
+        boolean tryAdd(long countDelta, long sumDelta) {
+            writers.incrementAndGet();
+            try {
+                if (retired) {
+                    return false;
+                }
+                count.add(countDelta);
+                sum.add(sumDelta);
+                touched = true;
+                return true;
+            } finally {
+                writers.decrementAndGet();
+            }
+        }
+
+        boolean tryReserve() {
+            writers.incrementAndGet();
+            try {
+                if (retired) {
+                    return false;
+                }
+                reserved.incrementAndGet();
+                touched = true;
+                return true;
+            } finally {
+                writers.decrementAndGet();
+            }
+        }
+
+        void retire() {
+            retired = true;
+            while (writers.get() != 0) {
+                Thread.onSpinWait();
+            }
+        }
+
+        boolean isIdle(long bookId) {
+            return reserved.get() == 0 && !state.isInFlight() && unflushed(bookId).isEmpty();
+        }
+
+        RatingDelta unflushed(long bookId) {
+            FlushState current = state;
+            return new RatingDelta(bookId, count.sum() - current.flushedCount - current.inFlightCount,
+                    sum.sum() - current.flushedSum - current.inFlightSum);
+        }
+    }
+
+    private static final class FlushState {
+
+        static final FlushState NONE = new FlushState(0, 0, 0, 0);
+
+        final long flushedCount;
+        final long flushedSum;
+        final long inFlightCount;
+        final long inFlightSum;
+
+        FlushState(long flushedCount, long flushedSum, long inFlightCount, long inFlightSum) {
+            this.flushedCount = flushedCount;
+            this.flushedSum = flushedSum;
+            this.inFlightCount = inFlightCount;
+            this.inFlightSum = inFlightSum;
+        }
+
+        boolean isInFlight() {
+            return inFlightCount != 0 || inFlightSum != 0;
+        }
+
+        FlushState begin(RatingDelta delta) {
+            return new FlushState(flushedCount, flushedSum, delta.getCount(), delta.getSum());
+        }
+
+        FlushState commit() {
+            return new FlushState(flushedCount + inFlightCount, flushedSum + inFlightSum, 0, 0);
+        }
+
+        FlushState rollback() {
+            return new FlushState(flushedCount, flushedSum, 0, 0);
+        }
+    }
+}
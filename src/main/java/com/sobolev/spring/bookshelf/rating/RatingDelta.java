@@ -0,0 +1,21 @@
+package com.sobolev.spring.bookshelf.rating;
+
+import lombok.Getter;
+
+@Getter
+public final class RatingDelta {
+
+    private final long bookId;
+    private final long count;
+    private final long sum;
+
+    public RatingDelta(long bookId, long count, long sum) {
+        this.bookId = bookId;
+        this.count = count;
+        this.sum = sum;
+    }
+
+    public boolean isEmpty() {
+        return count == 0 && sum == 0;
+    }
+}
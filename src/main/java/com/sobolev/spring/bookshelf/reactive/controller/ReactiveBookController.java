@@ -0,0 +1,244 @@
+package com.sobolev.spring.bookshelf.reactive.controller;
+
+import com.sobolev.spring.bookshelf.dto.request.BookBatchRequest;
+import com.sobolev.spring.bookshelf.dto.request.BookPatchRequest;
+import com.sobolev.spring.bookshelf.dto.request.BookRequest;
+import com.sobolev.spring.bookshelf.dto.response.BookBatchResponse;
+import com.sobolev.spring.bookshelf.dto.response.BookResponse;
+import com.sobolev.spring.bookshelf.dto.response.CursorPage;
+import com.sobolev.spring.bookshelf.model.BookStatus;
+import com.sobolev.spring.bookshelf.reactive.service.ReactiveBookService;
+import com.sobolev.spring.bookshelf.util.ETags;
+import com.sobolev.spring.bookshelf.util.KeysetCursor;
+import com.sobolev.spring.bookshelf.util.OptimisticRetry;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.web.PageableDefault;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The {@code /api/books} contract of {@code BookController} on WebFlux and R2DBC, except search, filtering,
+ * import and the popular and high-rated listings.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/api/books")
+@Tag(name = "BookController", description = "Controller for managing books")
+@Slf4j
+public class ReactiveBookController {
+
+    private final ReactiveBookService bookService;
+    private final OptimisticRetry optimisticRetry;
+
+    @Autowired
+    public ReactiveBookController(ReactiveBookService bookService, OptimisticRetry optimisticRetry) {
+        this.bookService = bookService;
+        this.optimisticRetry = optimisticRetry;
+    }
+
+    @GetMapping
+    @Operation(
+            summary = "Get all books",
+            description = "return all books"
+    )
+    public Mono<CursorPage<BookResponse>> getAllBooks(
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit) {
+        log.debug("Get all books");
+        return bookService.findAll(after, limit);
+    }
+
+    @GetMapping("/{id}")
+    @Operation(
+            summary = "Get book by id",
+            description = "Return book by id"
+    )
+    @ApiResponse(responseCode = "404", description = "Not found book")
+    @ApiResponse(responseCode = "304", description = "Book not modified since the ETag given in If-None-Match")
+    public Mono<ResponseEntity<BookResponse>> getBookById(@PathVariable @Parameter(description = "Identifier of book", required = true) Long id) {
+        log.debug("Get book by id: {}", id);
+        return bookService.findById(id)
+                .map(book -> ResponseEntity.ok()
+                        .eTag(ETags.of(book))
+                        .body(book))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/batch-get")
+    @Operation(
+            summary = "Get books by ids",
+            description = "Return the requested books in request order, plus the ids that were not found"
+    )
+    public Mono<BookBatchResponse> getBooksByIds(@Valid @RequestBody BookBatchRequest batchRequest) {
+        log.debug("Get {} books by ids", batchRequest.getIds().size());
+        return bookService.findAllById(batchRequest.getIds());
+    }
+
+    @PostMapping
+    @Operation(
+            summary = "Create book",
+            description = "endpoint for create book"
+    )
+    public Mono<ResponseEntity<BookResponse>> createBook(@Valid @RequestBody BookRequest bookRequest) {
+        log.debug("Create book: {}", bookRequest);
+        return bookService.create(bookRequest)
+                .map(book -> new ResponseEntity<>(book, HttpStatus.CREATED));
+    }
+
+    @PutMapping("/{id}")
+    @Operation(
+            summary = "Update book",
+            description = "endpoint for update book"
+    )
+    @ApiResponse(responseCode = "404", description = "Not found book")
+    @ApiResponse(responseCode = "412", description = "Book changed since the ETag given in If-Match")
+    public Mono<ResponseEntity<BookResponse>> updateBook(@PathVariable @Parameter(description = "Identifier of book", required = true) Long id,
+                                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+                                                         @Parameter(description = "ETag of the book this update is based on; without it the last writer wins") String ifMatch,
+                                                         @Valid @RequestBody BookRequest bookRequest) {
+        log.debug("Update book: {}", bookRequest);
+        Long expectedVersion = ETags.versionOf(ifMatch);
+        return bookService.update(id, bookRequest, expectedVersion)
+                .retryWhen(optimisticRetry.reactive())
+                .map(book -> ResponseEntity.ok().eTag(ETags.of(book)).body(book))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @PatchMapping("/{id}")
+    @Operation(
+            summary = "Partially update book",
+            description = "Change only the fields present in the body; genres are replaced only when genreIds is sent"
+    )
+    @ApiResponse(responseCode = "404", description = "Not found book")
+    @ApiResponse(responseCode = "412", description = "Book changed since the ETag given in If-Match")
+    public Mono<ResponseEntity<BookResponse>> patchBook(@PathVariable @Parameter(description = "Identifier of book", required = true) Long id,
+                                                        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+                                                        @Parameter(description = "ETag of the book this patch is based on; without it the last writer wins") String ifMatch,
+                                                        @Valid @RequestBody BookPatchRequest patchRequest) {
+        log.debug("Patch book: {}", id);
+        Long expectedVersion = ETags.versionOf(ifMatch);
+        return bookService.patch(id, patchRequest, expectedVersion)
+                .retryWhen(optimisticRetry.reactive())
+                .map(book -> ResponseEntity.ok().eTag(ETags.of(book)).body(book))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @DeleteMapping("/{id}")
+    @Operation(
+            summary = "Delete book",
+            description = "Delete book"
+    )
+    @ApiResponse(responseCode = "404", description = "Not found book")
+    public Mono<ResponseEntity<Void>> deleteBook(@PathVariable @Parameter(description = "Identifier of book", required = true) Long id) {
+        log.debug("Delete book: {}", id);
+        return bookService.deleteById(id)
+                .map(deleted -> deleted
+                        ? ResponseEntity.ok().<Void>build()
+                        : ResponseEntity.notFound().<Void>build());
+    }
+
+    @GetMapping("/author/{author}")
+    @Operation(
+            summary = "Get books by author",
+            description = "Return book by author"
+    )
+    public Mono<Page<BookResponse>> getBooksByAuthor(@PathVariable String author,
+                                                     @PageableDefault(sort = "publicationYear",
+                                                             direction = Sort.Direction.DESC) Pageable pageable) {
+        return bookService.findByAuthor(author, pageable);
+    }
+
+    @GetMapping("/status/{status}")
+    @Operation(
+            summary = "Get books by status",
+            description = "Return book by status"
+    )
+    public Mono<CursorPage<BookResponse>> getBooksByStatus(
+            @PathVariable BookStatus status,
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit) {
+        return bookService.findByStatus(status, after, limit);
+    }
+
+    @GetMapping("/year/{year}")
+    @Operation(
+            summary = "Get books by publicationYear",
+            description = "Return book by publicationYear"
+    )
+    public Mono<CursorPage<BookResponse>> getBooksByPublicationYear(
+            @PathVariable Integer year,
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit) {
+        return bookService.findByPublicationYear(year, after, limit);
+    }
+
+    @GetMapping("/year-range")
+    @Operation(
+            summary = "Get books by year range",
+            description = "Return books where publicationYear between startYear and endYear"
+    )
+    public Mono<CursorPage<BookResponse>> getBooksByYearRange(
+            @RequestParam Integer startYear,
+            @RequestParam Integer endYear,
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit) {
+        return bookService.findByPublicationYearBetween(startYear, endYear, after, limit);
+    }
+
+    @GetMapping("/genre/{genreId}")
+    @Operation(
+            summary = "Get books by genreId",
+            description = "Return books by genreId"
+    )
+    public Mono<CursorPage<BookResponse>> getBooksByGenre(
+            @PathVariable Long genreId,
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit) {
+        return bookService.findBooksByGenreId(genreId, after, limit);
+    }
+
+    @GetMapping("/genre-name/{genreName}")
+    @Operation(
+            summary = "Get books by genreName",
+            description = "Return books by genreName"
+    )
+    public Mono<CursorPage<BookResponse>> getBooksByGenreName(
+            @PathVariable String genreName,
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit) {
+        return bookService.findBooksByGenreName(genreName, after, limit);
+    }
+
+    @GetMapping("/stats/author/{author}")
+    @Operation(
+            summary = "Get count books by author"
+    )
+    public Mono<Long> getBookCountByAuthor(@PathVariable String author) {
+        return bookService.countByAuthor(author);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(
+            summary = "Export all books",
+            description = "Stream the whole catalog as newline-delimited JSON"
+    )
+    public Flux<BookResponse> exportBooks() {
+        log.debug("Export all books");
+        return bookService.exportAll();
+    }
+}
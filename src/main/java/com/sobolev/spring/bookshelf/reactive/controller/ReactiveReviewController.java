@@ -0,0 +1,142 @@
+package com.sobolev.spring.bookshelf.reactive.controller;
+
+import com.sobolev.spring.bookshelf.dto.request.ReviewRequest;
+import com.sobolev.spring.bookshelf.dto.request.ReviewSort;
+import com.sobolev.spring.bookshelf.dto.response.CursorPage;
+import com.sobolev.spring.bookshelf.dto.response.ReviewResponse;
+import com.sobolev.spring.bookshelf.reactive.service.ReactiveReviewService;
+import com.sobolev.spring.bookshelf.util.ETags;
+import com.sobolev.spring.bookshelf.util.KeysetCursor;
+import com.sobolev.spring.bookshelf.util.OptimisticRetry;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The {@code /api/reviews} contract of {@code ReviewController} on WebFlux and R2DBC, except import and
+ * {@code expand=book}.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/api/reviews")
+@Tag(name = "Review controller", description = "controller for review of books")
+@Slf4j
+public class ReactiveReviewController {
+
+    private final ReactiveReviewService reviewService;
+    private final OptimisticRetry optimisticRetry;
+
+    @Autowired
+    public ReactiveReviewController(ReactiveReviewService reviewService, OptimisticRetry optimisticRetry) {
+        this.reviewService = reviewService;
+        this.optimisticRetry = optimisticRetry;
+    }
+
+    @GetMapping
+    @Operation(
+            summary = "get list of all reviews"
+    )
+    public Mono<CursorPage<ReviewResponse>> getAllReviews(
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit) {
+        log.debug("get list of all reviews");
+        return reviewService.findAll(after, limit);
+    }
+
+    @GetMapping("/{id}")
+    @Operation(
+            summary = "get Review by id"
+    )
+    @ApiResponse(responseCode = "404", description = "Not found review")
+    public Mono<ResponseEntity<ReviewResponse>> getReviewById(@PathVariable("id") Long id) {
+        log.debug("get review by id: {}", id);
+        return reviewService.findById(id)
+                .map(review -> ResponseEntity.ok().eTag(ETags.of(review)).body(review))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Streams the reviews as they are read; with {@code Accept: application/x-ndjson} every review is
+     * flushed on its own line. A cheap existence probe keeps the 204 of the servlet stack for books without reviews.
+     */
+    @GetMapping(value = "/book/{bookId}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @Operation(
+            summary = "get all Reviews by book id"
+    )
+    @ApiResponse(responseCode = "404", description = "Not found review or book")
+    public Mono<ResponseEntity<Flux<ReviewResponse>>> getAllReviewsByBookId(@PathVariable("bookId") Long bookId) {
+        log.debug("get all Reviews by book id: {}", bookId);
+        return reviewService.existsByBookId(bookId)
+                .map(exists -> exists
+                        ? ResponseEntity.ok(reviewService.findByBookId(bookId))
+                        : ResponseEntity.noContent().<Flux<ReviewResponse>>build());
+    }
+
+    @GetMapping("/book/{bookId}/feed")
+    @Operation(
+            summary = "get a page of Reviews of a book",
+            description = "Return reviews of the book newest first or best rated first"
+    )
+    public Mono<CursorPage<ReviewResponse>> getReviewFeed(
+            @PathVariable("bookId") Long bookId,
+            @RequestParam(defaultValue = "NEWEST") @Parameter(description = "NEWEST or RATING") ReviewSort sort,
+            @RequestParam(required = false) @Parameter(description = "Cursor returned as nextCursor by the previous page") String after,
+            @RequestParam(defaultValue = KeysetCursor.DEFAULT_LIMIT) @Parameter(description = "Page size, at most 100") int limit) {
+        log.debug("get review feed of book {} by {}", bookId, sort);
+        return reviewService.findFeed(bookId, sort, after, limit);
+    }
+
+    @PostMapping
+    @Operation(
+            summary = "create review"
+    )
+    public Mono<ResponseEntity<ReviewResponse>> createReview(@Valid @RequestBody ReviewRequest reviewRequest) {
+        log.debug("create review: {}", reviewRequest);
+        return reviewService.create(reviewRequest)
+                .map(review -> new ResponseEntity<>(review, HttpStatus.CREATED));
+    }
+
+    @PutMapping("/{id}")
+    @Operation(
+            summary = "update review"
+    )
+    @ApiResponse(responseCode = "404", description = "Not found review")
+    @ApiResponse(responseCode = "412", description = "Review changed since the ETag given in If-Match")
+    public Mono<ResponseEntity<ReviewResponse>> updateReview(@PathVariable("id") Long id,
+                                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+                                                             @Parameter(description = "ETag of the review this update is based on; without it the last writer wins") String ifMatch,
+                                                             @Valid @RequestBody ReviewRequest reviewRequest) {
+        log.debug("update review: {}", reviewRequest);
+        Long expectedVersion = ETags.versionOf(ifMatch);
+        // a retry rereads the old rating, so the aggregate delta is never computed from a stale review
+        return reviewService.update(id, reviewRequest, expectedVersion)
+                .retryWhen(optimisticRetry.reactive())
+                .map(review -> ResponseEntity.ok().eTag(ETags.of(review)).body(review))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @DeleteMapping("/{id}")
+    @Operation(
+            summary = "delete review"
+    )
+    @ApiResponse(responseCode = "404", description = "Not found review")
+    public Mono<ResponseEntity<Void>> deleteReview(@PathVariable("id") Long id) {
+        log.debug("Start delete review: {}", id);
+        return reviewService.deleteById(id)
+                .map(deleted -> deleted
+                        ? ResponseEntity.noContent().<Void>build()
+                        : ResponseEntity.notFound().<Void>build());
+    }
+}
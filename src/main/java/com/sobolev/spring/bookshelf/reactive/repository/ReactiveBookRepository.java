@@ -0,0 +1,313 @@
+package com.sobolev.spring.bookshelf.reactive.repository;
+
+import com.sobolev.spring.bookshelf.model.Book;
+import com.sobolev.spring.bookshelf.model.BookStatus;
+import com.sobolev.spring.bookshelf.model.Genre;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.PropertyReferenceException;
+import org.springframework.data.util.TypeInformation;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.Parameter;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Book queries for the reactive stack. Rows are read into detached {@link Book} instances, so the
+ * servlet stack's mappers build the responses; genres are attached per batch by {@link #attachGenres}.
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveBookRepository {
+
+    static final String COLUMNS =
+            "b.id, b.title, b.author, b.isbn, b.publication_year, b.status, b.review_count, b.rating_sum, b.version";
+
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    /**
+     * Book properties a {@link Pageable} may sort on, with their columns; anything else is rejected the way
+     * Spring Data rejects an unknown property on the servlet stack.
+     */
+    private static final Map<String, String> SORT_COLUMNS = Map.of(
+            "id", "b.id",
+            "title", "b.title",
+            "author", "b.author",
+            "isbn", "b.isbn",
+            "publicationYear", "b.publication_year",
+            "status", "b.status",
+            "reviewCount", "b.review_count");
+
+    private final DatabaseClient databaseClient;
+
+    @Autowired
+    public ReactiveBookRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    public Mono<Book> findById(Long id) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM book b WHERE b.id = :id")
+                .bind("id", id)
+                .map(ReactiveBookRepository::toBook)
+                .one();
+    }
+
+    public Mono<Boolean> existsById(Long id) {
+        return databaseClient.sql("SELECT EXISTS (SELECT 1 FROM book WHERE id = :id) AS found")
+                .bind("id", id)
+                .map(row -> row.get("found", Boolean.class))
+                .one();
+    }
+
+    public Flux<Book> findByIdIn(Collection<Long> ids) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM book b WHERE b.id = ANY(:ids)")
+                .bind("ids", ids.toArray(new Long[0]))
+                .map(ReactiveBookRepository::toBook)
+                .all();
+    }
+
+    /**
+     * One page of the author's books, sorted as the pageable asks and by id after that, so pages do not
+     * overlap when the sort key repeats.
+     */
+    public Flux<Book> findByAuthor(String author, Pageable pageable) {
+        String sql = "SELECT " + COLUMNS + " FROM book b WHERE b.author = :author ORDER BY " + orderBy(pageable.getSort());
+        if (pageable.isPaged()) {
+            sql += " LIMIT :limit OFFSET :offset";
+        }
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql).bind("author", author);
+        if (pageable.isPaged()) {
+            spec = spec.bind("limit", pageable.getPageSize()).bind("offset", pageable.getOffset());
+        }
+        return spec.map(ReactiveBookRepository::toBook).all();
+    }
+
+    public Mono<Long> countByAuthor(String author) {
+        return databaseClient.sql("SELECT COUNT(*) AS found FROM book WHERE author = :author")
+                .bind("author", author)
+                .map(row -> row.get("found", Long.class))
+                .one();
+    }
+
+    public Flux<Book> seekAll(long afterId, int limit) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM book b WHERE b.id > :afterId ORDER BY b.id LIMIT :limit")
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map(ReactiveBookRepository::toBook)
+                .all();
+    }
+
+    public Flux<Book> seekByStatus(BookStatus status, long afterId, int limit) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM book b " +
+                        "WHERE b.status = :status AND b.id > :afterId ORDER BY b.id LIMIT :limit")
+                .bind("status", status.name())
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map(ReactiveBookRepository::toBook)
+                .all();
+    }
+
+    public Flux<Book> seekByPublicationYear(int year, long afterId, int limit) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM book b " +
+                        "WHERE b.publication_year = :year AND b.id > :afterId ORDER BY b.id LIMIT :limit")
+                .bind("year", year)
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map(ReactiveBookRepository::toBook)
+                .all();
+    }
+
+    public Flux<Book> seekByPublicationYearBetween(int startYear, int endYear, int afterYear, long afterId, int limit) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM book b " +
+                        "WHERE b.publication_year BETWEEN :startYear AND :endYear " +
+                        "AND b.publication_year >= :afterYear " +
+                        "AND (b.publication_year > :afterYear OR b.id > :afterId) " +
+                        "ORDER BY b.publication_year, b.id LIMIT :limit")
+                .bind("startYear", startYear)
+                .bind("endYear", endYear)
+                .bind("afterYear", afterYear)
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map(ReactiveBookRepository::toBook)
+                .all();
+    }
+
+    public Flux<Book> seekByGenreName(String genreName, long afterId, int limit) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM book b JOIN book_genre bg ON bg.book_id = b.id " +
+                        "JOIN genre g ON g.id = bg.genre_id " +
+                        "WHERE g.name = :genreName AND b.id > :afterId ORDER BY b.id LIMIT :limit")
+                .bind("genreName", genreName)
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map(ReactiveBookRepository::toBook)
+                .all();
+    }
+
+    public Flux<Book> seekByGenreId(long genreId, long afterId, int limit) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM book b JOIN book_genre bg ON bg.book_id = b.id " +
+                        "WHERE bg.genre_id = :genreId AND bg.book_id > :afterId ORDER BY bg.book_id LIMIT :limit")
+                .bind("genreId", genreId)
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map(ReactiveBookRepository::toBook)
+                .all();
+    }
+
+    /**
+     * The whole catalog in id order, read from a server-side portal {@value #STREAM_FETCH_SIZE} rows
+     * at a time and only as fast as the subscriber requests them.
+     */
+    public Flux<Book> streamAll() {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM book b ORDER BY b.id")
+                .filter(statement -> statement.fetchSize(STREAM_FETCH_SIZE))
+                .map(ReactiveBookRepository::toBook)
+                .all();
+    }
+
+    /**
+     * Loads the genres of all given books with one query and adds them to each book.
+     */
+    public Mono<List<Book>> attachGenres(List<Book> books) {
+        if (books.isEmpty()) {
+            return Mono.just(books);
+        }
+        Long[] bookIds = books.stream().map(Book::getId).distinct().toArray(Long[]::new);
+        return databaseClient.sql("SELECT bg.book_id, g.id, g.name FROM book_genre bg " +
+                        "JOIN genre g ON g.id = bg.genre_id WHERE bg.book_id = ANY(:bookIds)")
+                .bind("bookIds", bookIds)
+                .map(row -> Map.entry(row.get("book_id", Long.class), toGenre(row)))
+                .all()
+                .collectMultimap(Map.Entry::getKey, Map.Entry::getValue)
+                .map(genres -> {
+                    books.forEach(book -> book.getGenres().addAll(genres.getOrDefault(book.getId(), List.of())));
+                    return books;
+                });
+    }
+
+    public Mono<Long> countGenres(Collection<Long> genreIds) {
+        return databaseClient.sql("SELECT COUNT(*) AS found FROM genre WHERE id = ANY(:genreIds)")
+                .bind("genreIds", genreIds.toArray(new Long[0]))
+                .map(row -> row.get("found", Long.class))
+                .one();
+    }
+
+    public Mono<Long> insert(Book book) {
+        return databaseClient.sql("INSERT INTO book (title, author, isbn, publication_year, status) " +
+                        "VALUES (:title, :author, :isbn, :publicationYear, :status) RETURNING id")
+                .bind("title", book.getTitle())
+                .bind("author", book.getAuthor())
+                .bind("isbn", Parameter.fromOrEmpty(book.getIsbn(), String.class))
+                .bind("publicationYear", Parameter.fromOrEmpty(book.getPublicationYear(), Integer.class))
+                .bind("status", book.getStatus().name())
+                .map(row -> row.get("id", Long.class))
+                .one();
+    }
+
+    /**
+     * Writes the book only if it is still at the version it was read with; 0 means a concurrent write got there
+     * first.
+     */
+    public Mono<Long> update(Book book) {
+        return databaseClient.sql("UPDATE book SET title = :title, author = :author, isbn = :isbn, " +
+                        "publication_year = :publicationYear, status = :status, version = version + 1 " +
+                        "WHERE id = :id AND version = :version")
+                .bind("id", book.getId())
+                .bind("version", book.getVersion())
+                .bind("title", book.getTitle())
+                .bind("author", book.getAuthor())
+                .bind("isbn", Parameter.fromOrEmpty(book.getIsbn(), String.class))
+                .bind("publicationYear", Parameter.fromOrEmpty(book.getPublicationYear(), Integer.class))
+                .bind("status", book.getStatus().name())
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Long> deleteById(Long id) {
+        return databaseClient.sql("DELETE FROM book WHERE id = :id")
+                .bind("id", id)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Void> insertGenres(Long bookId, Set<Long> genreIds) {
+        if (genreIds.isEmpty()) {
+            return Mono.empty();
+        }
+        return databaseClient.sql("INSERT INTO book_genre (book_id, genre_id) " +
+                        "SELECT :bookId, UNNEST(CAST(:genreIds AS bigint[]))")
+                .bind("bookId", bookId)
+                .bind("genreIds", genreIds.toArray(new Long[0]))
+                .then();
+    }
+
+    /**
+     * Deletes only the pairs that are no longer wanted and inserts only the missing ones, so unchanged genres
+     * are not rewritten.
+     */
+    public Mono<Void> replaceGenres(Long bookId, Set<Long> genreIds) {
+        Mono<Void> added = genreIds.isEmpty()
+                ? Mono.empty()
+                : databaseClient.sql("INSERT INTO book_genre (book_id, genre_id) " +
+                                "SELECT :bookId, UNNEST(CAST(:genreIds AS bigint[])) ON CONFLICT DO NOTHING")
+                        .bind("bookId", bookId)
+                        .bind("genreIds", genreIds.toArray(new Long[0]))
+                        .then();
+        return databaseClient.sql("DELETE FROM book_genre WHERE book_id = :bookId AND genre_id <> ALL(:genreIds)")
+                .bind("bookId", bookId)
+                .bind("genreIds", genreIds.toArray(new Long[0]))
+                .then()
+                .then(added);
+    }
+
+    public Mono<Long> applyRatingDelta(Long bookId, int countDelta, long ratingDelta) {
+        return databaseClient.sql("UPDATE book SET review_count = review_count + :countDelta, " +
+                        "rating_sum = rating_sum + :ratingDelta WHERE id = :bookId")
+                .bind("bookId", bookId)
+                .bind("countDelta", countDelta)
+                .bind("ratingDelta", ratingDelta)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private static String orderBy(Sort sort) {
+        StringBuilder orderBy = new StringBuilder();
+        for (Sort.Order order : sort) {
+            String column = SORT_COLUMNS.get(order.getProperty());
+            if (column == null) {
+                throw new PropertyReferenceException(order.getProperty(), TypeInformation.of(Book.class), List.of());
+            }
+            orderBy.append(column).append(order.isAscending() ? " ASC" : " DESC").append(", ");
+        }
+        return orderBy.append("b.id").toString();
+    }
+
+    static Book toBook(Readable row) {
+        Book book = new Book();
+        book.setId(row.get("id", Long.class));
+        book.setTitle(row.get("title", String.class));
+        book.setAuthor(row.get("author", String.class));
+        book.setIsbn(row.get("isbn", String.class));
+        book.setPublicationYear(row.get("publication_year", Integer.class));
+        book.setStatus(BookStatus.valueOf(row.get("status", String.class)));
+        book.setReviewCount(row.get("review_count", Integer.class));
+        book.setRatingSum(row.get("rating_sum", Long.class));
+        book.setVersion(row.get("version", Long.class));
+        return book;
+    }
+
+    private static Genre toGenre(Readable row) {
+        Genre genre = new Genre();
+        genre.setId(row.get("id", Long.class));
+        genre.setName(row.get("name", String.class));
+        return genre;
+    }
+}
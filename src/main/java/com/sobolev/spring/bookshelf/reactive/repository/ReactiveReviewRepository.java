@@ -0,0 +1,143 @@
+package com.sobolev.spring.bookshelf.reactive.repository;
+
+import com.sobolev.spring.bookshelf.model.Review;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.Parameter;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * Review queries for the reactive stack. Except for {@link #streamByBookId}, reviews are read
+ * together with their book, which is mapped with {@link ReactiveBookRepository#toBook}.
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveReviewRepository {
+
+    private static final String SELECT_WITH_BOOK = "SELECT r.id AS review_id, r.content, r.rating, r.created_at, " +
+            "r.version AS review_version, " + ReactiveBookRepository.COLUMNS + " FROM review r JOIN book b ON b.id = r.book_id ";
+
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    private final DatabaseClient databaseClient;
+
+    @Autowired
+    public ReactiveReviewRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    public Mono<Review> findById(Long id) {
+        return databaseClient.sql(SELECT_WITH_BOOK + "WHERE r.id = :id")
+                .bind("id", id)
+                .map(ReactiveReviewRepository::toReviewWithBook)
+                .one();
+    }
+
+    public Flux<Review> seekAll(long afterId, int limit) {
+        return databaseClient.sql(SELECT_WITH_BOOK + "WHERE r.id > :afterId ORDER BY r.id LIMIT :limit")
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map(ReactiveReviewRepository::toReviewWithBook)
+                .all();
+    }
+
+    public Flux<Review> seekNewestByBookId(Long bookId, LocalDateTime afterCreatedAt, long afterId, int limit) {
+        return databaseClient.sql(SELECT_WITH_BOOK + "WHERE r.book_id = :bookId " +
+                        "AND r.created_at <= :afterCreatedAt AND (r.created_at < :afterCreatedAt OR r.id < :afterId) " +
+                        "ORDER BY r.created_at DESC, r.id DESC LIMIT :limit")
+                .bind("bookId", bookId)
+                .bind("afterCreatedAt", afterCreatedAt)
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map(ReactiveReviewRepository::toReviewWithBook)
+                .all();
+    }
+
+    public Flux<Review> seekBestRatedByBookId(Long bookId, int afterRating, long afterId, int limit) {
+        return databaseClient.sql(SELECT_WITH_BOOK + "WHERE r.book_id = :bookId " +
+                        "AND r.rating <= :afterRating AND (r.rating < :afterRating OR r.id < :afterId) " +
+                        "ORDER BY r.rating DESC, r.id DESC LIMIT :limit")
+                .bind("bookId", bookId)
+                .bind("afterRating", afterRating)
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map(ReactiveReviewRepository::toReviewWithBook)
+                .all();
+    }
+
+    public Mono<Boolean> existsByBookId(Long bookId) {
+        return databaseClient.sql("SELECT EXISTS (SELECT 1 FROM review WHERE book_id = :bookId) AS found")
+                .bind("bookId", bookId)
+                .map(row -> row.get("found", Boolean.class))
+                .one();
+    }
+
+    /**
+     * Reviews of one book without the book columns, read {@value #STREAM_FETCH_SIZE} rows at a time
+     * as the subscriber requests them.
+     */
+    public Flux<Review> streamByBookId(Long bookId) {
+        return databaseClient.sql("SELECT r.id AS review_id, r.content, r.rating, r.created_at, " +
+                        "r.version AS review_version FROM review r WHERE r.book_id = :bookId ORDER BY r.id")
+                .bind("bookId", bookId)
+                .filter(statement -> statement.fetchSize(STREAM_FETCH_SIZE))
+                .map(ReactiveReviewRepository::toReview)
+                .all();
+    }
+
+    public Mono<Long> insert(Long bookId, String content, int rating) {
+        return databaseClient.sql("INSERT INTO review (content, rating, created_at, book_id) " +
+                        "VALUES (:content, :rating, :createdAt, :bookId) RETURNING id")
+                .bind("content", Parameter.fromOrEmpty(content, String.class))
+                .bind("rating", rating)
+                .bind("createdAt", LocalDateTime.now())
+                .bind("bookId", bookId)
+                .map(row -> row.get("id", Long.class))
+                .one();
+    }
+
+    /**
+     * Writes the review only if it is still at the version it was read with; 0 means a concurrent write got
+     * there first.
+     */
+    public Mono<Long> update(Long id, long version, Long bookId, String content, int rating) {
+        return databaseClient.sql("UPDATE review SET content = :content, rating = :rating, book_id = :bookId, " +
+                        "version = version + 1 WHERE id = :id AND version = :version")
+                .bind("id", id)
+                .bind("version", version)
+                .bind("content", Parameter.fromOrEmpty(content, String.class))
+                .bind("rating", rating)
+                .bind("bookId", bookId)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Long> deleteById(Long id) {
+        return databaseClient.sql("DELETE FROM review WHERE id = :id")
+                .bind("id", id)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private static Review toReview(Readable row) {
+        Review review = new Review();
+        review.setId(row.get("review_id", Long.class));
+        review.setContent(row.get("content", String.class));
+        review.setRating(row.get("rating", Integer.class));
+        review.setCreatedAt(row.get("created_at", LocalDateTime.class));
+        review.setVersion(row.get("review_version", Long.class));
+        return review;
+    }
+
+    private static Review toReviewWithBook(Readable row) {
+        Review review = toReview(row);
+        review.setBook(ReactiveBookRepository.toBook(row));
+        return review;
+    }
+}
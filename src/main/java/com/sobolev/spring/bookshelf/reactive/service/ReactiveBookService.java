@@ -0,0 +1,32 @@
+package com.sobolev.spring.bookshelf.reactive.service;
+
+import com.sobolev.spring.bookshelf.dto.request.BookPatchRequest;
+import com.sobolev.spring.bookshelf.dto.request.BookRequest;
+import com.sobolev.spring.bookshelf.dto.response.BookBatchResponse;
+import com.sobolev.spring.bookshelf.dto.response.BookResponse;
+import com.sobolev.spring.bookshelf.dto.response.CursorPage;
+import com.sobolev.spring.bookshelf.model.BookStatus;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface ReactiveBookService {
+    Mono<CursorPage<BookResponse>> findAll(String after, int limit);
+    Mono<BookResponse> findById(Long id);
+    Mono<BookBatchResponse> findAllById(List<Long> ids);
+    Mono<BookResponse> create(BookRequest bookRequest);
+    Mono<BookResponse> update(Long id, BookRequest bookRequest, Long expectedVersion);
+    Mono<BookResponse> patch(Long id, BookPatchRequest patchRequest, Long expectedVersion);
+    Mono<Boolean> deleteById(Long id);
+    Mono<Page<BookResponse>> findByAuthor(String author, Pageable pageable);
+    Mono<CursorPage<BookResponse>> findByStatus(BookStatus status, String after, int limit);
+    Mono<CursorPage<BookResponse>> findByPublicationYear(Integer publicationYear, String after, int limit);
+    Mono<CursorPage<BookResponse>> findByPublicationYearBetween(Integer startYear, Integer endYear, String after, int limit);
+    Mono<CursorPage<BookResponse>> findBooksByGenreId(Long genreId, String after, int limit);
+    Mono<CursorPage<BookResponse>> findBooksByGenreName(String genreName, String after, int limit);
+    Mono<Long> countByAuthor(String author);
+    Flux<BookResponse> exportAll();
+}
@@ -0,0 +1,19 @@
+package com.sobolev.spring.bookshelf.reactive.service;
+
+import com.sobolev.spring.bookshelf.dto.request.ReviewRequest;
+import com.sobolev.spring.bookshelf.dto.request.ReviewSort;
+import com.sobolev.spring.bookshelf.dto.response.CursorPage;
+import com.sobolev.spring.bookshelf.dto.response.ReviewResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveReviewService {
+    Mono<CursorPage<ReviewResponse>> findAll(String after, int limit);
+    Mono<ReviewResponse> findById(Long id);
+    Mono<Boolean> existsByBookId(Long bookId);
+    Flux<ReviewResponse> findByBookId(Long bookId);
+    Mono<CursorPage<ReviewResponse>> findFeed(Long bookId, ReviewSort sort, String after, int limit);
+    Mono<ReviewResponse> create(ReviewRequest reviewRequest);
+    Mono<ReviewResponse> update(Long id, ReviewRequest reviewRequest, Long expectedVersion);
+    Mono<Boolean> deleteById(Long id);
+}
@@ -0,0 +1,31 @@
+package com.sobolev.spring.bookshelf.reactive.service.impl;
+
+import org.springframework.cache.Cache;
+import org.springframework.transaction.reactive.TransactionSynchronization;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import reactor.core.publisher.Mono;
+
+/**
+ * Defers cache evictions until the current reactive transaction commits, which is what the
+ * transaction-aware cache manager does for the servlet stack's {@code @CacheEvict}.
+ */
+final class AfterCommitEviction {
+
+    private AfterCommitEviction() {
+    }
+
+    static Mono<Void> evict(Cache cache, Long... keys) {
+        return TransactionSynchronizationManager.forCurrentTransaction()
+                .doOnNext(synchronizations -> synchronizations.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public Mono<Void> afterCommit() {
+                        return Mono.fromRunnable(() -> {
+                            for (Long key : keys) {
+                                cache.evict(key);
+                            }
+                        });
+                    }
+                }))
+                .then();
+    }
+}
@@ -0,0 +1,284 @@
+package com.sobolev.spring.bookshelf.reactive.service.impl;
+
+import com.sobolev.spring.bookshelf.config.CacheConfig;
+import com.sobolev.spring.bookshelf.dto.request.BookPatchRequest;
+import com.sobolev.spring.bookshelf.dto.request.BookRequest;
+import com.sobolev.spring.bookshelf.dto.response.BookBatchResponse;
+import com.sobolev.spring.bookshelf.dto.response.BookResponse;
+import com.sobolev.spring.bookshelf.dto.response.CursorPage;
+import com.sobolev.spring.bookshelf.exception.PreconditionFailedException;
+import com.sobolev.spring.bookshelf.exception.ResourseNotFoundException;
+import com.sobolev.spring.bookshelf.model.Book;
+import com.sobolev.spring.bookshelf.model.BookStatus;
+import com.sobolev.spring.bookshelf.reactive.repository.ReactiveBookRepository;
+import com.sobolev.spring.bookshelf.reactive.service.ReactiveBookService;
+import com.sobolev.spring.bookshelf.util.BookMapper;
+import com.sobolev.spring.bookshelf.util.KeysetCursor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Book operations of the reactive stack. Reads share the servlet stack's book cache,
+ * writes run in one R2DBC transaction each.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Slf4j
+public class ReactiveBookServiceImpl implements ReactiveBookService {
+
+    private static final int EXPORT_CHUNK_SIZE = 100;
+
+    private final ReactiveBookRepository bookRepository;
+    private final BookMapper bookMapper;
+    private final TransactionalOperator transactionalOperator;
+    private final Cache bookCache;
+
+    @Autowired
+    public ReactiveBookServiceImpl(ReactiveBookRepository bookRepository, BookMapper bookMapper,
+                                   TransactionalOperator transactionalOperator, CacheManager cacheManager) {
+        this.bookRepository = bookRepository;
+        this.bookMapper = bookMapper;
+        this.transactionalOperator = transactionalOperator;
+        this.bookCache = cacheManager.getCache(CacheConfig.BOOK_BY_ID);
+    }
+
+    @Override
+    public Mono<CursorPage<BookResponse>> findAll(String after, int limit) {
+        log.debug("Start findAll in service");
+        long afterId = KeysetCursor.decode(after).map(KeysetCursor::getId).orElse(0L);
+        int pageSize = KeysetCursor.clampLimit(limit);
+        return page(bookRepository.seekAll(afterId, pageSize + 1), pageSize);
+    }
+
+    @Override
+    public Mono<BookResponse> findById(Long id) {
+        log.debug("Start findById in service");
+        return Mono.justOrEmpty(bookCache.get(id, BookResponse.class))
+                .switchIfEmpty(Mono.defer(() -> findWithGenres(id)
+                        .doOnNext(book -> bookCache.put(id, book))));
+    }
+
+    @Override
+    public Mono<BookResponse> create(BookRequest bookRequest) {
+        log.debug("Start create in service");
+        Book book = bookMapper.toEntity(bookRequest);
+        Set<Long> genreIds = bookRequest.getGenreIds() != null ? bookRequest.getGenreIds() : Set.of();
+        return checkGenresExist(genreIds)
+                .then(bookRepository.insert(book))
+                .flatMap(id -> bookRepository.insertGenres(id, genreIds).then(findWithGenres(id)))
+                .as(transactionalOperator::transactional);
+    }
+
+    /**
+     * Cached books are taken from the cache, the others are loaded with one query and cached.
+     */
+    @Override
+    public Mono<BookBatchResponse> findAllById(List<Long> ids) {
+        log.debug("Start findAllById in service for {} ids", ids.size());
+        Set<Long> requested = new LinkedHashSet<>(ids);
+        Map<Long, BookResponse> found = new HashMap<>();
+        List<Long> misses = new ArrayList<>();
+        for (Long id : requested) {
+            BookResponse cached = bookCache.get(id, BookResponse.class);
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                misses.add(id);
+            }
+        }
+        Mono<List<Book>> loaded = misses.isEmpty()
+                ? Mono.just(List.of())
+                : bookRepository.findByIdIn(misses).collectList().flatMap(bookRepository::attachGenres);
+        return loaded.map(books -> {
+            for (Book book : books) {
+                BookResponse response = bookMapper.toResponse(book);
+                found.put(book.getId(), response);
+                bookCache.put(book.getId(), response);
+            }
+            BookBatchResponse batch = new BookBatchResponse();
+            for (Long id : requested) {
+                BookResponse book = found.get(id);
+                if (book != null) {
+                    batch.getBooks().add(book);
+                } else {
+                    batch.getMissingIds().add(id);
+                }
+            }
+            return batch;
+        });
+    }
+
+    @Override
+    public Mono<BookResponse> update(Long id, BookRequest bookRequest, Long expectedVersion) {
+        log.debug("Start update in service");
+        return write(id, expectedVersion, book -> bookMapper.updateEntityFromRequest(bookRequest, book),
+                bookRequest.getGenreIds());
+    }
+
+    @Override
+    public Mono<BookResponse> patch(Long id, BookPatchRequest patchRequest, Long expectedVersion) {
+        log.debug("Start patch in service");
+        return write(id, expectedVersion, book -> bookMapper.applyPatch(patchRequest, book),
+                patchRequest.getGenreIds());
+    }
+
+    @Override
+    public Mono<Boolean> deleteById(Long id) {
+        return bookRepository.deleteById(id)
+                .flatMap(deleted -> deleted > 0
+                        ? AfterCommitEviction.evict(bookCache, id).thenReturn(true)
+                        : Mono.just(false))
+                .as(transactionalOperator::transactional);
+    }
+
+    /**
+     * Page and total are two queries, as with Spring Data on the servlet stack.
+     */
+    @Override
+    public Mono<Page<BookResponse>> findByAuthor(String author, Pageable pageable) {
+        log.debug("Searching books by author: {} with pagination: {}", author, pageable);
+        return bookRepository.findByAuthor(author, pageable)
+                .collectList()
+                .flatMap(bookRepository::attachGenres)
+                .zipWith(bookRepository.countByAuthor(author))
+                .<Page<BookResponse>>map(pageAndTotal -> new PageImpl<>(
+                        pageAndTotal.getT1().stream().map(bookMapper::toResponse).toList(),
+                        pageable, pageAndTotal.getT2()));
+    }
+
+    @Override
+    public Mono<CursorPage<BookResponse>> findByStatus(BookStatus status, String after, int limit) {
+        long afterId = KeysetCursor.decode(after).map(KeysetCursor::getId).orElse(0L);
+        int pageSize = KeysetCursor.clampLimit(limit);
+        return page(bookRepository.seekByStatus(status, afterId, pageSize + 1), pageSize);
+    }
+
+    @Override
+    public Mono<CursorPage<BookResponse>> findByPublicationYear(Integer publicationYear, String after, int limit) {
+        long afterId = KeysetCursor.decode(after).map(KeysetCursor::getId).orElse(0L);
+        int pageSize = KeysetCursor.clampLimit(limit);
+        return page(bookRepository.seekByPublicationYear(publicationYear, afterId, pageSize + 1), pageSize);
+    }
+
+    @Override
+    public Mono<CursorPage<BookResponse>> findByPublicationYearBetween(Integer startYear, Integer endYear, String after, int limit) {
+        log.debug("Start findByPublicationYearBetween in service");
+        Optional<KeysetCursor> cursor = KeysetCursor.decode(after);
+        int afterYear = cursor.map(KeysetCursor::keyAsInt).orElse(Integer.MIN_VALUE);
+        long afterId = cursor.map(KeysetCursor::getId).orElse(0L);
+        int pageSize = KeysetCursor.clampLimit(limit);
+        return bookRepository.seekByPublicationYearBetween(startYear, endYear, afterYear, afterId, pageSize + 1)
+                .collectList()
+                .flatMap(bookRepository::attachGenres)
+                .map(books -> KeysetCursor.page(books, pageSize, Book::getPublicationYear, Book::getId, bookMapper::toResponse));
+    }
+
+    @Override
+    public Mono<CursorPage<BookResponse>> findBooksByGenreId(Long genreId, String after, int limit) {
+        long afterId = KeysetCursor.decode(after).map(KeysetCursor::getId).orElse(0L);
+        int pageSize = KeysetCursor.clampLimit(limit);
+        return page(bookRepository.seekByGenreId(genreId, afterId, pageSize + 1), pageSize);
+    }
+
+    @Override
+    public Mono<CursorPage<BookResponse>> findBooksByGenreName(String genreName, String after, int limit) {
+        log.debug("Start findByGenreName in service");
+        long afterId = KeysetCursor.decode(after).map(KeysetCursor::getId).orElse(0L);
+        int pageSize = KeysetCursor.clampLimit(limit);
+        return page(bookRepository.seekByGenreName(genreName, afterId, pageSize + 1), pageSize);
+    }
+
+    @Override
+    public Mono<Long> countByAuthor(String author) {
+        return bookRepository.countByAuthor(author);
+    }
+
+    /**
+     * Streams the catalog in chunks of {@value #EXPORT_CHUNK_SIZE} books, one genre query per chunk.
+     * concatMap requests the next chunk only when the previous one was written, so a slow client
+     * slows down the database cursor instead of growing a buffer.
+     */
+    @Override
+    public Flux<BookResponse> exportAll() {
+        log.debug("Start exportAll in service");
+        return bookRepository.streamAll()
+                .buffer(EXPORT_CHUNK_SIZE)
+                .concatMap(bookRepository::attachGenres, 1)
+                .concatMapIterable(books -> books)
+                .map(bookMapper::toResponse);
+    }
+
+    private Mono<CursorPage<BookResponse>> page(Flux<Book> rows, int pageSize) {
+        return rows.collectList()
+                .flatMap(bookRepository::attachGenres)
+                .map(books -> KeysetCursor.page(books, pageSize, Book::getId, Book::getId, bookMapper::toResponse));
+    }
+
+    /**
+     * Reads the book, applies the change and writes it back only if it is still at the version it was read
+     * with; null genre ids leave the genres as they are. A concurrent write in between fails the update with
+     * an {@link OptimisticLockingFailureException}, and since the read and the transaction start on
+     * subscription, the caller retries by resubscribing.
+     */
+    private Mono<BookResponse> write(Long id, Long expectedVersion, Consumer<Book> change, Set<Long> genreIds) {
+        return bookRepository.findById(id)
+                .flatMap(existingBook -> {
+                    checkVersion(existingBook, expectedVersion);
+                    change.accept(existingBook);
+                    Mono<Void> genres = genreIds == null
+                            ? Mono.empty()
+                            : checkGenresExist(genreIds).then(bookRepository.replaceGenres(id, genreIds));
+                    return bookRepository.update(existingBook)
+                            .filter(updated -> updated > 0)
+                            .switchIfEmpty(Mono.error(() -> new OptimisticLockingFailureException(
+                                    "Book " + id + " changed after it was read")))
+                            .then(genres)
+                            .then(AfterCommitEviction.evict(bookCache, id))
+                            .then(findWithGenres(id));
+                })
+                .as(transactionalOperator::transactional);
+    }
+
+    private static void checkVersion(Book book, Long expectedVersion) {
+        if (expectedVersion != null && book.getVersion() != expectedVersion) {
+            throw new PreconditionFailedException("Book " + book.getId() + " is at version " + book.getVersion()
+                    + ", not " + expectedVersion);
+        }
+    }
+
+    private Mono<BookResponse> findWithGenres(Long id) {
+        return bookRepository.findById(id)
+                .flatMap(book -> bookRepository.attachGenres(List.of(book)))
+                .map(books -> bookMapper.toResponse(books.get(0)));
+    }
+
+    private Mono<Void> checkGenresExist(Set<Long> genreIds) {
+        if (genreIds.isEmpty()) {
+            return Mono.empty();
+        }
+        return bookRepository.countGenres(genreIds)
+                .filter(found -> found == genreIds.size())
+                .switchIfEmpty(Mono.error(() -> new ResourseNotFoundException("One or more genres not found")))
+                .then();
+    }
+}
@@ -0,0 +1,184 @@
+package com.sobolev.spring.bookshelf.reactive.service.impl;
+
+import com.sobolev.spring.bookshelf.config.CacheConfig;
+import com.sobolev.spring.bookshelf.dto.request.ReviewRequest;
+import com.sobolev.spring.bookshelf.dto.request.ReviewSort;
+import com.sobolev.spring.bookshelf.dto.response.CursorPage;
+import com.sobolev.spring.bookshelf.dto.response.ReviewResponse;
+import com.sobolev.spring.bookshelf.exception.PreconditionFailedException;
+import com.sobolev.spring.bookshelf.model.Review;
+import com.sobolev.spring.bookshelf.reactive.repository.ReactiveBookRepository;
+import com.sobolev.spring.bookshelf.reactive.repository.ReactiveReviewRepository;
+import com.sobolev.spring.bookshelf.reactive.service.ReactiveReviewService;
+import com.sobolev.spring.bookshelf.util.KeysetCursor;
+import com.sobolev.spring.bookshelf.util.ReviewMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Review operations of the reactive stack. Writes adjust the book's rating aggregates in the same
+ * R2DBC transaction rather than buffering deltas like {@code RatingAggregateService} does for the
+ * servlet stack; the in-memory rankings are not notified and catch up on their next reconcile.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Slf4j
+public class ReactiveReviewServiceImpl implements ReactiveReviewService {
+
+    /**
+     * Later than any stored review and still within PostgreSQL's timestamp range.
+     */
+    private static final LocalDateTime FEED_START = LocalDateTime.of(9999, 12, 31, 0, 0);
+
+    private final ReactiveReviewRepository reviewRepository;
+    private final ReactiveBookRepository bookRepository;
+    private final ReviewMapper reviewMapper;
+    private final TransactionalOperator transactionalOperator;
+    private final Cache bookCache;
+
+    @Autowired
+    public ReactiveReviewServiceImpl(ReactiveReviewRepository reviewRepository, ReactiveBookRepository bookRepository,
+                                     ReviewMapper reviewMapper, TransactionalOperator transactionalOperator,
+                                     CacheManager cacheManager) {
+        this.reviewRepository = reviewRepository;
+        this.bookRepository = bookRepository;
+        this.reviewMapper = reviewMapper;
+        this.transactionalOperator = transactionalOperator;
+        this.bookCache = cacheManager.getCache(CacheConfig.BOOK_BY_ID);
+    }
+
+    @Override
+    public Mono<CursorPage<ReviewResponse>> findAll(String after, int limit) {
+        log.debug("Start Finding all reviews");
+        long afterId = KeysetCursor.decode(after).map(KeysetCursor::getId).orElse(0L);
+        int pageSize = KeysetCursor.clampLimit(limit);
+        return reviewRepository.seekAll(afterId, pageSize + 1)
+                .collectList()
+                .map(reviews -> KeysetCursor.page(reviews, pageSize, Review::getId, Review::getId,
+                        reviewMapper::toResponse));
+    }
+
+    @Override
+    public Mono<ReviewResponse> findById(Long id) {
+        log.debug("Start Finding review by id: {}", id);
+        return reviewRepository.findById(id)
+                .map(reviewMapper::toResponse);
+    }
+
+    @Override
+    public Mono<Boolean> existsByBookId(Long bookId) {
+        return reviewRepository.existsByBookId(bookId);
+    }
+
+    /**
+     * Loads the book once for its title and streams its reviews behind it, without collecting them first.
+     */
+    @Override
+    public Flux<ReviewResponse> findByBookId(Long bookId) {
+        log.debug("Start Finding reviews by book id: {}", bookId);
+        return bookRepository.findById(bookId)
+                .flatMapMany(book -> reviewRepository.streamByBookId(bookId)
+                        .map(review -> {
+                            review.setBook(book);
+                            return reviewMapper.toResponse(review);
+                        }));
+    }
+
+    /**
+     * The first page starts after a key no review can reach, so every page runs the same
+     * (book_id, key, id) index seek.
+     */
+    @Override
+    public Mono<CursorPage<ReviewResponse>> findFeed(Long bookId, ReviewSort sort, String after, int limit) {
+        log.debug("Start Finding review feed of book {} by {}", bookId, sort);
+        Optional<KeysetCursor> cursor = KeysetCursor.decode(after);
+        long afterId = cursor.map(KeysetCursor::getId).orElse(Long.MAX_VALUE);
+        int pageSize = KeysetCursor.clampLimit(limit);
+        Flux<Review> rows = switch (sort) {
+            case NEWEST -> reviewRepository.seekNewestByBookId(bookId,
+                    cursor.map(KeysetCursor::keyAsDateTime).orElse(FEED_START), afterId, pageSize + 1);
+            case RATING -> reviewRepository.seekBestRatedByBookId(bookId,
+                    cursor.map(KeysetCursor::keyAsInt).orElse(Integer.MAX_VALUE), afterId, pageSize + 1);
+        };
+        Function<Review, Object> key = sort == ReviewSort.NEWEST ? Review::getCreatedAt : Review::getRating;
+        return rows.collectList()
+                .map(reviews -> KeysetCursor.page(reviews, pageSize, key, Review::getId, reviewMapper::toResponse));
+    }
+
+    @Override
+    public Mono<ReviewResponse> create(ReviewRequest reviewRequest) {
+        log.debug("Start Creating review: {}", reviewRequest);
+        Long bookId = reviewRequest.getBookId();
+        return requireBook(bookId)
+                .then(reviewRepository.insert(bookId, reviewRequest.getContent(), reviewRequest.getRating()))
+                .flatMap(id -> applyDelta(bookId, 1, reviewRequest.getRating())
+                        .then(findById(id)))
+                .as(transactionalOperator::transactional);
+    }
+
+    @Override
+    public Mono<ReviewResponse> update(Long id, ReviewRequest reviewRequest, Long expectedVersion) {
+        log.debug("Start Updating review: {}", reviewRequest);
+        return reviewRepository.findById(id)
+                .flatMap(existingReview -> {
+                    if (expectedVersion != null && existingReview.getVersion() != expectedVersion) {
+                        throw new PreconditionFailedException("Review " + id + " is at version "
+                                + existingReview.getVersion() + ", not " + expectedVersion);
+                    }
+                    Long oldBookId = existingReview.getBook().getId();
+                    int oldRating = existingReview.getRating();
+                    Long newBookId = reviewRequest.getBookId();
+                    int newRating = reviewRequest.getRating();
+                    Mono<Void> aggregates;
+                    if (oldBookId.equals(newBookId)) {
+                        aggregates = oldRating != newRating ? applyDelta(newBookId, 0, newRating - oldRating) : Mono.empty();
+                    } else {
+                        aggregates = applyDelta(oldBookId, -1, -oldRating).then(applyDelta(newBookId, 1, newRating));
+                    }
+                    return (oldBookId.equals(newBookId) ? Mono.<Void>empty() : requireBook(newBookId))
+                            .then(reviewRepository.update(id, existingReview.getVersion(), newBookId,
+                                    reviewRequest.getContent(), newRating))
+                            // the delta was computed from the rating read above, so it must not outlive a concurrent edit
+                            .filter(updated -> updated > 0)
+                            .switchIfEmpty(Mono.error(() -> new OptimisticLockingFailureException(
+                                    "Review " + id + " changed after it was read")))
+                            .then(aggregates)
+                            .then(findById(id));
+                })
+                .as(transactionalOperator::transactional);
+    }
+
+    @Override
+    public Mono<Boolean> deleteById(Long id) {
+        return reviewRepository.findById(id)
+                .flatMap(review -> reviewRepository.deleteById(id)
+                        .then(applyDelta(review.getBook().getId(), -1, -review.getRating()))
+                        .thenReturn(true))
+                .defaultIfEmpty(false)
+                .as(transactionalOperator::transactional);
+    }
+
+    private Mono<Void> requireBook(Long bookId) {
+        return bookRepository.existsById(bookId)
+                .filter(Boolean::booleanValue)
+                .switchIfEmpty(Mono.error(() -> new RuntimeException("Book not found with id " + bookId)))
+                .then();
+    }
+
+    private Mono<Void> applyDelta(Long bookId, int countDelta, long ratingDelta) {
+        return bookRepository.applyRatingDelta(bookId, countDelta, ratingDelta)
+                .then(AfterCommitEviction.evict(bookCache, bookId));
+    }
+}
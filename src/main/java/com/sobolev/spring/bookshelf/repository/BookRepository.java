@@ -2,18 +2,35 @@ package com.sobolev.spring.bookshelf.repository;
 
 import com.sobolev.spring.bookshelf.model.Book;
 import com.sobolev.spring.bookshelf.model.BookStatus;
+import com.sobolev.spring.bookshelf.repository.projection.BookRatingView;
+import com.sobolev.spring.bookshelf.repository.projection.BookSearchHit;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Repository
-public interface BookRepository extends JpaRepository<Book, Long> {
+public interface BookRepository extends JpaRepository<Book, Long>, JpaSpecificationExecutor<Book> {
+    @Override
+    @EntityGraph(Book.GRAPH_GENRES)
+    List<Book> findAll();
+
     Page<Book> findByAuthor(String author, Pageable pageable);
 
     List<Book> findByAuthorIgnoreCase(String author);
@@ -22,14 +39,17 @@ public interface BookRepository extends JpaRepository<Book, Long> {
 
     List<Book> findByAuthorContainingIgnoreCase(String author);
 
+    @EntityGraph(Book.GRAPH_GENRES)
     List<Book> findByStatus(BookStatus status);
 
+    @EntityGraph(Book.GRAPH_GENRES)
     List<Book> findByPublicationYear(Integer year);
 
     List<Book> findByPublicationYearAfter(Integer year);
 
     List<Book> findByPublicationYearBefore(Integer year);
 
+    @EntityGraph(Book.GRAPH_GENRES)
     List<Book> findByPublicationYearBetween(Integer startYear, Integer endYear);
 
     Optional<Book> findByIsbn(String isbn);
@@ -54,14 +74,16 @@ public interface BookRepository extends JpaRepository<Book, Long> {
 
     List<Book> findByAuthorOrderByPublicationYearDesc(String author);
 
+    @EntityGraph(Book.GRAPH_GENRES)
     @Query("SELECT b FROM Book b JOIN b.genres g WHERE g.id = :genreId")
     List<Book> findBooksByGenreId(@Param("genreId") Long genreId);
 
+    @EntityGraph(Book.GRAPH_GENRES)
     @Query("SELECT b FROM Book b join b.genres g WHERE g.name = :genreName")
     List<Book> findBooksByGenreName(@Param("genreName") String genreName);
 
-    @Query(value = "SELECT b FROM Book b " +
-            "WHERE b.publiction_year BETWEEN :startYear AND :endYear " +
+    @Query(value = "SELECT b.* FROM book b " +
+            "WHERE b.publication_year BETWEEN :startYear AND :endYear " +
             "ORDER BY b.publication_year DESC"
             ,nativeQuery = true)
     List<Book> findBooksByPublicationYearRange(
@@ -71,9 +93,188 @@ public interface BookRepository extends JpaRepository<Book, Long> {
     @Query("SELECT b, COUNT(r) as reviewCount FROM Book b LEFT JOIN b.reviews r GROUP BY b")
     List<Object[]> findBooksWithReviewCount();
 
-    @Query("SELECT b FROM Book b LEFT JOIN b.reviews r GROUP BY b ORDER BY COUNT(r) DESC")
+    @EntityGraph(Book.GRAPH_GENRES)
+    @Query("SELECT b FROM Book b ORDER BY b.reviewCount DESC, b.id DESC")
     List<Book> findPopularBooks();
 
-    @Query("SELECT b FROM Book b WHERE (SELECT AVG(r.rating) FROM b.reviews r) > :minRating")
+    @EntityGraph(Book.GRAPH_GENRES)
+    @Query("SELECT b FROM Book b WHERE b.reviewCount > 0 AND b.ratingSum > :minRating * b.reviewCount")
     List<Book> findBooksWithAverageRatingAbove(@Param("minRating") Double minRating);
+
+    @Query("SELECT b FROM Book b WHERE b.id > :afterId ORDER BY b.id")
+    List<Book> seekAll(@Param("afterId") Long afterId, Limit limit);
+
+    @Query("SELECT b FROM Book b WHERE b.status = :status AND b.id > :afterId ORDER BY b.id")
+    List<Book> seekByStatus(@Param("status") BookStatus status, @Param("afterId") Long afterId, Limit limit);
+
+    @Query("SELECT b FROM Book b WHERE b.publicationYear = :year AND b.id > :afterId ORDER BY b.id")
+    List<Book> seekByPublicationYear(@Param("year") Integer year, @Param("afterId") Long afterId, Limit limit);
+
+    @Query("SELECT b FROM Book b " +
+            "WHERE b.publicationYear BETWEEN :startYear AND :endYear " +
+            "AND b.publicationYear >= :afterYear " +
+            "AND (b.publicationYear > :afterYear OR b.id > :afterId) " +
+            "ORDER BY b.publicationYear, b.id")
+    List<Book> seekByPublicationYearBetween(@Param("startYear") Integer startYear,
+                                            @Param("endYear") Integer endYear,
+                                            @Param("afterYear") Integer afterYear,
+                                            @Param("afterId") Long afterId,
+                                            Limit limit);
+
+    /**
+     * Index-only range scan of book_genre (genre_id, book_id); the seek runs on the join table, so deep pages
+     * of a large genre do not join every skipped book first.
+     */
+    @Query(value = "SELECT bg.book_id FROM book_genre bg WHERE bg.genre_id = :genreId AND bg.book_id > :afterId " +
+            "ORDER BY bg.book_id LIMIT :limit",
+            nativeQuery = true)
+    List<Long> seekIdsByGenreId(@Param("genreId") Long genreId, @Param("afterId") Long afterId, @Param("limit") int limit);
+
+    @Query("SELECT b FROM Book b JOIN b.genres g WHERE g.name = :genreName AND b.id > :afterId ORDER BY b.id")
+    List<Book> seekByGenreName(@Param("genreName") String genreName, @Param("afterId") Long afterId, Limit limit);
+
+    @EntityGraph(Book.GRAPH_GENRES)
+    List<Book> findByIdIn(Collection<Long> ids);
+
+    @Query("SELECT b.id AS id, b.reviewCount AS reviewCount, b.ratingSum AS ratingSum FROM Book b " +
+            "WHERE b.reviewCount > 0 ORDER BY b.reviewCount DESC, b.id DESC")
+    List<BookRatingView> findTopByReviewCount(Limit limit);
+
+    @Query("SELECT b.id AS id, b.reviewCount AS reviewCount, b.ratingSum AS ratingSum FROM Book b " +
+            "WHERE b.reviewCount > 0 ORDER BY (b.ratingSum * 1.0 / b.reviewCount) DESC, b.id DESC")
+    List<BookRatingView> findTopByAverageRating(Limit limit);
+
+    /**
+     * Continues /popular below the in-memory ranking: reviewed books strictly after (afterCount, afterId)
+     * in {@link #findTopByReviewCount} order.
+     */
+    @Query("SELECT b.id AS id, b.reviewCount AS reviewCount, b.ratingSum AS ratingSum FROM Book b " +
+            "WHERE b.reviewCount > 0 " +
+            "AND (b.reviewCount < :afterCount OR (b.reviewCount = :afterCount AND b.id < :afterId)) " +
+            "ORDER BY b.reviewCount DESC, b.id DESC")
+    List<BookRatingView> seekTopByReviewCount(@Param("afterCount") int afterCount, @Param("afterId") Long afterId,
+                                              Limit limit);
+
+    /**
+     * Continues /high-rated below the in-memory ranking. The average is computed in double precision,
+     * like the ranking's scores, so the cursor's average compares equal to the stored one.
+     */
+    @Query(value = "SELECT b.id AS id, b.review_count AS \"reviewCount\", b.rating_sum AS \"ratingSum\" FROM book b " +
+            "WHERE b.review_count > 0 AND CAST(b.rating_sum AS float8) / b.review_count > :minRating " +
+            "AND (CAST(b.rating_sum AS float8) / b.review_count < :afterAverage " +
+            "     OR (CAST(b.rating_sum AS float8) / b.review_count = :afterAverage AND b.id < :afterId)) " +
+            "ORDER BY CAST(b.rating_sum AS float8) / b.review_count DESC, b.id DESC LIMIT :limit",
+            nativeQuery = true)
+    List<BookRatingView> seekTopByAverageRating(@Param("minRating") double minRating,
+                                                @Param("afterAverage") double afterAverage,
+                                                @Param("afterId") Long afterId,
+                                                @Param("limit") int limit);
+
+    /**
+     * Full-text hits ranked by title/author match plus half the rank of each matching review,
+     * continuing strictly after (afterScore, afterId). Scores are rounded so they survive the cursor round trip.
+     */
+    @Query(value = "SELECT m.book_id AS id, ROUND(CAST(SUM(m.rank) AS numeric), 6) AS score " +
+            "FROM (SELECT b.id AS book_id, ts_rank(b.search_vector, websearch_to_tsquery('simple', :q)) AS rank " +
+            "      FROM book b WHERE b.search_vector @@ websearch_to_tsquery('simple', :q) " +
+            "      UNION ALL " +
+            "      SELECT r.book_id, 0.5 * ts_rank(r.search_vector, websearch_to_tsquery('simple', :q)) " +
+            "      FROM review r WHERE r.search_vector @@ websearch_to_tsquery('simple', :q)) m " +
+            "GROUP BY m.book_id " +
+            "HAVING ROUND(CAST(SUM(m.rank) AS numeric), 6) < :afterScore " +
+            "    OR (ROUND(CAST(SUM(m.rank) AS numeric), 6) = :afterScore AND m.book_id < :afterId) " +
+            "ORDER BY score DESC, id DESC " +
+            "LIMIT :limit",
+            nativeQuery = true)
+    List<BookSearchHit> searchFullText(@Param("q") String q,
+                                       @Param("afterScore") BigDecimal afterScore,
+                                       @Param("afterId") Long afterId,
+                                       @Param("limit") int limit);
+
+    @Query(value = "SELECT b.id AS id, ROUND(CAST(word_similarity(:q, b.title || ' ' || b.author) AS numeric), 6) AS score " +
+            "FROM book b " +
+            "WHERE :q <% (b.title || ' ' || b.author) " +
+            "AND (ROUND(CAST(word_similarity(:q, b.title || ' ' || b.author) AS numeric), 6) < :afterScore " +
+            "     OR (ROUND(CAST(word_similarity(:q, b.title || ' ' || b.author) AS numeric), 6) = :afterScore " +
+            "         AND b.id < :afterId)) " +
+            "ORDER BY score DESC, id DESC " +
+            "LIMIT :limit",
+            nativeQuery = true)
+    List<BookSearchHit> searchTrigram(@Param("q") String q,
+                                      @Param("afterScore") BigDecimal afterScore,
+                                      @Param("afterId") Long afterId,
+                                      @Param("limit") int limit);
+
+    @Query("SELECT b.id FROM Book b WHERE b.id IN :ids")
+    Set<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT b FROM Book b ORDER BY b.id")
+    Stream<Book> streamAllBy();
+
+    /**
+     * Applies many books' rating deltas in one statement; the arrays are parallel, one element per book.
+     * Returns the new aggregates of the books that still exist. Not {@code @Modifying}: the statement returns rows.
+     */
+    @Query(value = "UPDATE book b SET review_count = b.review_count + d.count_delta, " +
+            "rating_sum = b.rating_sum + d.rating_delta " +
+            "FROM UNNEST(CAST(:bookIds AS bigint[]), CAST(:countDeltas AS bigint[]), CAST(:ratingDeltas AS bigint[])) " +
+            "AS d(book_id, count_delta, rating_delta) WHERE b.id = d.book_id " +
+            "RETURNING b.id AS id, b.review_count AS \"reviewCount\", b.rating_sum AS \"ratingSum\"",
+            nativeQuery = true)
+    List<BookRatingView> applyRatingDeltas(@Param("bookIds") Long[] bookIds,
+                          @Param("countDeltas") Long[] countDeltas,
+                          @Param("ratingDeltas") Long[] ratingDeltas);
+
+    @Query(value = "SELECT bg.genre_id FROM book_genre bg WHERE bg.book_id = :bookId", nativeQuery = true)
+    List<Long> findGenreIdsByBookId(@Param("bookId") Long bookId);
+
+    /**
+     * Writes book_genre rows without going through Book.genres; ids that name no genre are skipped.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "INSERT INTO book_genre (book_id, genre_id) SELECT :bookId, g.id FROM genre g " +
+            "WHERE g.id IN (:genreIds) ON CONFLICT DO NOTHING",
+            nativeQuery = true)
+    int insertGenres(@Param("bookId") Long bookId, @Param("genreIds") Collection<Long> genreIds);
+
+    @Modifying(flushAutomatically = true)
+    @Query(value = "DELETE FROM book_genre WHERE book_id = :bookId AND genre_id IN (:genreIds)", nativeQuery = true)
+    int deleteGenres(@Param("bookId") Long bookId, @Param("genreIds") Collection<Long> genreIds);
+
+    /**
+     * Version bump for edits Hibernate does not see, such as direct book_genre writes; 0 rows means the book
+     * moved past the given version.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE book SET version = version + 1 WHERE id = :bookId AND version = :version", nativeQuery = true)
+    int incrementVersion(@Param("bookId") Long bookId, @Param("version") long version);
+
+    @Query("SELECT MAX(b.id) FROM Book b")
+    Optional<Long> findMaxId();
+
+    @Modifying
+    @Query(value = "UPDATE book b SET review_count = s.review_count, rating_sum = s.rating_sum " +
+            "FROM (SELECT bk.id AS book_id, COUNT(r.id) AS review_count, COALESCE(SUM(r.rating), 0) AS rating_sum " +
+            "      FROM book bk LEFT JOIN review r ON r.book_id = bk.id " +
+            "      WHERE bk.id BETWEEN :fromId AND :toId GROUP BY bk.id) s " +
+            "WHERE b.id = s.book_id AND (b.review_count <> s.review_count OR b.rating_sum <> s.rating_sum)",
+            nativeQuery = true)
+    int rebuildRatingAggregates(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    /**
+     * {@link #rebuildRatingAggregates} leaving out the given books; the list must not be empty.
+     */
+    @Modifying
+    @Query(value = "UPDATE book b SET review_count = s.review_count, rating_sum = s.rating_sum " +
+            "FROM (SELECT bk.id AS book_id, COUNT(r.id) AS review_count, COALESCE(SUM(r.rating), 0) AS rating_sum " +
+            "      FROM book bk LEFT JOIN review r ON r.book_id = bk.id " +
+            "      WHERE bk.id BETWEEN :fromId AND :toId AND bk.id NOT IN (:skipIds) GROUP BY bk.id) s " +
+            "WHERE b.id = s.book_id AND (b.review_count <> s.review_count OR b.rating_sum <> s.rating_sum)",
+            nativeQuery = true)
+    int rebuildRatingAggregatesExcept(@Param("fromId") Long fromId, @Param("toId") Long toId,
+                                      @Param("skipIds") Collection<Long> skipIds);
 }
@@ -1,7 +1,10 @@
 package com.sobolev.spring.bookshelf.repository;
 
 import com.sobolev.spring.bookshelf.model.Genre;
+import com.sobolev.spring.bookshelf.repository.projection.GenreBookCountView;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Collection;
@@ -19,4 +22,16 @@ public interface GenreRepository extends JpaRepository<Genre, Long> {
     List<Genre> findByNameStartingWith(String prefix);
 
     long countByName(String name);
+
+    /**
+     * Sums the shards of the trigger-maintained counter; a genre that never had a book has no rows yet.
+     */
+    @Query(value = "SELECT COALESCE(SUM(c.book_count), 0) FROM genre_book_count c WHERE c.genre_id = :genreId",
+            nativeQuery = true)
+    long countBooksByGenreId(@Param("genreId") Long genreId);
+
+    @Query(value = "SELECT g.id AS id, g.name AS name, COALESCE(SUM(c.book_count), 0) AS \"bookCount\" " +
+            "FROM genre g LEFT JOIN genre_book_count c ON c.genre_id = g.id GROUP BY g.id, g.name ORDER BY g.id",
+            nativeQuery = true)
+    List<GenreBookCountView> findBookCounts();
 }
@@ -1,17 +1,64 @@
 package com.sobolev.spring.bookshelf.repository;
 
 import com.sobolev.spring.bookshelf.model.Review;
+import com.sobolev.spring.bookshelf.repository.projection.BookRatingView;
+import com.sobolev.spring.bookshelf.repository.projection.ReviewView;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
 
 @Repository
 public interface ReviewRepository extends JpaRepository<Review, Long> {
+    String VIEW_COLUMNS = "r.id AS id, r.content AS content, r.rating AS rating, r.createdAt AS createdAt, " +
+            "b.id AS bookId, b.title AS bookTitle, r.version AS version";
+
+    @Query("SELECT " + VIEW_COLUMNS + " FROM Review r JOIN r.book b WHERE r.id = :id")
+    Optional<ReviewView> findViewById(@Param("id") Long id);
+
+    @Query("SELECT " + VIEW_COLUMNS + " FROM Review r JOIN r.book b WHERE r.id > :afterId ORDER BY r.id")
+    List<ReviewView> seekViews(@Param("afterId") Long afterId, Limit limit);
+
+    @Query("SELECT " + VIEW_COLUMNS + " FROM Review r JOIN r.book b WHERE b.id = :bookId ORDER BY r.id")
+    List<ReviewView> findViewsByBookId(@Param("bookId") Long bookId);
+
+    @Query("SELECT " + VIEW_COLUMNS + " FROM Review r JOIN r.book b WHERE b.id = :bookId " +
+            "ORDER BY r.createdAt DESC, r.id DESC")
+    List<ReviewView> findNewestByBookId(@Param("bookId") Long bookId, Limit limit);
+
+    @Query("SELECT " + VIEW_COLUMNS + " FROM Review r JOIN r.book b WHERE b.id = :bookId " +
+            "AND r.createdAt <= :afterCreatedAt " +
+            "AND (r.createdAt < :afterCreatedAt OR r.id < :afterId) " +
+            "ORDER BY r.createdAt DESC, r.id DESC")
+    List<ReviewView> seekNewestByBookId(@Param("bookId") Long bookId,
+                                        @Param("afterCreatedAt") LocalDateTime afterCreatedAt,
+                                        @Param("afterId") Long afterId,
+                                        Limit limit);
+
+    @Query("SELECT " + VIEW_COLUMNS + " FROM Review r JOIN r.book b WHERE b.id = :bookId " +
+            "ORDER BY r.rating DESC, r.id DESC")
+    List<ReviewView> findBestRatedByBookId(@Param("bookId") Long bookId, Limit limit);
+
+    @Query("SELECT " + VIEW_COLUMNS + " FROM Review r JOIN r.book b WHERE b.id = :bookId " +
+            "AND r.rating <= :afterRating " +
+            "AND (r.rating < :afterRating OR r.id < :afterId) " +
+            "ORDER BY r.rating DESC, r.id DESC")
+    List<ReviewView> seekBestRatedByBookId(@Param("bookId") Long bookId,
+                                           @Param("afterRating") Integer afterRating,
+                                           @Param("afterId") Long afterId,
+                                           Limit limit);
+
     List<Review> findByBookId(Long bookId);
 
+    List<Review> findByIdGreaterThanOrderByIdAsc(Long afterId, Limit limit);
+
     List<Review> findByRating(Integer rating);
 
     List<Review> findByRatingGreaterThan(Integer rating);
@@ -28,4 +75,36 @@ public interface ReviewRepository extends JpaRepository<Review, Long> {
 
     @Query("SELECT AVG(r.rating) FROM Review r WHERE r.book.id = :bookId")
     Double findAverageRatingByBookId(@Param("bookId") Long bookId);
+
+    /**
+     * Inserts the reviews in one statement, skipping those whose book no longer exists, and returns
+     * the count and rating sum inserted per book. Not {@code @Modifying}: the statement returns rows.
+     */
+    @Query(value = "WITH inserted AS (" +
+            "  INSERT INTO review (book_id, rating, content, created_at) " +
+            "  SELECT d.book_id, d.rating, d.content, d.created_at " +
+            "  FROM UNNEST(CAST(:bookIds AS bigint[]), CAST(:ratings AS int[]), CAST(:contents AS text[]), " +
+            "              CAST(:createdAts AS timestamp[])) AS d(book_id, rating, content, created_at) " +
+            "  JOIN book b ON b.id = d.book_id " +
+            "  RETURNING book_id, rating) " +
+            "SELECT i.book_id AS id, CAST(COUNT(*) AS int) AS \"reviewCount\", SUM(i.rating) AS \"ratingSum\" " +
+            "FROM inserted i GROUP BY i.book_id ORDER BY i.book_id",
+            nativeQuery = true)
+    List<BookRatingView> insertAll(@Param("bookIds") Long[] bookIds,
+                                   @Param("ratings") Integer[] ratings,
+                                   @Param("contents") String[] contents,
+                                   @Param("createdAts") LocalDateTime[] createdAts);
+
+    /**
+     * Records that the reviews of the ingest log up to the sequence number are written; never moves backwards.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO review_ingest_checkpoint (log_id, written_sequence) VALUES (:logId, :sequence) " +
+            "ON CONFLICT (log_id) DO UPDATE SET written_sequence = " +
+            "GREATEST(review_ingest_checkpoint.written_sequence, EXCLUDED.written_sequence)",
+            nativeQuery = true)
+    int advanceIngestCheckpoint(@Param("logId") UUID logId, @Param("sequence") long sequence);
+
+    @Query(value = "SELECT written_sequence FROM review_ingest_checkpoint WHERE log_id = :logId", nativeQuery = true)
+    Optional<Long> findIngestCheckpoint(@Param("logId") UUID logId);
 }
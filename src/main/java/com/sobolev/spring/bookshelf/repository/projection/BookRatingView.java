@@ -0,0 +1,7 @@
+package com.sobolev.spring.bookshelf.repository.projection;
+
+public interface BookRatingView {
+    Long getId();
+    Integer getReviewCount();
+    Long getRatingSum();
+}
@@ -0,0 +1,8 @@
+package com.sobolev.spring.bookshelf.repository.projection;
+
+import java.math.BigDecimal;
+
+public interface BookSearchHit {
+    Long getId();
+    BigDecimal getScore();
+}
@@ -0,0 +1,7 @@
+package com.sobolev.spring.bookshelf.repository.projection;
+
+public interface GenreBookCountView {
+    Long getId();
+    String getName();
+    Long getBookCount();
+}
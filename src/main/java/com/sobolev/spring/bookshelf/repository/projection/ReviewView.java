@@ -0,0 +1,13 @@
+package com.sobolev.spring.bookshelf.repository.projection;
+
+import java.time.LocalDateTime;
+
+public interface ReviewView {
+    Long getId();
+    String getContent();
+    Integer getRating();
+    LocalDateTime getCreatedAt();
+    Long getBookId();
+    String getBookTitle();
+    Long getVersion();
+}
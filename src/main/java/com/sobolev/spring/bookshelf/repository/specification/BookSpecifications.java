@@ -0,0 +1,89 @@
+package com.sobolev.spring.bookshelf.repository.specification;
+
+import com.sobolev.spring.bookshelf.dto.request.BookFilter;
+import com.sobolev.spring.bookshelf.dto.request.BookSort;
+import com.sobolev.spring.bookshelf.model.Book;
+import com.sobolev.spring.bookshelf.model.Genre;
+import com.sobolev.spring.bookshelf.util.KeysetCursor;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class BookSpecifications {
+
+    private BookSpecifications() {
+    }
+
+    /**
+     * All criteria of the filter combined with AND; criteria left empty are ignored.
+     */
+    public static Specification<Book> matching(BookFilter filter) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (filter.getAuthor() != null && !filter.getAuthor().isBlank()) {
+                predicates.add(cb.equal(root.get("author"), filter.getAuthor()));
+            }
+            if (filter.getStatus() != null) {
+                predicates.add(cb.equal(root.get("status"), filter.getStatus()));
+            }
+            if (filter.getYearFrom() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("publicationYear"), filter.getYearFrom()));
+            }
+            if (filter.getYearTo() != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("publicationYear"), filter.getYearTo()));
+            }
+            if (filter.getSort() == BookSort.YEAR || filter.getSort() == BookSort.YEAR_DESC) {
+                predicates.add(cb.isNotNull(root.get("publicationYear")));
+            }
+            if (filter.getGenreIds() != null && !filter.getGenreIds().isEmpty()) {
+                // EXISTS instead of a join keeps one row per book, so no DISTINCT is needed under LIMIT
+                Subquery<Long> genreMatch = query.subquery(Long.class);
+                Root<Book> book = genreMatch.from(Book.class);
+                Join<Book, Genre> genre = book.join("genres");
+                genreMatch.select(book.get("id"))
+                        .where(cb.equal(book, root), genre.get("id").in(filter.getGenreIds()));
+                predicates.add(cb.exists(genreMatch));
+            }
+            if (filter.getMinRating() != null) {
+                Path<Integer> reviewCount = root.get("reviewCount");
+                predicates.add(cb.gt(reviewCount, 0));
+                predicates.add(cb.gt(root.<Long>get("ratingSum"), cb.prod(reviewCount, filter.getMinRating())));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    /**
+     * Rows strictly after the cursor in the given order. The inclusive bound on the sort key
+     * lets the planner turn the seek into an index range scan on (key, id).
+     */
+    public static Specification<Book> after(BookSort sort, KeysetCursor cursor) {
+        return (root, query, cb) -> {
+            Path<Long> id = root.get("id");
+            boolean descending = sort.getDirection().isDescending();
+            return switch (sort) {
+                case ID -> descending ? cb.lessThan(id, cursor.getId()) : cb.greaterThan(id, cursor.getId());
+                case YEAR, YEAR_DESC, POPULAR ->
+                        seek(cb, root.get(sort.getProperty()), cursor.keyAsInt(), id, cursor.getId(), descending);
+                case TITLE -> seek(cb, root.get(sort.getProperty()), cursor.getKey(), id, cursor.getId(), descending);
+            };
+        };
+    }
+
+    private static <K extends Comparable<? super K>> Predicate seek(CriteriaBuilder cb, Path<K> key, K afterKey,
+                                                                   Path<Long> id, long afterId, boolean descending) {
+        if (descending) {
+            return cb.and(cb.lessThanOrEqualTo(key, afterKey),
+                    cb.or(cb.lessThan(key, afterKey), cb.lessThan(id, afterId)));
+        }
+        return cb.and(cb.greaterThanOrEqualTo(key, afterKey),
+                cb.or(cb.greaterThan(key, afterKey), cb.greaterThan(id, afterId)));
+    }
+}
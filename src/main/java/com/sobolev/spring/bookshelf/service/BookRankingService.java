@@ -0,0 +1,10 @@
+package com.sobolev.spring.bookshelf.service;
+
+import com.sobolev.spring.bookshelf.dto.response.BookResponse;
+import com.sobolev.spring.bookshelf.dto.response.CursorPage;
+
+public interface BookRankingService {
+    CursorPage<BookResponse> findPopular(String after, int limit);
+    CursorPage<BookResponse> findTopRated(Double minRating, String after, int limit);
+    void reconcile();
+}
@@ -0,0 +1,8 @@
+package com.sobolev.spring.bookshelf.service;
+
+import com.sobolev.spring.bookshelf.dto.response.BookResponse;
+import com.sobolev.spring.bookshelf.dto.response.CursorPage;
+
+public interface BookSearchService {
+    CursorPage<BookResponse> search(String query, String after, int limit);
+}
@@ -1,27 +1,38 @@
 package com.sobolev.spring.bookshelf.service;
 
+import com.sobolev.spring.bookshelf.dto.request.BookFilter;
+import com.sobolev.spring.bookshelf.dto.request.BookPatchRequest;
 import com.sobolev.spring.bookshelf.dto.request.BookRequest;
+import com.sobolev.spring.bookshelf.dto.response.BookBatchResponse;
 import com.sobolev.spring.bookshelf.dto.response.BookResponse;
+import com.sobolev.spring.bookshelf.dto.response.CursorPage;
+import com.sobolev.spring.bookshelf.dto.response.GenreBooksResponse;
 import com.sobolev.spring.bookshelf.model.BookStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface BookService {
-    List<BookResponse> findAll();
+    CursorPage<BookResponse> findAll(String after, int limit);
     Optional<BookResponse> findById(Long id);
+    BookBatchResponse findAllById(List<Long> ids);
     BookResponse create(BookRequest bookRequest);
-    Optional<BookResponse> update(Long id, BookRequest bookRequest);
+    Optional<BookResponse> update(Long id, BookRequest bookRequest, Long expectedVersion);
+    Optional<BookResponse> patch(Long id, BookPatchRequest patchRequest, Long expectedVersion);
     boolean deleteById(Long id);
     Page<BookResponse> findByAuthor(String author, Pageable pageable);
-    List<BookResponse> findByStatus(BookStatus status);
-    List<BookResponse> findByPublicationYear(Integer publicationYear);
-    List<BookResponse> findByPublicationYearBetween(Integer startYear, Integer endYear);
-    List<BookResponse> findBooksByGenreId(Long genreId);
-    List<BookResponse> findBooksByGenreName(String name);
-    List<BookResponse> findPopularBooks();
-    List<BookResponse> findBooksWithAverageRatingAbove(Double minRating);
+    CursorPage<BookResponse> findByStatus(BookStatus status, String after, int limit);
+    CursorPage<BookResponse> findByPublicationYear(Integer publicationYear, String after, int limit);
+    CursorPage<BookResponse> findByPublicationYearBetween(Integer startYear, Integer endYear, String after, int limit);
+    CursorPage<BookResponse> findBooksByGenreId(Long genreId, String after, int limit);
+    Optional<GenreBooksResponse> findGenreWithBooks(Long genreId, String after, int limit);
+    CursorPage<BookResponse> findBooksByGenreName(String name, String after, int limit);
+    CursorPage<BookResponse> findPopularBooks(String after, int limit);
+    CursorPage<BookResponse> findBooksWithAverageRatingAbove(Double minRating, String after, int limit);
+    CursorPage<BookResponse> search(BookFilter filter, String after, int limit);
     long countByAuthor(String author);
+    long exportAll(Consumer<BookResponse> consumer);
 }
@@ -0,0 +1,12 @@
+package com.sobolev.spring.bookshelf.service;
+
+import com.sobolev.spring.bookshelf.dto.request.ImportFormat;
+import com.sobolev.spring.bookshelf.dto.response.ImportReport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface ImportService {
+    ImportReport importBooks(InputStream inputStream, ImportFormat format) throws IOException;
+    ImportReport importReviews(InputStream inputStream, ImportFormat format) throws IOException;
+}
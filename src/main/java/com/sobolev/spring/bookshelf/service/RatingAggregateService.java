@@ -0,0 +1,18 @@
+package com.sobolev.spring.bookshelf.service;
+
+import com.sobolev.spring.bookshelf.rating.RatingDelta;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface RatingAggregateService {
+    void reviewAdded(Long bookId, int rating);
+    void reviewsAdded(Long bookId, int count, long ratingSum);
+    void reviewRemoved(Long bookId, int rating);
+    void reviewChanged(Long oldBookId, int oldRating, Long newBookId, int newRating);
+    void flush(List<RatingDelta> deltas);
+    boolean markRunning();
+    void markStopped();
+    Optional<Long> findMaxBookId();
+    int rebuildRange(Long fromId, Long toId);
+}
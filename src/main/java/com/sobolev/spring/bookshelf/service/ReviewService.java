@@ -1,16 +1,23 @@
 package com.sobolev.spring.bookshelf.service;
 
 import com.sobolev.spring.bookshelf.dto.request.ReviewRequest;
+import com.sobolev.spring.bookshelf.dto.request.ReviewSort;
+import com.sobolev.spring.bookshelf.dto.response.CursorPage;
 import com.sobolev.spring.bookshelf.dto.response.ReviewResponse;
+import com.sobolev.spring.bookshelf.ingest.AcceptedReview;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 public interface ReviewService {
-    List<ReviewResponse> findAll();
-    Optional<ReviewResponse> findById(Long id);
-    List<ReviewResponse> findByBookId(Long bookId);
+    CursorPage<ReviewResponse> findAll(String after, int limit, boolean expandBook);
+    Optional<ReviewResponse> findById(Long id, boolean expandBook);
+    List<ReviewResponse> findByBookId(Long bookId, boolean expandBook);
+    CursorPage<ReviewResponse> findFeed(Long bookId, ReviewSort sort, String after, int limit, boolean expandBook);
     ReviewResponse create(ReviewRequest reviewRequest);
-    Optional<ReviewResponse> update(Long id, ReviewRequest reviewRequest);
+    int createAll(UUID logId, List<AcceptedReview> reviews);
+    long findWrittenSequence(UUID logId);
+    Optional<ReviewResponse> update(Long id, ReviewRequest reviewRequest, Long expectedVersion);
     boolean deleteById(Long id);
 }
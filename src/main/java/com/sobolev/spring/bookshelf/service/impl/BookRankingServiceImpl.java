@@ -0,0 +1,183 @@
+package com.sobolev.spring.bookshelf.service.impl;
+
+import com.sobolev.spring.bookshelf.dto.response.BookResponse;
+import com.sobolev.spring.bookshelf.dto.response.CursorPage;
+import com.sobolev.spring.bookshelf.event.RatingAggregateChangedEvent;
+import com.sobolev.spring.bookshelf.model.Book;
+import com.sobolev.spring.bookshelf.ranking.RankEntry;
+import com.sobolev.spring.bookshelf.ranking.TopNRanking;
+import com.sobolev.spring.bookshelf.repository.BookRepository;
+import com.sobolev.spring.bookshelf.repository.projection.BookRatingView;
+import com.sobolev.spring.bookshelf.service.BookRankingService;
+import com.sobolev.spring.bookshelf.util.BookMapper;
+import com.sobolev.spring.bookshelf.util.KeysetCursor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.DoublePredicate;
+
+/**
+ * Serves /popular and /high-rated from in-memory top-N rankings instead of sorting the book table per request.
+ * Review writes re-rank the touched book after commit; {@link #reconcile()} rebuilds both rankings from the
+ * stored aggregates and is what brings back books that dropped out of a full ranking. A page that reaches
+ * the end of a truncated ranking continues from the stored aggregates, so paging is not capped at
+ * {@code bookshelf.rankings.size}.
+ */
+@Service
+@Slf4j
+public class BookRankingServiceImpl implements BookRankingService {
+
+    private final BookRepository bookRepository;
+    private final BookMapper bookMapper;
+    private final int size;
+
+    private volatile TopNRanking popular;
+    private volatile TopNRanking topRated;
+
+    @Autowired
+    public BookRankingServiceImpl(BookRepository bookRepository, BookMapper bookMapper,
+                                  @Value("${bookshelf.rankings.size:1000}") int size) {
+        this.bookRepository = bookRepository;
+        this.bookMapper = bookMapper;
+        this.size = size;
+        this.popular = new TopNRanking(size);
+        this.topRated = new TopNRanking(size);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<BookResponse> findPopular(String after, int limit) {
+        log.debug("Start findPopular in ranking service");
+        return findPage(popular, after, limit, score -> true,
+                (afterEntry, count) -> bookRepository.seekTopByReviewCount(
+                                afterEntry == null ? Integer.MAX_VALUE : (int) afterEntry.getScore(),
+                                afterEntry == null ? Long.MAX_VALUE : afterEntry.getBookId(),
+                                Limit.of(count))
+                        .stream()
+                        .map(view -> new RankEntry(view.getId(), view.getReviewCount()))
+                        .toList());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<BookResponse> findTopRated(Double minRating, String after, int limit) {
+        log.debug("Start findTopRated in ranking service");
+        return findPage(topRated, after, limit, score -> score > minRating,
+                (afterEntry, count) -> bookRepository.seekTopByAverageRating(minRating,
+                                afterEntry == null ? Double.MAX_VALUE : afterEntry.getScore(),
+                                afterEntry == null ? Long.MAX_VALUE : afterEntry.getBookId(),
+                                count)
+                        .stream()
+                        .map(view -> new RankEntry(view.getId(), averageOf(view)))
+                        .toList());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void reconcile() {
+        TopNRanking nextPopular = new TopNRanking(size);
+        List<BookRatingView> mostReviewed = bookRepository.findTopByReviewCount(Limit.of(size));
+        for (BookRatingView view : mostReviewed) {
+            nextPopular.update(view.getId(), view.getReviewCount());
+        }
+        TopNRanking nextTopRated = new TopNRanking(size);
+        List<BookRatingView> bestRated = bookRepository.findTopByAverageRating(Limit.of(size));
+        for (BookRatingView view : bestRated) {
+            nextTopRated.update(view.getId(), averageOf(view));
+        }
+        // A full result may have left books out.
+        if (mostReviewed.size() == size) {
+            nextPopular.markTruncated();
+        }
+        if (bestRated.size() == size) {
+            nextTopRated.markTruncated();
+        }
+        popular = nextPopular;
+        topRated = nextTopRated;
+        log.info("Reconciled book rankings with up to {} entries each", size);
+    }
+
+    @TransactionalEventListener
+    public void onRatingAggregateChanged(RatingAggregateChangedEvent event) {
+        rank(event.getRating());
+    }
+
+    private void rank(BookRatingView view) {
+        if (view.getReviewCount() <= 0) {
+            unrank(view.getId());
+            return;
+        }
+        popular.update(view.getId(), view.getReviewCount());
+        topRated.update(view.getId(), averageOf(view));
+    }
+
+    private void unrank(Long bookId) {
+        popular.remove(bookId);
+        topRated.remove(bookId);
+    }
+
+    /**
+     * Takes entries from the ranking; a book deleted since it was ranked is dropped from the ranking and the
+     * next entry taken instead, so a page is only short at the real end. Past the end of a truncated ranking
+     * the page continues with {@code seekStored}, which returns up to the given count of entries strictly after
+     * the given one (from the top when null) read from the stored aggregates in the ranking's order.
+     */
+    private CursorPage<BookResponse> findPage(TopNRanking ranking, String after, int limit, DoublePredicate scoreFilter,
+                                              BiFunction<RankEntry, Integer, List<RankEntry>> seekStored) {
+        RankEntry afterEntry = KeysetCursor.decode(after)
+                .map(cursor -> new RankEntry(cursor.getId(), cursor.keyAsDouble()))
+                .orElse(null);
+        int pageSize = KeysetCursor.clampLimit(limit);
+
+        List<RankEntry> entries = new ArrayList<>(pageSize + 1);
+        Map<Long, Book> books = new HashMap<>();
+        boolean fromRanking = true;
+        while (entries.size() <= pageSize) {
+            int wanted = pageSize + 1 - entries.size();
+            List<RankEntry> candidates = fromRanking
+                    ? ranking.page(afterEntry, wanted, scoreFilter)
+                    : seekStored.apply(afterEntry, wanted);
+            if (!candidates.isEmpty()) {
+                afterEntry = candidates.get(candidates.size() - 1);
+                List<Long> ids = candidates.stream()
+                        .map(RankEntry::getBookId)
+                        .filter(id -> !books.containsKey(id))
+                        .toList();
+                bookRepository.findByIdIn(ids).forEach(book -> books.put(book.getId(), book));
+                for (RankEntry candidate : candidates) {
+                    if (!books.containsKey(candidate.getBookId())) {
+                        if (fromRanking) {
+                            ranking.remove(candidate.getBookId());
+                        }
+                    } else if (ids.contains(candidate.getBookId())) {
+                        // Not fetched means already on this page: its stored aggregate moved since it was ranked.
+                        entries.add(candidate);
+                    }
+                }
+            }
+            if (candidates.size() == wanted) {
+                continue;
+            }
+            if (!fromRanking || !ranking.isTruncated()) {
+                break;
+            }
+            fromRanking = false;
+        }
+        return KeysetCursor.page(entries, pageSize, RankEntry::getScore, RankEntry::getBookId,
+                entry -> bookMapper.toResponse(books.get(entry.getBookId())));
+    }
+
+    private static double averageOf(BookRatingView view) {
+        return (double) view.getRatingSum() / view.getReviewCount();
+    }
+}
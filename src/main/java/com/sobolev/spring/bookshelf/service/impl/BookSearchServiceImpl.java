@@ -0,0 +1,104 @@
+package com.sobolev.spring.bookshelf.service.impl;
+
+import com.sobolev.spring.bookshelf.dto.response.BookResponse;
+import com.sobolev.spring.bookshelf.dto.response.CursorPage;
+import com.sobolev.spring.bookshelf.exception.InvalidCursorException;
+import com.sobolev.spring.bookshelf.model.Book;
+import com.sobolev.spring.bookshelf.repository.BookRepository;
+import com.sobolev.spring.bookshelf.repository.projection.BookSearchHit;
+import com.sobolev.spring.bookshelf.service.BookSearchService;
+import com.sobolev.spring.bookshelf.util.BookMapper;
+import com.sobolev.spring.bookshelf.util.KeysetCursor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Ranked search over book title, author and review content.
+ * Full-text matching (GIN on tsvector) runs first; a query whose first page has no full-text match,
+ * typically a word fragment or a typo, falls back to trigram word similarity on title and author.
+ * The mode is part of the cursor, so every following page stays in the mode of the first one.
+ */
+@Service
+@Transactional(readOnly = true)
+@Slf4j
+public class BookSearchServiceImpl implements BookSearchService {
+
+    private static final char FULL_TEXT = 'F';
+    private static final char TRIGRAM = 'T';
+
+    /**
+     * Above any reachable score, used as the cursor of the first page.
+     */
+    private static final BigDecimal MAX_SCORE = BigDecimal.valueOf(1_000_000_000L);
+
+    private final BookRepository bookRepository;
+    private final BookMapper bookMapper;
+
+    @Autowired
+    public BookSearchServiceImpl(BookRepository bookRepository, BookMapper bookMapper) {
+        this.bookRepository = bookRepository;
+        this.bookMapper = bookMapper;
+    }
+
+    @Override
+    public CursorPage<BookResponse> search(String query, String after, int limit) {
+        log.debug("Start search in service");
+        if (query == null || query.isBlank()) {
+            CursorPage<BookResponse> empty = new CursorPage<>();
+            empty.setContent(List.of());
+            return empty;
+        }
+        int pageSize = KeysetCursor.clampLimit(limit);
+        String q = query.strip();
+
+        Optional<KeysetCursor> cursor = KeysetCursor.decode(after);
+        if (cursor.isEmpty()) {
+            List<BookSearchHit> hits = bookRepository.searchFullText(q, MAX_SCORE, Long.MAX_VALUE, pageSize + 1);
+            if (!hits.isEmpty()) {
+                return toPage(hits, pageSize, FULL_TEXT);
+            }
+            return toPage(bookRepository.searchTrigram(q, MAX_SCORE, Long.MAX_VALUE, pageSize + 1), pageSize, TRIGRAM);
+        }
+
+        String key = cursor.get().getKey();
+        if (key.isEmpty()) {
+            throw new InvalidCursorException("Invalid cursor key: " + key);
+        }
+        char mode = key.charAt(0);
+        BigDecimal afterScore = parseScore(key.substring(1));
+        long afterId = cursor.get().getId();
+        if (mode == FULL_TEXT) {
+            return toPage(bookRepository.searchFullText(q, afterScore, afterId, pageSize + 1), pageSize, FULL_TEXT);
+        }
+        if (mode == TRIGRAM) {
+            return toPage(bookRepository.searchTrigram(q, afterScore, afterId, pageSize + 1), pageSize, TRIGRAM);
+        }
+        throw new InvalidCursorException("Invalid cursor key: " + key);
+    }
+
+    private CursorPage<BookResponse> toPage(List<BookSearchHit> hits, int pageSize, char mode) {
+        Map<Long, Book> books = bookRepository.findByIdIn(hits.stream().map(BookSearchHit::getId).toList())
+                .stream()
+                .collect(Collectors.toMap(Book::getId, Function.identity()));
+        List<BookSearchHit> present = hits.stream().filter(hit -> books.containsKey(hit.getId())).toList();
+        return KeysetCursor.page(present, pageSize, hit -> mode + hit.getScore().toPlainString(), BookSearchHit::getId,
+                hit -> bookMapper.toResponse(books.get(hit.getId())));
+    }
+
+    private static BigDecimal parseScore(String score) {
+        try {
+            return new BigDecimal(score);
+        } catch (NumberFormatException e) {
+            throw new InvalidCursorException("Invalid cursor key: " + score);
+        }
+    }
+}
@@ -1,205 +1,356 @@
 package com.sobolev.spring.bookshelf.service.impl;
 
+import com.sobolev.spring.bookshelf.config.CacheConfig;
+import com.sobolev.spring.bookshelf.dto.request.BookFilter;
+import com.sobolev.spring.bookshelf.dto.request.BookPatchRequest;
 import com.sobolev.spring.bookshelf.dto.request.BookRequest;
+import com.sobolev.spring.bookshelf.dto.request.BookSort;
+import com.sobolev.spring.bookshelf.dto.response.BookBatchResponse;
 import com.sobolev.spring.bookshelf.dto.response.BookResponse;
+import com.sobolev.spring.bookshelf.dto.response.CursorPage;
+import com.sobolev.spring.bookshelf.dto.response.GenreBooksResponse;
+import com.sobolev.spring.bookshelf.exception.PreconditionFailedException;
 import com.sobolev.spring.bookshelf.exception.ResourseNotFoundException;
 import com.sobolev.spring.bookshelf.model.Book;
 import com.sobolev.spring.bookshelf.model.BookStatus;
-import com.sobolev.spring.bookshelf.model.Genre;
 import com.sobolev.spring.bookshelf.repository.BookRepository;
-import com.sobolev.spring.bookshelf.repository.GenreRepository;
+import com.sobolev.spring.bookshelf.repository.specification.BookSpecifications;
+import com.sobolev.spring.bookshelf.service.BookRankingService;
 import com.sobolev.spring.bookshelf.service.BookService;
+import com.sobolev.spring.bookshelf.service.GenreService;
 import com.sobolev.spring.bookshelf.util.BookMapper;
+import com.sobolev.spring.bookshelf.util.KeysetCursor;
+import jakarta.persistence.EntityManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @Transactional
 @Slf4j
 public class BookServiceImpl implements BookService {
 
+    /**
+     * Matches the @BatchSize of Book.genres, so each export chunk loads its genres in one query.
+     */
+    private static final int EXPORT_CHUNK_SIZE = 100;
+
     private final BookRepository bookRepository;
     private final BookMapper bookMapper;
-    private final GenreRepository genreRepository;
+    private final GenreService genreService;
+    private final EntityManager entityManager;
+    private final BookRankingService bookRankingService;
+    private final Cache bookCache;
 
     @Autowired
     public BookServiceImpl(BookRepository bookRepository,
-                           BookMapper bookMapper, GenreRepository genreRepository) {
+                           BookMapper bookMapper, GenreService genreService, EntityManager entityManager,
+                           BookRankingService bookRankingService, CacheManager cacheManager) {
         this.bookRepository = bookRepository;
         this.bookMapper = bookMapper;
-        this.genreRepository = genreRepository;
+        this.genreService = genreService;
+        this.entityManager = entityManager;
+        this.bookRankingService = bookRankingService;
+        this.bookCache = cacheManager.getCache(CacheConfig.BOOK_BY_ID);
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<BookResponse> findAll() {
-        log.info("Start findAll in service");
-        return bookRepository.findAll()
-                .stream()
-                .map(bookMapper::toResponse)
-                .collect(Collectors.toList());
+    public CursorPage<BookResponse> findAll(String after, int limit) {
+        log.debug("Start findAll in service");
+        long afterId = KeysetCursor.decode(after).map(KeysetCursor::getId).orElse(0L);
+        int pageSize = KeysetCursor.clampLimit(limit);
+        return KeysetCursor.page(bookRepository.seekAll(afterId, Limit.of(pageSize + 1)),
+                pageSize, Book::getId, Book::getId, bookMapper::toResponse);
     }
 
     @Override
     @Transactional(readOnly = true)
+    @Cacheable(cacheNames = CacheConfig.BOOK_BY_ID, unless = "#result == null")
     public Optional<BookResponse> findById(Long id) {
-        log.info("Start findById in service");
+        log.debug("Start findById in service");
         return bookRepository.findById(id).map(bookMapper::toResponse);
     }
 
+    /**
+     * Serves what it can from the book cache that backs {@link #findById} and loads the rest,
+     * genres included, with a single IN-list query; loaded books are cached for later calls.
+     */
     @Override
-    public BookResponse create(BookRequest bookRequest) {
-        log.info("Start create in service");
-        Book book = bookMapper.toEntity(bookRequest);
-        log.info("successful mapping to book in create");
-        if (bookRequest.getGenreIds() != null && !bookRequest.getGenreIds().isEmpty()) {
-            long existingGenresCount = genreRepository.countByIdIn(bookRequest.getGenreIds());
-            log.info("existingGenresCount: {}", existingGenresCount);
-            if (existingGenresCount != bookRequest.getGenreIds().size()) {
-                throw new ResourseNotFoundException("One or more genres not found");
+    @Transactional(readOnly = true)
+    public BookBatchResponse findAllById(List<Long> ids) {
+        log.debug("Start findAllById in service for {} ids", ids.size());
+        Set<Long> requested = new LinkedHashSet<>(ids);
+        Map<Long, BookResponse> found = new HashMap<>();
+        List<Long> misses = new ArrayList<>();
+        for (Long id : requested) {
+            BookResponse cached = bookCache.get(id, BookResponse.class);
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                misses.add(id);
             }
+        }
+        if (!misses.isEmpty()) {
+            for (Book book : bookRepository.findByIdIn(misses)) {
+                BookResponse response = bookMapper.toResponse(book);
+                found.put(book.getId(), response);
+                bookCache.put(book.getId(), response);
+            }
+        }
+        log.debug("findAllById: {} from cache, {} loaded", requested.size() - misses.size(), misses.size());
 
-            Set<Genre> genreProxies = bookRequest.getGenreIds()
-                    .stream()
-                    .map(genreRepository::getReferenceById)
-                    .collect(Collectors.toSet());
-
-            log.info("genreProxies: {}", genreProxies);
+        BookBatchResponse batch = new BookBatchResponse();
+        for (Long id : requested) {
+            BookResponse book = found.get(id);
+            if (book != null) {
+                batch.getBooks().add(book);
+            } else {
+                batch.getMissingIds().add(id);
+            }
+        }
+        return batch;
+    }
 
-            book.getGenres().clear();
-            book.getGenres().addAll(genreProxies);
-            log.info("update genres for book");
+    /**
+     * Genre links are inserted straight into book_genre after the book row, not through Book.genres.
+     */
+    @Override
+    public BookResponse create(BookRequest bookRequest) {
+        log.debug("Start create in service");
+        Book book = bookMapper.toEntity(bookRequest);
+        log.debug("successful mapping to book in create");
+        Set<Long> genreIds = bookRequest.getGenreIds() != null ? bookRequest.getGenreIds() : Set.of();
+        Map<Long, String> genreNames = genreService.findNamesById();
+        if (!genreNames.keySet().containsAll(genreIds)) {
+            throw new ResourseNotFoundException("One or more genres not found");
         }
-        log.info("save book");
+        log.debug("save book");
         Book savedBook = bookRepository.save(book);
+        if (!genreIds.isEmpty()) {
+            bookRepository.insertGenres(savedBook.getId(), genreIds);
+            log.debug("insert genres for book");
+        }
 
-        return bookMapper.toResponse(savedBook);
+        return bookMapper.toResponse(savedBook, genreIds, genreNames);
     }
 
     @Override
-    public Optional<BookResponse> update(Long id, BookRequest bookRequest) {
-        log.info("Start update in service");
+    @CacheEvict(cacheNames = CacheConfig.BOOK_BY_ID, key = "#id")
+    public Optional<BookResponse> update(Long id, BookRequest bookRequest, Long expectedVersion) {
+        log.debug("Start update in service");
         return bookRepository.findById(id)
                 .map(existingBook -> {
+                    checkVersion(existingBook, expectedVersion);
                     bookMapper.updateEntityFromRequest(bookRequest, existingBook);
-                    log.info("successful mapping to book in update");
-                    if (bookRequest.getGenreIds() != null) {
-                        long existingGenresCount = genreRepository.countByIdIn(bookRequest.getGenreIds());
-
-                        if (existingGenresCount != bookRequest.getGenreIds().size()) {
-                            throw new ResourseNotFoundException("One or more genres not found");
-                        }
-
-                        Set<Genre> genreProxies = bookRequest.getGenreIds()
-                                .stream()
-                                .map(genreRepository::getReferenceById)
-                                .collect(Collectors.toSet());
-                        log.info("genreProxies update: {}", genreProxies);
-                        existingBook.getGenres().clear();
-                        existingBook.getGenres().addAll(genreProxies);
-                    }
-
-                    Book updatedBook = bookRepository.save(existingBook);
-                    return bookMapper.toResponse(updatedBook);
+                    log.debug("successful mapping to book in update");
+                    return saveWithGenres(existingBook, bookRequest.getGenreIds());
+                });
+    }
+
+    @Override
+    @CacheEvict(cacheNames = CacheConfig.BOOK_BY_ID, key = "#id")
+    public Optional<BookResponse> patch(Long id, BookPatchRequest patchRequest, Long expectedVersion) {
+        log.debug("Start patch in service");
+        return bookRepository.findById(id)
+                .map(existingBook -> {
+                    checkVersion(existingBook, expectedVersion);
+                    bookMapper.applyPatch(patchRequest, existingBook);
+                    log.debug("successful mapping to book in patch");
+                    return saveWithGenres(existingBook, patchRequest.getGenreIds());
                 });
     }
 
+    /**
+     * A matching version makes the entity flush conditional on it, as Hibernate updates with
+     * {@code WHERE version = ?}; a concurrent commit in between fails the flush instead of being overwritten.
+     */
+    private static void checkVersion(Book book, Long expectedVersion) {
+        if (expectedVersion != null && book.getVersion() != expectedVersion) {
+            throw new PreconditionFailedException("Book " + book.getId() + " is at version " + book.getVersion()
+                    + ", not " + expectedVersion);
+        }
+    }
+
+    /**
+     * Saves the book and moves its book_genre rows to the given genres, deleting and inserting only the pairs
+     * that changed; null genre ids leave the genres as they are. Changed genres bump the book's version too,
+     * since the join table writes bypass Hibernate's version handling.
+     */
+    private BookResponse saveWithGenres(Book book, Set<Long> genreIds) {
+        Map<Long, String> genreNames = genreService.findNamesById();
+        if (genreIds != null && !genreNames.keySet().containsAll(genreIds)) {
+            throw new ResourseNotFoundException("One or more genres not found");
+        }
+        Book savedBook = bookRepository.save(book);
+        Set<Long> currentIds = new HashSet<>(bookRepository.findGenreIdsByBookId(savedBook.getId()));
+        if (genreIds == null) {
+            return bookMapper.toResponse(savedBook, currentIds, genreNames);
+        }
+
+        Set<Long> removedIds = new HashSet<>(currentIds);
+        removedIds.removeAll(genreIds);
+        Set<Long> addedIds = new HashSet<>(genreIds);
+        addedIds.removeAll(currentIds);
+        if (!removedIds.isEmpty()) {
+            bookRepository.deleteGenres(savedBook.getId(), removedIds);
+        }
+        if (!addedIds.isEmpty()) {
+            bookRepository.insertGenres(savedBook.getId(), addedIds);
+        }
+        log.debug("genres of book {}: {} removed, {} added", savedBook.getId(), removedIds.size(), addedIds.size());
+        BookResponse response = bookMapper.toResponse(savedBook, genreIds, genreNames);
+        if (!removedIds.isEmpty() || !addedIds.isEmpty()) {
+            if (bookRepository.incrementVersion(savedBook.getId(), savedBook.getVersion()) == 0) {
+                throw new ObjectOptimisticLockingFailureException(Book.class, savedBook.getId());
+            }
+            response.setVersion(savedBook.getVersion() + 1);
+        }
+        return response;
+    }
+
     @Override
+    @CacheEvict(cacheNames = CacheConfig.BOOK_BY_ID, key = "#id")
     public boolean deleteById(Long id) {
         if (bookRepository.existsById(id)) {
-            log.info("delete book by id");
+            log.debug("delete book by id");
             bookRepository.deleteById(id);
             return true;
         }
-        log.info("not found book by id");
+        log.debug("not found book by id");
         return false;
     }
 
     @Override
     @Transactional(readOnly = true)
     public Page<BookResponse> findByAuthor(String author, Pageable pageable) {
-        log.info("Searching books by author: {} with pagination: {}", author, pageable);
+        log.debug("Searching books by author: {} with pagination: {}", author, pageable);
         return bookRepository.findByAuthor(author, pageable)
                 .map(bookMapper::toResponse);
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<BookResponse> findByStatus(BookStatus status) {
-        log.info("Start findByStatus in service");
-        return bookRepository.findByStatus(status)
-                .stream()
-                .map(bookMapper::toResponse)
-                .collect(Collectors.toList());
+    public CursorPage<BookResponse> findByStatus(BookStatus status, String after, int limit) {
+        log.debug("Start findByStatus in service");
+        long afterId = KeysetCursor.decode(after).map(KeysetCursor::getId).orElse(0L);
+        int pageSize = KeysetCursor.clampLimit(limit);
+        return KeysetCursor.page(bookRepository.seekByStatus(status, afterId, Limit.of(pageSize + 1)),
+                pageSize, Book::getId, Book::getId, bookMapper::toResponse);
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<BookResponse> findByPublicationYear(Integer publicationYear) {
-        log.info("Start findByPublicationYear in service");
-        return bookRepository.findByPublicationYear(publicationYear)
-                .stream()
-                .map(bookMapper::toResponse)
-                .collect(Collectors.toList());
+    public CursorPage<BookResponse> findByPublicationYear(Integer publicationYear, String after, int limit) {
+        log.debug("Start findByPublicationYear in service");
+        long afterId = KeysetCursor.decode(after).map(KeysetCursor::getId).orElse(0L);
+        int pageSize = KeysetCursor.clampLimit(limit);
+        return KeysetCursor.page(bookRepository.seekByPublicationYear(publicationYear, afterId, Limit.of(pageSize + 1)),
+                pageSize, Book::getId, Book::getId, bookMapper::toResponse);
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<BookResponse> findByPublicationYearBetween(Integer startYear, Integer endYear) {
-        log.info("Start findByPublicationYearBetween in service");
-        return bookRepository.findByPublicationYearBetween(startYear, endYear)
-                .stream()
-                .map(bookMapper::toResponse)
-                .collect(Collectors.toList());
+    public CursorPage<BookResponse> findByPublicationYearBetween(Integer startYear, Integer endYear, String after, int limit) {
+        log.debug("Start findByPublicationYearBetween in service");
+        Optional<KeysetCursor> cursor = KeysetCursor.decode(after);
+        int afterYear = cursor.map(KeysetCursor::keyAsInt).orElse(Integer.MIN_VALUE);
+        long afterId = cursor.map(KeysetCursor::getId).orElse(0L);
+        int pageSize = KeysetCursor.clampLimit(limit);
+        return KeysetCursor.page(
+                bookRepository.seekByPublicationYearBetween(startYear, endYear, afterYear, afterId, Limit.of(pageSize + 1)),
+                pageSize, Book::getPublicationYear, Book::getId, bookMapper::toResponse);
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<BookResponse> findBooksByGenreId(Long genreId) {
-        log.info("Start findByGenreId in service");
-        return bookRepository.findBooksByGenreId(genreId)
-                .stream()
-                .map(bookMapper::toResponse)
-                .collect(Collectors.toList());
+    public CursorPage<BookResponse> findBooksByGenreId(Long genreId, String after, int limit) {
+        log.debug("Start findByGenreId in service");
+        long afterId = KeysetCursor.decode(after).map(KeysetCursor::getId).orElse(0L);
+        int pageSize = KeysetCursor.clampLimit(limit);
+        List<Long> ids = bookRepository.seekIdsByGenreId(genreId, afterId, pageSize + 1);
+        List<Book> books = ids.isEmpty() ? new ArrayList<>() : new ArrayList<>(bookRepository.findByIdIn(ids));
+        books.sort(Comparator.comparing(Book::getId));
+        return KeysetCursor.page(books, pageSize, Book::getId, Book::getId, bookMapper::toResponse);
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<BookResponse> findBooksByGenreName(String name) {
-        log.info("Start findByGenreName in service");
-        return bookRepository.findBooksByGenreName(name)
-                .stream()
-                .map(bookMapper::toResponse)
-                .collect(Collectors.toList());
+    public Optional<GenreBooksResponse> findGenreWithBooks(Long genreId, String after, int limit) {
+        log.debug("Start findGenreWithBooks in service");
+        return genreService.findById(genreId)
+                .map(genre -> {
+                    GenreBooksResponse response = new GenreBooksResponse();
+                    response.setId(genre.getId());
+                    response.setName(genre.getName());
+                    response.setBookCount(genreService.countBooks(genreId));
+                    response.setBooks(findBooksByGenreId(genreId, after, limit));
+                    return response;
+                });
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<BookResponse> findPopularBooks() {
-        log.info("Start findByPopularBooks in service");
-        return bookRepository.findPopularBooks()
-                .stream()
-                .map(bookMapper::toResponse)
-                .collect(Collectors.toList());
+    public CursorPage<BookResponse> findBooksByGenreName(String name, String after, int limit) {
+        log.debug("Start findByGenreName in service");
+        long afterId = KeysetCursor.decode(after).map(KeysetCursor::getId).orElse(0L);
+        int pageSize = KeysetCursor.clampLimit(limit);
+        return KeysetCursor.page(bookRepository.seekByGenreName(name, afterId, Limit.of(pageSize + 1)),
+                pageSize, Book::getId, Book::getId, bookMapper::toResponse);
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<BookResponse> findBooksWithAverageRatingAbove(Double minRating) {
-        log.info("Start findByAverageRatingAbove in service");
-        return bookRepository.findBooksWithAverageRatingAbove(minRating)
-                .stream()
-                .map(bookMapper::toResponse)
-                .collect(Collectors.toList());
+    public CursorPage<BookResponse> findPopularBooks(String after, int limit) {
+        log.debug("Start findByPopularBooks in service");
+        return bookRankingService.findPopular(after, limit);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<BookResponse> findBooksWithAverageRatingAbove(Double minRating, String after, int limit) {
+        log.debug("Start findByAverageRatingAbove in service");
+        return bookRankingService.findTopRated(minRating, after, limit);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<BookResponse> search(BookFilter filter, String after, int limit) {
+        log.debug("Start search in service");
+        BookSort sort = filter.getSort() == null ? BookSort.ID : filter.getSort();
+        filter.setSort(sort);
+        Specification<Book> specification = BookSpecifications.matching(filter);
+        Optional<KeysetCursor> cursor = KeysetCursor.decode(after);
+        if (cursor.isPresent()) {
+            specification = specification.and(BookSpecifications.after(sort, cursor.get()));
+        }
+        int pageSize = KeysetCursor.clampLimit(limit);
+        List<Book> books = bookRepository.findBy(specification,
+                query -> query.sortBy(sort.toSort()).limit(pageSize + 1).all());
+        return KeysetCursor.page(books, pageSize, sort.getKey(), Book::getId, bookMapper::toResponse);
     }
 
     @Override
@@ -207,4 +358,26 @@ public class BookServiceImpl implements BookService {
     public long countByAuthor(String author) {
         return bookRepository.countByAuthor(author);
     }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long exportAll(Consumer<BookResponse> consumer) {
+        log.debug("Start exportAll in service");
+        long exported = 0;
+        List<Book> chunk = new ArrayList<>(EXPORT_CHUNK_SIZE);
+        try (Stream<Book> books = bookRepository.streamAllBy()) {
+            Iterator<Book> iterator = books.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == EXPORT_CHUNK_SIZE || !iterator.hasNext()) {
+                    chunk.stream().map(bookMapper::toResponse).forEach(consumer);
+                    exported += chunk.size();
+                    chunk.clear();
+                    entityManager.clear();
+                }
+            }
+        }
+        log.debug("End exportAll in service, exported {} books", exported);
+        return exported;
+    }
 }
@@ -1,6 +1,8 @@
 package com.sobolev.spring.bookshelf.service.impl;
 
+import com.sobolev.spring.bookshelf.config.CacheConfig;
 import com.sobolev.spring.bookshelf.dto.request.GenreRequest;
+import com.sobolev.spring.bookshelf.dto.response.GenreBookCountResponse;
 import com.sobolev.spring.bookshelf.dto.response.GenreResponse;
 import com.sobolev.spring.bookshelf.exception.NotFoundGenreException;
 import com.sobolev.spring.bookshelf.model.Genre;
@@ -9,10 +11,16 @@ import com.sobolev.spring.bookshelf.service.GenreService;
 import com.sobolev.spring.bookshelf.util.GenreMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -23,17 +31,20 @@ public class GenreServiceImpl implements GenreService {
 
     private final GenreRepository genreRepository;
     private final GenreMapper genreMapper;
+    private final CacheManager cacheManager;
 
     @Autowired
-    public GenreServiceImpl(GenreRepository genreRepository, GenreMapper genreMapper) {
+    public GenreServiceImpl(GenreRepository genreRepository, GenreMapper genreMapper, CacheManager cacheManager) {
         this.genreRepository = genreRepository;
         this.genreMapper = genreMapper;
+        this.cacheManager = cacheManager;
     }
 
     @Override
     @Transactional(readOnly = true)
+    @Cacheable(CacheConfig.GENRES)
     public List<GenreResponse> findAll() {
-        log.info("Start find all genres");
+        log.debug("Start find all genres");
         return genreRepository.findAll()
                 .stream()
                 .map(genreMapper::toResponse)
@@ -42,47 +53,102 @@ public class GenreServiceImpl implements GenreService {
 
     @Override
     @Transactional(readOnly = true)
+    @Cacheable(cacheNames = CacheConfig.GENRE_BY_ID, unless = "#result == null")
     public Optional<GenreResponse> findById(Long id) {
-        log.info("Start find genre by id");
+        log.debug("Start find genre by id");
         return genreRepository.findById(id).map(genreMapper::toResponse);
     }
 
     @Override
     @Transactional(readOnly = true)
+    @Cacheable(cacheNames = CacheConfig.GENRE_BY_NAME, unless = "#result == null")
     public Optional<GenreResponse> findByName(String name) {
-        log.info("Start find genre by name: {}", name);
+        log.debug("Start find genre by name: {}", name);
         return genreRepository.findByName(name).map(genreMapper::toResponse);
     }
 
     @Override
+    @Transactional(readOnly = true)
+    @Cacheable(CacheConfig.GENRE_NAMES)
+    public Map<Long, String> findNamesById() {
+        log.debug("Start find genre names by id");
+        return genreRepository.findAll()
+                .stream()
+                .collect(Collectors.toUnmodifiableMap(Genre::getId, Genre::getName));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long countBooks(Long id) {
+        log.debug("Start count books of genre");
+        return genreRepository.countBooksByGenreId(id);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<GenreBookCountResponse> findBookCounts() {
+        log.debug("Start find book counts of genres");
+        return genreRepository.findBookCounts()
+                .stream()
+                .map(genreMapper::toResponse)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.GENRES, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.GENRE_NAMES, allEntries = true)
+    })
     public GenreResponse create(GenreRequest genreRequest) {
-        log.info("Start create genre");
+        log.debug("Start create genre");
         Genre genre = genreMapper.toEntity(genreRequest);
         Genre savedGenre = genreRepository.save(genre);
-        log.info("End create genre");
+        log.debug("End create genre");
         return genreMapper.toResponse(savedGenre);
     }
 
     @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.GENRES, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.GENRE_NAMES, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.GENRE_BY_ID, key = "#id"),
+            @CacheEvict(cacheNames = CacheConfig.BOOK_BY_ID, allEntries = true)
+    })
     public Optional<GenreResponse> update(Long id, GenreRequest genreRequest) {
-        log.info("Start update genre");
+        log.debug("Start update genre");
         return genreRepository.findById(id)
                 .map(existingGenre -> {
+                    evictByName(existingGenre.getName());
                     genreMapper.updateEntityFromRequest(genreRequest, existingGenre);
                     Genre updatedGenre = genreRepository.save(existingGenre);
-                    log.info("End update genre");
+                    log.debug("End update genre");
                     return genreMapper.toResponse(updatedGenre);
                 });
     }
 
     @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.GENRES, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.GENRE_NAMES, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.GENRE_BY_ID, key = "#id"),
+            @CacheEvict(cacheNames = CacheConfig.BOOK_BY_ID, allEntries = true)
+    })
     public boolean deleteById(Long id) {
-        if (genreRepository.existsById(id)) {
-            log.info("delete genre by id");
-            genreRepository.deleteById(id);
+        Optional<Genre> genre = genreRepository.findById(id);
+        if (genre.isPresent()) {
+            log.debug("delete genre by id");
+            evictByName(genre.get().getName());
+            genreRepository.delete(genre.get());
             return true;
         }
-        log.info("not found genre by id");
+        log.debug("not found genre by id");
         return false;
     }
+
+    private void evictByName(String name) {
+        Cache cache = cacheManager.getCache(CacheConfig.GENRE_BY_NAME);
+        if (cache != null) {
+            cache.evict(name);
+        }
+    }
 }
@@ -0,0 +1,327 @@
+package com.sobolev.spring.bookshelf.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.sobolev.spring.bookshelf.dto.request.BookImportRequest;
+import com.sobolev.spring.bookshelf.dto.request.ImportFormat;
+import com.sobolev.spring.bookshelf.dto.request.ReviewRequest;
+import com.sobolev.spring.bookshelf.dto.response.ImportError;
+import com.sobolev.spring.bookshelf.dto.response.ImportReport;
+import com.sobolev.spring.bookshelf.model.Book;
+import com.sobolev.spring.bookshelf.model.BookStatus;
+import com.sobolev.spring.bookshelf.model.Genre;
+import com.sobolev.spring.bookshelf.model.Review;
+import com.sobolev.spring.bookshelf.repository.BookRepository;
+import com.sobolev.spring.bookshelf.service.GenreService;
+import com.sobolev.spring.bookshelf.service.ImportService;
+import com.sobolev.spring.bookshelf.service.RatingAggregateService;
+import com.sobolev.spring.bookshelf.util.BookMapper;
+import com.sobolev.spring.bookshelf.util.CsvParser;
+import com.sobolev.spring.bookshelf.util.ReviewMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Reads import bodies line by line and writes them in batches of {@code bookshelf.import.batch-size},
+ * each batch in its own transaction. A failed batch is retried row by row, so one bad row
+ * only costs its own line in the report.
+ */
+@Service
+@Slf4j
+public class ImportServiceImpl implements ImportService {
+
+    private static final int MAX_REPORTED_ERRORS = 1000;
+    private static final String CSV_GENRE_SEPARATOR = "\\|";
+
+    private final BookRepository bookRepository;
+    private final GenreService genreService;
+    private final RatingAggregateService ratingAggregateService;
+    private final BookMapper bookMapper;
+    private final ReviewMapper reviewMapper;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final int batchSize;
+
+    @Autowired
+    public ImportServiceImpl(BookRepository bookRepository,
+                             GenreService genreService,
+                             RatingAggregateService ratingAggregateService,
+                             BookMapper bookMapper,
+                             ReviewMapper reviewMapper,
+                             EntityManager entityManager,
+                             TransactionTemplate transactionTemplate,
+                             ObjectMapper objectMapper,
+                             Validator validator,
+                             @Value("${bookshelf.import.batch-size:500}") int batchSize) {
+        this.bookRepository = bookRepository;
+        this.genreService = genreService;
+        this.ratingAggregateService = ratingAggregateService;
+        this.bookMapper = bookMapper;
+        this.reviewMapper = reviewMapper;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public ImportReport importBooks(InputStream inputStream, ImportFormat format) throws IOException {
+        log.debug("Start import books from {}", format);
+        Map<String, Long> genreIdsByName = genreService.findNamesById()
+                .entrySet()
+                .stream()
+                .collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey));
+
+        ImportReport report = new ImportReport();
+        readRows(inputStream, format, BookImportRequest.class, this::toBookImportRequest, report,
+                rows -> writeBooks(rows, genreIdsByName, report));
+        log.info("End import books: imported {}, failed {}", report.getImported(), report.getFailed());
+        return report;
+    }
+
+    @Override
+    public ImportReport importReviews(InputStream inputStream, ImportFormat format) throws IOException {
+        log.debug("Start import reviews from {}", format);
+        ImportReport report = new ImportReport();
+        readRows(inputStream, format, ReviewRequest.class, this::toReviewRequest, report,
+                rows -> writeReviews(rows, report));
+        log.info("End import reviews: imported {}, failed {}", report.getImported(), report.getFailed());
+        return report;
+    }
+
+    private <T> void readRows(InputStream inputStream, ImportFormat format, Class<T> type,
+                              Function<Map<String, String>, T> csvRowMapper, ImportReport report,
+                              Consumer<List<ImportRow<T>>> batchWriter) throws IOException {
+        ObjectReader jsonReader = objectMapper.readerFor(type);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        List<String> header = null;
+        List<ImportRow<T>> batch = new ArrayList<>(batchSize);
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            if (format == ImportFormat.CSV && header == null) {
+                header = CsvParser.parseLine(line).stream().map(String::trim).collect(Collectors.toList());
+                continue;
+            }
+
+            T value;
+            try {
+                value = format == ImportFormat.CSV
+                        ? csvRowMapper.apply(toCsvRecord(header, CsvParser.parseLine(line)))
+                        : jsonReader.<T>readValue(line);
+            } catch (IOException | IllegalArgumentException e) {
+                addError(report, lineNumber, "Malformed row: " + e.getMessage());
+                continue;
+            }
+
+            Set<ConstraintViolation<T>> violations = validator.validate(value);
+            if (!violations.isEmpty()) {
+                addError(report, lineNumber, violations.stream()
+                        .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining("; ")));
+                continue;
+            }
+
+            batch.add(new ImportRow<>(lineNumber, value));
+            if (batch.size() == batchSize) {
+                batchWriter.accept(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batchWriter.accept(batch);
+        }
+    }
+
+    private void writeBooks(List<ImportRow<BookImportRequest>> rows, Map<String, Long> genreIdsByName,
+                            ImportReport report) {
+        List<ImportRow<BookImportRequest>> resolved = new ArrayList<>(rows.size());
+        for (ImportRow<BookImportRequest> row : rows) {
+            Set<String> genres = row.getValue().getGenres() != null ? row.getValue().getGenres() : Set.of();
+            List<String> unknownGenres = genres.stream()
+                    .filter(name -> !genreIdsByName.containsKey(name))
+                    .collect(Collectors.toList());
+            if (!unknownGenres.isEmpty()) {
+                addError(report, row.getLine(), "Genres not found: " + unknownGenres);
+                continue;
+            }
+            resolved.add(row);
+        }
+
+        writeBatch(resolved, report, batch -> batch.forEach(row -> {
+            BookImportRequest request = row.getValue();
+            Book book = bookMapper.toEntity(request);
+            if (request.getGenres() != null) {
+                request.getGenres().forEach(name ->
+                        book.getGenres().add(entityManager.getReference(Genre.class, genreIdsByName.get(name))));
+            }
+            entityManager.persist(book);
+        }));
+    }
+
+    private void writeReviews(List<ImportRow<ReviewRequest>> rows, ImportReport report) {
+        Set<Long> existingBookIds = bookRepository.findExistingIds(rows.stream()
+                .map(row -> row.getValue().getBookId())
+                .collect(Collectors.toSet()));
+
+        List<ImportRow<ReviewRequest>> resolved = new ArrayList<>(rows.size());
+        for (ImportRow<ReviewRequest> row : rows) {
+            if (!existingBookIds.contains(row.getValue().getBookId())) {
+                addError(report, row.getLine(), "Book not found with id " + row.getValue().getBookId());
+                continue;
+            }
+            resolved.add(row);
+        }
+
+        writeBatch(resolved, report, batch -> {
+            // sorted by book id so concurrent imports lock book rows in the same order
+            Map<Long, long[]> deltas = new TreeMap<>();
+            for (ImportRow<ReviewRequest> row : batch) {
+                ReviewRequest request = row.getValue();
+                Review review = reviewMapper.toEntity(request);
+                review.setBook(entityManager.getReference(Book.class, request.getBookId()));
+                entityManager.persist(review);
+
+                long[] delta = deltas.computeIfAbsent(request.getBookId(), id -> new long[2]);
+                delta[0]++;
+                delta[1] += request.getRating();
+            }
+            deltas.forEach((bookId, delta) -> ratingAggregateService.reviewsAdded(bookId, (int) delta[0], delta[1]));
+        });
+    }
+
+    private <T> void writeBatch(List<ImportRow<T>> rows, ImportReport report, Consumer<List<ImportRow<T>>> writer) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                writer.accept(rows);
+                entityManager.flush();
+            });
+            report.setImported(report.getImported() + rows.size());
+        } catch (PersistenceException | DataAccessException | TransactionException e) {
+            if (rows.size() == 1) {
+                addError(report, rows.get(0).getLine(), NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+                return;
+            }
+            log.warn("Import batch failed, retrying {} rows one by one", rows.size());
+            rows.forEach(row -> writeBatch(List.of(row), report, writer));
+        }
+    }
+
+    private BookImportRequest toBookImportRequest(Map<String, String> record) {
+        BookImportRequest request = new BookImportRequest();
+        request.setTitle(record.get("title"));
+        request.setAuthor(record.get("author"));
+        request.setIsbn(emptyToNull(record.get("isbn")));
+
+        String publicationYear = emptyToNull(record.get("publicationYear"));
+        if (publicationYear != null) {
+            request.setPublicationYear(Integer.valueOf(publicationYear));
+        }
+        String status = emptyToNull(record.get("status"));
+        if (status != null) {
+            request.setStatus(BookStatus.valueOf(status));
+        }
+        String genres = emptyToNull(record.get("genres"));
+        if (genres != null) {
+            request.setGenres(Arrays.stream(genres.split(CSV_GENRE_SEPARATOR))
+                    .map(String::trim)
+                    .filter(name -> !name.isEmpty())
+                    .collect(Collectors.toSet()));
+        }
+        return request;
+    }
+
+    private ReviewRequest toReviewRequest(Map<String, String> record) {
+        ReviewRequest request = new ReviewRequest();
+        String bookId = emptyToNull(record.get("bookId"));
+        if (bookId != null) {
+            request.setBookId(Long.valueOf(bookId));
+        }
+        String rating = emptyToNull(record.get("rating"));
+        if (rating != null) {
+            request.setRating(Integer.valueOf(rating));
+        }
+        request.setContent(record.get("content"));
+        return request;
+    }
+
+    private Map<String, String> toCsvRecord(List<String> header, List<String> fields) {
+        if (fields.size() != header.size()) {
+            throw new IllegalArgumentException("expected " + header.size() + " fields but found " + fields.size());
+        }
+        Map<String, String> record = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            record.put(header.get(i), fields.get(i));
+        }
+        return record;
+    }
+
+    private String emptyToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    private void addError(ImportReport report, long line, String message) {
+        report.setFailed(report.getFailed() + 1);
+        if (report.getErrors().size() < MAX_REPORTED_ERRORS) {
+            ImportError error = new ImportError();
+            error.setLine(line);
+            error.setMessage(message);
+            report.getErrors().add(error);
+        }
+    }
+
+    private static final class ImportRow<T> {
+        private final long line;
+        private final T value;
+
+        private ImportRow(long line, T value) {
+            this.line = line;
+            this.value = value;
+        }
+
+        long getLine() {
+            return line;
+        }
+
+        T getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.sobolev.spring.bookshelf.service.impl;
+
+import com.sobolev.spring.bookshelf.config.CacheConfig;
+import com.sobolev.spring.bookshelf.event.RatingAggregateChangedEvent;
+import com.sobolev.spring.bookshelf.rating.PendingRatings;
+import com.sobolev.spring.bookshelf.rating.RatingDelta;
+import com.sobolev.spring.bookshelf.repository.BookRepository;
+import com.sobolev.spring.bookshelf.repository.projection.BookRatingView;
+import com.sobolev.spring.bookshelf.service.RatingAggregateService;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Review writes only record their rating delta in {@link PendingRatings} once they commit; {@link #flush}
+ * moves batches of deltas into the book table, keeping them in flight until its UPDATE commits. The clean
+ * shutdown flag tells a restart whether deltas may have been lost with the previous process, in which case
+ * the aggregates are rebuilt from the reviews.
+ */
+@Service
+@Transactional
+@Slf4j
+public class RatingAggregateServiceImpl implements RatingAggregateService {
+
+    private final BookRepository bookRepository;
+    private final CacheManager cacheManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PendingRatings pendingRatings;
+    private final EntityManager entityManager;
+
+    @Autowired
+    public RatingAggregateServiceImpl(BookRepository bookRepository, CacheManager cacheManager,
+                                      ApplicationEventPublisher eventPublisher, PendingRatings pendingRatings,
+                                      EntityManager entityManager) {
+        this.bookRepository = bookRepository;
+        this.cacheManager = cacheManager;
+        this.eventPublisher = eventPublisher;
+        this.pendingRatings = pendingRatings;
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public void reviewAdded(Long bookId, int rating) {
+        applyDelta(bookId, 1, rating);
+    }
+
+    @Override
+    public void reviewsAdded(Long bookId, int count, long ratingSum) {
+        applyDelta(bookId, count, ratingSum);
+    }
+
+    @Override
+    public void reviewRemoved(Long bookId, int rating) {
+        applyDelta(bookId, -1, -rating);
+    }
+
+    @Override
+    public void reviewChanged(Long oldBookId, int oldRating, Long newBookId, int newRating) {
+        if (oldBookId.equals(newBookId)) {
+            if (oldRating != newRating) {
+                applyDelta(newBookId, 0, newRating - oldRating);
+            }
+            return;
+        }
+        reviewRemoved(oldBookId, oldRating);
+        reviewAdded(newBookId, newRating);
+    }
+
+    @Override
+    public void flush(List<RatingDelta> deltas) {
+        if (deltas.isEmpty()) return;
+
+        Long[] bookIds = new Long[deltas.size()];
+        Long[] countDeltas = new Long[deltas.size()];
+        Long[] ratingDeltas = new Long[deltas.size()];
+        for (int i = 0; i < deltas.size(); i++) {
+            bookIds[i] = deltas.get(i).getBookId();
+            countDeltas[i] = deltas.get(i).getCount();
+            ratingDeltas[i] = deltas.get(i).getSum();
+        }
+        // In flight before the UPDATE, so no read adds a delta that the row it read may already contain.
+        pendingRatings.beginFlush(deltas);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                pendingRatings.endFlush(deltas, status == STATUS_COMMITTED);
+                for (Long bookId : bookIds) {
+                    bookCache().evictIfPresent(bookId);
+                }
+            }
+        });
+        // The new aggregates come back with the UPDATE, so listeners need not read the rows again.
+        for (BookRatingView rating : bookRepository.applyRatingDeltas(bookIds, countDeltas, ratingDeltas)) {
+            eventPublisher.publishEvent(new RatingAggregateChangedEvent(rating));
+        }
+    }
+
+    /**
+     * Clears the clean shutdown flag and returns its previous value.
+     */
+    @Override
+    public boolean markRunning() {
+        Boolean clean = (Boolean) entityManager
+                .createNativeQuery("SELECT clean_shutdown FROM rating_aggregate_state WHERE id = 1 FOR UPDATE")
+                .getSingleResult();
+        entityManager.createNativeQuery("UPDATE rating_aggregate_state SET clean_shutdown = FALSE WHERE id = 1")
+                .executeUpdate();
+        return clean;
+    }
+
+    @Override
+    public void markStopped() {
+        entityManager.createNativeQuery("UPDATE rating_aggregate_state SET clean_shutdown = TRUE WHERE id = 1")
+                .executeUpdate();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<Long> findMaxBookId() {
+        return bookRepository.findMaxId();
+    }
+
+    /**
+     * Recomputes aggregates for books with ids in [fromId, toId] from the review table.
+     * Runs under REPEATABLE READ so a flush committed after the snapshot makes the chunk fail
+     * instead of being overwritten by the recomputed snapshot. Books with an entry in {@link PendingRatings} are
+     * skipped: their reviews may be in the snapshot while their deltas are still to be flushed, which would
+     * count them twice. The skip set is read after the snapshot is taken, and writers reserve their book before
+     * they commit, so it covers every write the snapshot sees whose delta may not be stored yet.
+     */
+    @Override
+    @Transactional(isolation = Isolation.REPEATABLE_READ)
+    public int rebuildRange(Long fromId, Long toId) {
+        // The first statement of a REPEATABLE READ transaction takes its snapshot.
+        entityManager.createNativeQuery("SELECT 1").getSingleResult();
+        List<Long> skipIds = pendingRatings.bookIdsBetween(fromId, toId);
+        int repaired = skipIds.isEmpty()
+                ? bookRepository.rebuildRatingAggregates(fromId, toId)
+                : bookRepository.rebuildRatingAggregatesExcept(fromId, toId, skipIds);
+        if (repaired > 0) {
+            log.warn("Repaired rating aggregates of {} books in range [{}, {}]", repaired, fromId, toId);
+            bookCache().clear();
+        }
+        return repaired;
+    }
+
+    /**
+     * A rolled back write must leave no delta behind, so it is only recorded once the caller commits.
+     * Until the caller's transaction completes the book stays reserved, see {@link #rebuildRange}.
+     * The cached response is evicted with the delta, so the next read merges it.
+     */
+    private void applyDelta(Long bookId, int countDelta, long ratingDelta) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            pendingRatings.add(bookId, countDelta, ratingDelta);
+            bookCache().evictIfPresent(bookId);
+            return;
+        }
+        pendingRatings.reserve(bookId);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                pendingRatings.add(bookId, countDelta, ratingDelta);
+                bookCache().evictIfPresent(bookId);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                pendingRatings.release(bookId);
+            }
+        });
+    }
+
+    private Cache bookCache() {
+        return cacheManager.getCache(CacheConfig.BOOK_BY_ID);
+    }
+}
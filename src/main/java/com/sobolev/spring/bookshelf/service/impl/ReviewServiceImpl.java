@@ -1,22 +1,35 @@
 package com.sobolev.spring.bookshelf.service.impl;
 
 import com.sobolev.spring.bookshelf.dto.request.ReviewRequest;
+import com.sobolev.spring.bookshelf.dto.request.ReviewSort;
 import com.sobolev.spring.bookshelf.dto.response.BookResponse;
+import com.sobolev.spring.bookshelf.dto.response.CursorPage;
 import com.sobolev.spring.bookshelf.dto.response.ReviewResponse;
-import com.sobolev.spring.bookshelf.model.Book;
+import com.sobolev.spring.bookshelf.exception.PreconditionFailedException;
+import com.sobolev.spring.bookshelf.ingest.AcceptedReview;
 import com.sobolev.spring.bookshelf.model.Review;
+import com.sobolev.spring.bookshelf.repository.BookRepository;
 import com.sobolev.spring.bookshelf.repository.ReviewRepository;
-import com.sobolev.spring.bookshelf.service.BookService;
+import com.sobolev.spring.bookshelf.repository.projection.BookRatingView;
+import com.sobolev.spring.bookshelf.repository.projection.ReviewView;
+import com.sobolev.spring.bookshelf.service.RatingAggregateService;
 import com.sobolev.spring.bookshelf.service.ReviewService;
 import com.sobolev.spring.bookshelf.util.BookMapper;
+import com.sobolev.spring.bookshelf.util.KeysetCursor;
 import com.sobolev.spring.bookshelf.util.ReviewMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -25,102 +38,206 @@ import java.util.stream.Collectors;
 public class ReviewServiceImpl implements ReviewService {
 
     private final ReviewRepository reviewRepository;
-    private final BookService bookService;
+    private final BookRepository bookRepository;
+    private final RatingAggregateService ratingAggregateService;
     private final ReviewMapper reviewMapper;
     private final BookMapper bookMapper;
 
     @Autowired
     public ReviewServiceImpl(ReviewRepository reviewRepository,
                              ReviewMapper reviewMapper,
-                             BookService bookService, BookMapper bookMapper) {
+                             BookRepository bookRepository,
+                             RatingAggregateService ratingAggregateService,
+                             BookMapper bookMapper) {
         this.reviewRepository = reviewRepository;
         this.reviewMapper = reviewMapper;
-        this.bookService = bookService;
+        this.bookRepository = bookRepository;
+        this.ratingAggregateService = ratingAggregateService;
         this.bookMapper = bookMapper;
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<ReviewResponse> findAll() {
-        log.info("Start Finding all reviews");
-        return reviewRepository.findAll()
-                .stream()
-                .map(reviewMapper::toResponse)
-                .collect(Collectors.toList());
+    public CursorPage<ReviewResponse> findAll(String after, int limit, boolean expandBook) {
+        log.debug("Start Finding all reviews");
+        long afterId = KeysetCursor.decode(after).map(KeysetCursor::getId).orElse(0L);
+        int pageSize = KeysetCursor.clampLimit(limit);
+        CursorPage<ReviewResponse> page = KeysetCursor.page(reviewRepository.seekViews(afterId, Limit.of(pageSize + 1)),
+                pageSize, ReviewView::getId, ReviewView::getId, reviewMapper::toResponse);
+        if (expandBook) {
+            expandBooks(page.getContent());
+        }
+        return page;
     }
 
     @Override
     @Transactional(readOnly = true)
-    public Optional<ReviewResponse> findById(Long id) {
-        log.info("Start Finding review by id: {}", id);
-        return reviewRepository.findById(id).map(reviewMapper::toResponse);
+    public Optional<ReviewResponse> findById(Long id, boolean expandBook) {
+        log.debug("Start Finding review by id: {}", id);
+        Optional<ReviewResponse> review = reviewRepository.findViewById(id).map(reviewMapper::toResponse);
+        if (expandBook) {
+            review.ifPresent(response -> expandBooks(List.of(response)));
+        }
+        return review;
     }
 
+    /**
+     * One query on review joined to its book by primary key; no review or book entities are loaded.
+     */
     @Override
     @Transactional(readOnly = true)
-    public List<ReviewResponse> findByBookId(Long bookId) {
-        log.info("Start Finding reviews by book id: {}", bookId);
-        return reviewRepository.findByBookId(bookId)
+    public List<ReviewResponse> findByBookId(Long bookId, boolean expandBook) {
+        log.debug("Start Finding reviews by book id: {}", bookId);
+        List<ReviewResponse> reviews = reviewRepository.findViewsByBookId(bookId)
                 .stream()
                 .map(reviewMapper::toResponse)
                 .collect(Collectors.toList());
+        if (expandBook) {
+            expandBooks(reviews);
+        }
+        return reviews;
+    }
+
+    /**
+     * One page of a book's reviews in the given order, read by a seek on the matching
+     * (book_id, key, id) index, so later pages cost the same as the first.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<ReviewResponse> findFeed(Long bookId, ReviewSort sort, String after, int limit, boolean expandBook) {
+        log.debug("Start Finding review feed of book {} by {}", bookId, sort);
+        Optional<KeysetCursor> cursor = KeysetCursor.decode(after);
+        int pageSize = KeysetCursor.clampLimit(limit);
+        Limit rows = Limit.of(pageSize + 1);
+        List<ReviewView> reviews = switch (sort) {
+            case NEWEST -> cursor
+                    .map(c -> reviewRepository.seekNewestByBookId(bookId, c.keyAsDateTime(), c.getId(), rows))
+                    .orElseGet(() -> reviewRepository.findNewestByBookId(bookId, rows));
+            case RATING -> cursor
+                    .map(c -> reviewRepository.seekBestRatedByBookId(bookId, c.keyAsInt(), c.getId(), rows))
+                    .orElseGet(() -> reviewRepository.findBestRatedByBookId(bookId, rows));
+        };
+        CursorPage<ReviewResponse> page = KeysetCursor.page(reviews, pageSize, sort.getKey(), ReviewView::getId,
+                reviewMapper::toResponse);
+        if (expandBook) {
+            expandBooks(page.getContent());
+        }
+        return page;
     }
 
     @Override
     public ReviewResponse create(ReviewRequest reviewRequest) {
-        log.info("Start Creating review: {}", reviewRequest);
-        Optional<BookResponse> bookResponse = bookService.findById(reviewRequest.getBookId());
-        if (bookResponse.isEmpty()) {
+        log.debug("Start Creating review: {}", reviewRequest);
+        Long bookId = reviewRequest.getBookId();
+        if (!bookRepository.existsById(bookId)) {
             log.error("Book not found");
-            throw new RuntimeException("Book not found with id " + reviewRequest.getBookId());
+            throw new RuntimeException("Book not found with id " + bookId);
         }
 
         Review review = reviewMapper.toEntity(reviewRequest);
-
-        Book book = new Book();
-        book.setId(bookResponse.get().getId());
-        review.setBook(book);
+        review.setBook(bookRepository.getReferenceById(bookId));
 
         Review savedReview = reviewRepository.save(review);
-        log.info("End Creating review");
+        ratingAggregateService.reviewAdded(bookId, savedReview.getRating());
+        log.debug("End Creating review");
 
         return reviewMapper.toResponse(savedReview);
     }
 
+    /**
+     * Writes queued reviews with one multi-row insert and returns how many were written;
+     * a review whose book was deleted after it was accepted is skipped, as the delete would have removed it.
+     * The log's checkpoint advances to the last review in the same transaction, so a replay never writes twice.
+     */
+    @Override
+    public int createAll(UUID logId, List<AcceptedReview> reviews) {
+        log.debug("Start Creating {} queued reviews", reviews.size());
+        Long[] bookIds = new Long[reviews.size()];
+        Integer[] ratings = new Integer[reviews.size()];
+        String[] contents = new String[reviews.size()];
+        LocalDateTime[] createdAts = new LocalDateTime[reviews.size()];
+        for (int i = 0; i < reviews.size(); i++) {
+            ReviewRequest request = reviews.get(i).getRequest();
+            bookIds[i] = request.getBookId();
+            ratings[i] = request.getRating();
+            contents[i] = request.getContent();
+            createdAts[i] = reviews.get(i).getCreatedAt();
+        }
+
+        int written = 0;
+        for (BookRatingView delta : reviewRepository.insertAll(bookIds, ratings, contents, createdAts)) {
+            ratingAggregateService.reviewsAdded(delta.getId(), delta.getReviewCount(), delta.getRatingSum());
+            written += delta.getReviewCount();
+        }
+        reviewRepository.advanceIngestCheckpoint(logId, reviews.get(reviews.size() - 1).getSequence());
+        log.debug("End Creating queued reviews, wrote {}", written);
+        return written;
+    }
+
+    /**
+     * Sequence number up to which the reviews of the ingest log are written, 0 for a log never written from.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public long findWrittenSequence(UUID logId) {
+        return reviewRepository.findIngestCheckpoint(logId).orElse(0L);
+    }
+
     @Override
-    public Optional<ReviewResponse> update(Long id, ReviewRequest reviewRequest) {
-        log.info("Start Updating review: {}", reviewRequest);
+    public Optional<ReviewResponse> update(Long id, ReviewRequest reviewRequest, Long expectedVersion) {
+        log.debug("Start Updating review: {}", reviewRequest);
         return reviewRepository.findById(id)
                 .map(existingReview -> {
+                    if (expectedVersion != null && existingReview.getVersion() != expectedVersion) {
+                        throw new PreconditionFailedException("Review " + id + " is at version "
+                                + existingReview.getVersion() + ", not " + expectedVersion);
+                    }
+                    Long oldBookId = existingReview.getBook().getId();
+                    int oldRating = existingReview.getRating();
                     reviewMapper.updateEntityFromRequest(reviewRequest, existingReview);
 
-                    if (!existingReview.getBook().getId().equals(reviewRequest.getBookId())) {
-                        Optional<BookResponse> bookResponse = bookService.findById(reviewRequest.getBookId());
-
-                        if (bookResponse.isEmpty()) {
+                    if (!oldBookId.equals(reviewRequest.getBookId())) {
+                        if (!bookRepository.existsById(reviewRequest.getBookId())) {
                             log.error("Book not found");
                             throw new RuntimeException("Book not found with id " + reviewRequest.getBookId());
                         }
 
-                        Book book = new Book();
-                        book.setId(reviewRequest.getBookId());
-                        existingReview.setBook(book);
+                        existingReview.setBook(bookRepository.getReferenceById(reviewRequest.getBookId()));
                     }
 
                     Review updatedReview = reviewRepository.save(existingReview);
-                    log.info("End Updating review");
+                    ratingAggregateService.reviewChanged(oldBookId, oldRating,
+                            reviewRequest.getBookId(), updatedReview.getRating());
+                    log.debug("End Updating review");
                     return reviewMapper.toResponse(updatedReview);
                 });
     }
 
     @Override
     public boolean deleteById(Long id) {
-        if (reviewRepository.existsById(id)) {
-            log.info("Start Deleting review by id: {}", id);
-            reviewRepository.deleteById(id);
+        Optional<Review> review = reviewRepository.findById(id);
+        if (review.isPresent()) {
+            log.debug("Start Deleting review by id: {}", id);
+            reviewRepository.delete(review.get());
+            ratingAggregateService.reviewRemoved(review.get().getBook().getId(), review.get().getRating());
             return true;
         }
-        log.info("not found review by id: {}", id);
+        log.debug("not found review by id: {}", id);
         return false;
     }
+
+    /**
+     * Embeds the full book of each review, loading every distinct book once.
+     */
+    private void expandBooks(List<ReviewResponse> reviews) {
+        Set<Long> bookIds = reviews.stream().map(ReviewResponse::getBookId).collect(Collectors.toSet());
+        if (bookIds.isEmpty()) {
+            return;
+        }
+        Map<Long, BookResponse> books = bookRepository.findByIdIn(bookIds)
+                .stream()
+                .map(bookMapper::toResponse)
+                .collect(Collectors.toMap(BookResponse::getId, Function.identity()));
+        reviews.forEach(review -> review.setBook(books.get(review.getBookId())));
+    }
 }
@@ -1,22 +1,31 @@
 package com.sobolev.spring.bookshelf.util;
 
+import com.sobolev.spring.bookshelf.dto.request.BookImportRequest;
+import com.sobolev.spring.bookshelf.dto.request.BookPatchRequest;
 import com.sobolev.spring.bookshelf.dto.request.BookRequest;
 import com.sobolev.spring.bookshelf.dto.response.BookResponse;
 import com.sobolev.spring.bookshelf.dto.response.GenreResponse;
 import com.sobolev.spring.bookshelf.model.Book;
+import com.sobolev.spring.bookshelf.model.Genre;
+import com.sobolev.spring.bookshelf.rating.PendingRatings;
+import com.sobolev.spring.bookshelf.rating.RatingDelta;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Component
 public class BookMapper {
 
     private final GenreMapper genreMapper;
+    private final PendingRatings pendingRatings;
 
     @Autowired
-    public BookMapper(GenreMapper genreMapper) {
+    public BookMapper(GenreMapper genreMapper, PendingRatings pendingRatings) {
         this.genreMapper = genreMapper;
+        this.pendingRatings = pendingRatings;
     }
 
     public Book toEntity(BookRequest bookRequest) {
@@ -32,17 +41,23 @@ public class BookMapper {
         return book;
     }
 
+    public Book toEntity(BookImportRequest importRequest) {
+        if (importRequest == null) return null;
+
+        Book book = new Book();
+        book.setTitle(importRequest.getTitle());
+        book.setAuthor(importRequest.getAuthor());
+        book.setIsbn(importRequest.getIsbn());
+        book.setPublicationYear(importRequest.getPublicationYear());
+        book.setStatus(importRequest.getStatus());
+
+        return book;
+    }
+
     public BookResponse toResponse(Book book) {
         if (book == null) return null;
 
-        BookResponse response = new BookResponse();
-        response.setId(book.getId());
-        response.setTitle(book.getTitle());
-        response.setAuthor(book.getAuthor());
-        response.setIsbn(book.getIsbn());
-        response.setStatus(book.getStatus());
-        response.setPublicationYear(book.getPublicationYear());
-
+        BookResponse response = toResponseWithoutGenres(book);
         if (book.getGenres() != null) {
             response.setGenres(
                     book.getGenres()
@@ -52,21 +67,52 @@ public class BookMapper {
             );
         }
 
-        if (book.getReviews() != null) {
-            response.setReviewCount(book.getReviews().size());
-
-            if (!book.getReviews().isEmpty()) {
-                double average = book.getReviews()
-                        .stream().mapToInt(review -> review.getRating() != null ? review.getRating() : 0)
-                        .average()
-                        .orElse(0.0);
-                response.setAverageRating(Math.round(average * 10) / 10.0);
-            }else {
-                response.setAverageRating(0.0);
-            }
-
-        }else{
-            response.setReviewCount(0);
+        return response;
+    }
+
+    /**
+     * Maps genres by id through the given id to name map, so genre proxies are never initialized.
+     */
+    public BookResponse toResponse(Book book, Map<Long, String> genreNames) {
+        if (book == null) return null;
+
+        return toResponse(book, book.getGenres().stream().map(Genre::getId).toList(), genreNames);
+    }
+
+    /**
+     * Maps the given genre ids rather than Book.genres, for books whose genre links were written directly.
+     */
+    public BookResponse toResponse(Book book, Collection<Long> genreIds, Map<Long, String> genreNames) {
+        if (book == null) return null;
+
+        BookResponse response = toResponseWithoutGenres(book);
+        response.setGenres(
+                genreIds.stream()
+                        .map(id -> genreMapper.toResponse(id, genreNames.get(id)))
+                        .collect(Collectors.toSet())
+        );
+        return response;
+    }
+
+    private BookResponse toResponseWithoutGenres(Book book) {
+        BookResponse response = new BookResponse();
+        response.setId(book.getId());
+        response.setTitle(book.getTitle());
+        response.setAuthor(book.getAuthor());
+        response.setIsbn(book.getIsbn());
+        response.setStatus(book.getStatus());
+        response.setPublicationYear(book.getPublicationYear());
+        response.setVersion(book.getVersion());
+
+        // Stored aggregates plus the deltas of reviews committed since the last flush
+        RatingDelta pending = pendingRatings.pending(book.getId());
+        int reviewCount = (int) (book.getReviewCount() + pending.getCount());
+        long ratingSum = book.getRatingSum() + pending.getSum();
+        response.setReviewCount(reviewCount);
+        if (reviewCount > 0) {
+            double average = (double) ratingSum / reviewCount;
+            response.setAverageRating(Math.round(average * 10) / 10.0);
+        } else {
             response.setAverageRating(0.0);
         }
 
@@ -82,4 +128,14 @@ public class BookMapper {
         book.setPublicationYear(bookRequest.getPublicationYear());
         book.setStatus(bookRequest.getStatus());
     }
+
+    public void applyPatch(BookPatchRequest patch, Book book) {
+        if (patch == null || book == null) return;
+
+        if (patch.getTitle() != null) book.setTitle(patch.getTitle());
+        if (patch.getAuthor() != null) book.setAuthor(patch.getAuthor());
+        if (patch.getIsbn() != null) book.setIsbn(patch.getIsbn());
+        if (patch.getPublicationYear() != null) book.setPublicationYear(patch.getPublicationYear());
+        if (patch.getStatus() != null) book.setStatus(patch.getStatus());
+    }
 }
@@ -0,0 +1,93 @@
+package com.sobolev.spring.bookshelf.util;
+
+import com.sobolev.spring.bookshelf.dto.response.BookResponse;
+import com.sobolev.spring.bookshelf.dto.response.GenreResponse;
+import com.sobolev.spring.bookshelf.dto.response.ReviewResponse;
+import com.sobolev.spring.bookshelf.exception.PreconditionFailedException;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Strong entity tags of the form {@code "<version>-<hash>"}: the entity's optimistic lock version and a 64-bit
+ * FNV-1a hash of the response fields, which is far cheaper than serializing the body to hash it. The hash also
+ * changes with rating aggregates, for If-None-Match; If-Match only compares the version, since aggregates are not
+ * client edits and must not fail one.
+ */
+public final class ETags {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ETags() {
+    }
+
+    public static String of(BookResponse book) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = mix(hash, book.getId());
+        hash = mix(hash, book.getTitle());
+        hash = mix(hash, book.getAuthor());
+        hash = mix(hash, book.getIsbn());
+        hash = mix(hash, book.getPublicationYear());
+        hash = mix(hash, book.getStatus());
+        hash = mix(hash, book.getReviewCount());
+        hash = mix(hash, book.getAverageRating());
+        if (book.getGenres() != null) {
+            GenreResponse[] genres = book.getGenres().toArray(new GenreResponse[0]);
+            Arrays.sort(genres, Comparator.comparing(GenreResponse::getId));
+            for (GenreResponse genre : genres) {
+                hash = mix(hash, genre.getId());
+                hash = mix(hash, genre.getName());
+            }
+        }
+        return tag(book.getVersion(), hash);
+    }
+
+    public static String of(ReviewResponse review) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = mix(hash, review.getId());
+        hash = mix(hash, review.getContent());
+        hash = mix(hash, review.getRating());
+        hash = mix(hash, review.getCreatedAt());
+        hash = mix(hash, review.getBookId());
+        hash = mix(hash, review.getBookTitle());
+        return tag(review.getVersion(), hash);
+    }
+
+    /**
+     * The version an If-Match header asks for, or null when it sets no condition: no header, or {@code *},
+     * which only requires the resource to exist. Weak tags never match under If-Match, and neither does
+     * anything this class did not produce.
+     */
+    public static Long versionOf(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        int dash = tag.indexOf('-');
+        if (tag.startsWith("\"") && tag.endsWith("\"") && dash > 1) {
+            try {
+                return Long.parseLong(tag.substring(1, dash));
+            } catch (NumberFormatException ignored) {
+                // falls through to the mismatch below
+            }
+        }
+        throw new PreconditionFailedException("If-Match " + ifMatch + " does not name a version of this resource");
+    }
+
+    private static String tag(long version, long hash) {
+        return "\"" + version + "-" + Long.toHexString(hash) + "\"";
+    }
+
+    private static long mix(long hash, Object value) {
+        String text = String.valueOf(value);
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        // field separator, so ("ab", "c") and ("a", "bc") hash differently
+        hash ^= 0x1f;
+        hash *= FNV_PRIME;
+        return hash;
+    }
+}
@@ -1,8 +1,10 @@
 package com.sobolev.spring.bookshelf.util;
 
 import com.sobolev.spring.bookshelf.dto.request.GenreRequest;
+import com.sobolev.spring.bookshelf.dto.response.GenreBookCountResponse;
 import com.sobolev.spring.bookshelf.dto.response.GenreResponse;
 import com.sobolev.spring.bookshelf.model.Genre;
+import com.sobolev.spring.bookshelf.repository.projection.GenreBookCountView;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -28,6 +30,21 @@ public class GenreMapper {
         return genreResponse;
     }
 
+    public GenreResponse toResponse(Long id, String name) {
+        GenreResponse genreResponse = new GenreResponse();
+        genreResponse.setId(id);
+        genreResponse.setName(name);
+        return genreResponse;
+    }
+
+    public GenreBookCountResponse toResponse(GenreBookCountView view) {
+        GenreBookCountResponse response = new GenreBookCountResponse();
+        response.setId(view.getId());
+        response.setName(view.getName());
+        response.setBookCount(view.getBookCount());
+        return response;
+    }
+
     public void updateEntityFromRequest(GenreRequest genreRequest, Genre genre) {
         if (genreRequest == null || genre == null)
             return;
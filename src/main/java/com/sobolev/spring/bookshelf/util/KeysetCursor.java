@@ -0,0 +1,106 @@
+package com.sobolev.spring.bookshelf.util;
+
+import com.sobolev.spring.bookshelf.dto.response.CursorPage;
+import com.sobolev.spring.bookshelf.exception.InvalidCursorException;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Opaque seek cursor on {@code (sortKey, id)}. The client gets it as {@code nextCursor}
+ * and passes it back as {@code after}; queries then continue strictly after that row.
+ */
+@Getter
+public final class KeysetCursor {
+
+    /**
+     * Page size when the client passes no {@code limit}; a string so it can be a {@code @RequestParam} default.
+     */
+    public static final String DEFAULT_LIMIT = "20";
+    public static final int MAX_LIMIT = 100;
+
+    private static final char SEPARATOR = ':';
+
+    private final String key;
+    private final long id;
+
+    private KeysetCursor(String key, long id) {
+        this.key = key;
+        this.id = id;
+    }
+
+    public static String encode(Object key, Long id) {
+        String raw = String.valueOf(key) + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Optional<KeysetCursor> decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return Optional.empty();
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(SEPARATOR);
+            if (separator < 0) {
+                throw new InvalidCursorException("Invalid cursor: " + cursor);
+            }
+            return Optional.of(new KeysetCursor(raw.substring(0, separator), Long.parseLong(raw.substring(separator + 1))));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("Invalid cursor: " + cursor);
+        }
+    }
+
+    public int keyAsInt() {
+        try {
+            return Integer.parseInt(key);
+        } catch (NumberFormatException e) {
+            throw new InvalidCursorException("Invalid cursor key: " + key);
+        }
+    }
+
+    public double keyAsDouble() {
+        try {
+            return Double.parseDouble(key);
+        } catch (NumberFormatException e) {
+            throw new InvalidCursorException("Invalid cursor key: " + key);
+        }
+    }
+
+    public LocalDateTime keyAsDateTime() {
+        try {
+            return LocalDateTime.parse(key);
+        } catch (DateTimeParseException e) {
+            throw new InvalidCursorException("Invalid cursor key: " + key);
+        }
+    }
+
+    public static int clampLimit(int limit) {
+        return Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+
+    /**
+     * Builds a page from rows fetched with {@code limit + 1}; the extra row only signals that a next page exists.
+     */
+    public static <E, R> CursorPage<R> page(List<E> rows, int limit,
+                                            Function<E, ?> sortKey, Function<E, Long> id,
+                                            Function<E, R> mapper) {
+        boolean hasNext = rows.size() > limit;
+        List<E> pageRows = hasNext ? rows.subList(0, limit) : rows;
+
+        CursorPage<R> page = new CursorPage<>();
+        page.setContent(pageRows.stream().map(mapper).collect(Collectors.toList()));
+        page.setHasNext(hasNext);
+        if (hasNext) {
+            E last = pageRows.get(pageRows.size() - 1);
+            page.setNextCursor(encode(sortKey.apply(last), id.apply(last)));
+        }
+        return page;
+    }
+}
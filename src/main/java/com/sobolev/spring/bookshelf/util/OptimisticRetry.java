@@ -0,0 +1,59 @@
+package com.sobolev.spring.bookshelf.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import reactor.util.retry.Retry;
+
+import java.util.function.Supplier;
+
+/**
+ * Reruns a transactional write that lost an optimistic version check (or a deadlock) to a concurrent writer.
+ * Must wrap the service proxy, so each attempt is a fresh transaction that rereads the current row; a write
+ * conditioned on If-Match then fails with 412 instead of being retried past the version the client saw.
+ * A write without If-Match is retried against the current row, i.e. the last writer wins; clients that must
+ * not overwrite a concurrent edit send the ETag they read.
+ */
+@Component
+@Slf4j
+public class OptimisticRetry {
+
+    private final int maxAttempts;
+
+    @Autowired
+    public OptimisticRetry(@Value("${bookshelf.writes.max-attempts:3}") int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public <T> T run(Supplier<T> write) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return write.get();
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= maxAttempts) {
+                    log.warn("Concurrent write still conflicting after {} attempts", attempt);
+                    throw e;
+                }
+                log.debug("Concurrent write conflict, retrying (attempt {} of {})", attempt, maxAttempts);
+            }
+        }
+    }
+
+    /**
+     * The same policy for the reactive stack. The write it is applied to must reread the row and open its
+     * transaction on subscription, so that each resubscription is a fresh attempt; the last conflict is
+     * rethrown as is when the attempts run out.
+     */
+    public Retry reactive() {
+        return Retry.max(maxAttempts - 1)
+                .filter(ConcurrencyFailureException.class::isInstance)
+                .doBeforeRetry(signal -> log.debug("Concurrent write conflict, retrying (attempt {} of {})",
+                        signal.totalRetries() + 1, maxAttempts))
+                .onRetryExhaustedThrow((spec, signal) -> {
+                    log.warn("Concurrent write still conflicting after {} attempts", maxAttempts);
+                    return signal.failure();
+                });
+    }
+}
@@ -3,19 +3,12 @@ package com.sobolev.spring.bookshelf.util;
 import com.sobolev.spring.bookshelf.dto.request.ReviewRequest;
 import com.sobolev.spring.bookshelf.dto.response.ReviewResponse;
 import com.sobolev.spring.bookshelf.model.Review;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.sobolev.spring.bookshelf.repository.projection.ReviewView;
 import org.springframework.stereotype.Component;
 
 @Component
 public class ReviewMapper {
 
-    private final BookMapper bookMapper;
-
-    @Autowired
-    public ReviewMapper(BookMapper bookMapper) {
-        this.bookMapper = bookMapper;
-    }
-
     public Review toEntity(ReviewRequest reviewRequest) {
         if (reviewRequest == null)
             return null;
@@ -26,6 +19,10 @@ public class ReviewMapper {
         return review;
     }
 
+    /**
+     * Maps only the id and title of the review's book; the full book is embedded by the
+     * service when it is asked for.
+     */
     public ReviewResponse toResponse(Review review) {
         if (review == null)
             return null;
@@ -35,7 +32,25 @@ public class ReviewMapper {
         reviewResponse.setContent(review.getContent());
         reviewResponse.setId(review.getId());
         reviewResponse.setCreatedAt(review.getCreatedAt());
-        reviewResponse.setBook(bookMapper.toResponse(review.getBook()));
+        reviewResponse.setBookId(review.getBook().getId());
+        reviewResponse.setBookTitle(review.getBook().getTitle());
+        reviewResponse.setVersion(review.getVersion());
+
+        return reviewResponse;
+    }
+
+    public ReviewResponse toResponse(ReviewView review) {
+        if (review == null)
+            return null;
+
+        ReviewResponse reviewResponse = new ReviewResponse();
+        reviewResponse.setRating(review.getRating());
+        reviewResponse.setContent(review.getContent());
+        reviewResponse.setId(review.getId());
+        reviewResponse.setCreatedAt(review.getCreatedAt());
+        reviewResponse.setBookId(review.getBookId());
+        reviewResponse.setBookTitle(review.getBookTitle());
+        reviewResponse.setVersion(review.getVersion());
 
         return reviewResponse;
     }
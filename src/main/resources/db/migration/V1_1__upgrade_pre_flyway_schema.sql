@@ -0,0 +1,49 @@
+-- Databases created before Flyway, from db.sql, are baselined at V1 without running it.
+-- This brings them to the V1 schema; on a database created by V1 every statement is a no-op.
+
+-- SERIAL ids came with integer sequences of the same names advancing by 1. The pooled optimizer
+-- (allocationSize = 50) takes the 50 ids up to each value it draws, so the sequences must advance
+-- by 50 and stand at or above the largest id in use.
+CREATE SEQUENCE IF NOT EXISTS genre_id_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS book_id_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS review_id_seq INCREMENT BY 50;
+ALTER SEQUENCE genre_id_seq AS BIGINT INCREMENT BY 50;
+ALTER SEQUENCE book_id_seq AS BIGINT INCREMENT BY 50;
+ALTER SEQUENCE review_id_seq AS BIGINT INCREMENT BY 50;
+SELECT setval('genre_id_seq', s.max_id) FROM (SELECT MAX(id) AS max_id FROM Genre) s
+	WHERE s.max_id > (SELECT last_value FROM genre_id_seq);
+SELECT setval('book_id_seq', s.max_id) FROM (SELECT MAX(id) AS max_id FROM Book) s
+	WHERE s.max_id > (SELECT last_value FROM book_id_seq);
+SELECT setval('review_id_seq', s.max_id) FROM (SELECT MAX(id) AS max_id FROM Review) s
+	WHERE s.max_id > (SELECT last_value FROM review_id_seq);
+
+-- SERIAL ids were INTEGER; the entities map them as Long.
+DO $$
+DECLARE
+	col RECORD;
+BEGIN
+	FOR col IN
+		SELECT table_name, column_name FROM information_schema.columns
+		WHERE table_schema = current_schema() AND data_type = 'integer'
+			AND (table_name, column_name) IN (('genre', 'id'), ('book', 'id'), ('review', 'id'), ('review', 'book_id'),
+				('book_genre', 'book_id'), ('book_genre', 'genre_id'))
+	LOOP
+		EXECUTE format('ALTER TABLE %I ALTER COLUMN %I TYPE BIGINT', col.table_name, col.column_name);
+	END LOOP;
+END $$;
+
+-- db.sql left the column unquoted, so it was created as createdat.
+DO $$
+BEGIN
+	IF EXISTS (SELECT 1 FROM information_schema.columns
+			WHERE table_schema = current_schema() AND table_name = 'review' AND column_name = 'createdat') THEN
+		ALTER TABLE Review RENAME COLUMN createdat TO created_at;
+	END IF;
+END $$;
+
+-- Rating aggregates arrived with V1; books reviewed before that get theirs from the review table.
+ALTER TABLE Book ADD COLUMN IF NOT EXISTS review_count INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE Book ADD COLUMN IF NOT EXISTS rating_sum BIGINT NOT NULL DEFAULT 0;
+UPDATE Book b SET review_count = s.review_count, rating_sum = s.rating_sum
+FROM (SELECT book_id, COUNT(*) AS review_count, SUM(rating) AS rating_sum FROM Review GROUP BY book_id) s
+WHERE b.id = s.book_id AND (b.review_count <> s.review_count OR b.rating_sum <> s.rating_sum);
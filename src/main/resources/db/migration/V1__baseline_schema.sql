@@ -1,36 +1,41 @@
+CREATE SEQUENCE IF NOT EXISTS genre_id_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS book_id_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS review_id_seq INCREMENT BY 50;
+
 CREATE TABLE Genre(
-	id SERIAL PRIMARY KEY,
+	id BIGINT PRIMARY KEY DEFAULT nextval('genre_id_seq'),
 	name VARCHAR(255) NOT NULL UNIQUE
 );
 
 CREATE TABLE Book (
-	id SERIAL PRIMARY KEY,
+	id BIGINT PRIMARY KEY DEFAULT nextval('book_id_seq'),
 	title VARCHAR(255) NOT NULL,
 	author VARCHAR(255) NOT NULL,
 	publication_year INTEGER CHECK(
-		publication_year > 0 
+		publication_year > 0
 		AND publication_year <= EXTRACT(YEAR FROM CURRENT_DATE) + 1
 	),
 	isbn VARCHAR(13) UNIQUE,
 	status VARCHAR NOT NULL DEFAULT 'AVAILABLE' CHECK(
 		status in ('AVAILABLE', 'READ', 'IN_PROGRESS')
-	)
+	),
+	review_count INTEGER NOT NULL DEFAULT 0,
+	rating_sum BIGINT NOT NULL DEFAULT 0
 );
 
-
 CREATE TABLE Book_Genre(
-	book_id INTEGER NOT NULL,
-	genre_id INTEGER NOT NULL,
+	book_id BIGINT NOT NULL,
+	genre_id BIGINT NOT NULL,
 	PRIMARY KEY(book_id, genre_id),
 	FOREIGN KEY(book_id) REFERENCES Book(id) ON DELETE CASCADE,
 	FOREIGN KEY(genre_id) REFERENCES Genre(id) ON DELETE CASCADE
 );
 
 CREATE TABLE Review(
-	id SERIAL PRIMARY KEY,
+	id BIGINT PRIMARY KEY DEFAULT nextval('review_id_seq'),
 	content TEXT,
 	rating INTEGER NOT NULL CHECK(rating >=1 AND rating <=5),
-	createdAt TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
-	book_id INTEGER NOT NULL,
+	created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+	book_id BIGINT NOT NULL,
 	FOREIGN KEY(book_id) REFERENCES Book(id) ON DELETE CASCADE
-);
\ No newline at end of file
+);
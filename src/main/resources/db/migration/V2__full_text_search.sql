@@ -0,0 +1,14 @@
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+ALTER TABLE Book ADD COLUMN IF NOT EXISTS search_vector TSVECTOR GENERATED ALWAYS AS (
+	setweight(to_tsvector('simple', title), 'A') ||
+	setweight(to_tsvector('simple', author), 'B')
+) STORED;
+
+ALTER TABLE Review ADD COLUMN IF NOT EXISTS search_vector TSVECTOR GENERATED ALWAYS AS (
+	to_tsvector('simple', coalesce(content, ''))
+) STORED;
+
+CREATE INDEX IF NOT EXISTS book_search_vector_idx ON Book USING GIN (search_vector);
+CREATE INDEX IF NOT EXISTS book_title_author_trgm_idx ON Book USING GIN ((title || ' ' || author) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS review_search_vector_idx ON Review USING GIN (search_vector);
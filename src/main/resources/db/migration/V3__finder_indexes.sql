@@ -0,0 +1,35 @@
+-- Built concurrently, so on a live database upgraded through V1_1 writes to book and review go on
+-- while the indexes are built; CONCURRENTLY cannot run in a transaction (see the .sql.conf file).
+-- A failed concurrent build leaves an INVALID index that IF NOT EXISTS would keep: drop it and rerun.
+-- Each index is named after the repository finders it serves.
+-- Orders end with id so keyset pages are range scans on (key, id).
+
+-- findByAuthor*, countByAuthor, findByStatusAndAuthor, /search?author=
+CREATE INDEX CONCURRENTLY IF NOT EXISTS book_author_id_idx ON Book (author, id);
+-- findByAuthorIgnoreCase (upper(author) = upper(?))
+CREATE INDEX CONCURRENTLY IF NOT EXISTS book_upper_author_idx ON Book (upper(author));
+-- findByAuthorContaining, findByAuthorContainingIgnoreCase
+CREATE INDEX CONCURRENTLY IF NOT EXISTS book_author_trgm_idx ON Book USING GIN (author gin_trgm_ops);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS book_upper_author_trgm_idx ON Book USING GIN (upper(author) gin_trgm_ops);
+-- findByTitleStartingWith, findByTitleEndingWith; a bound LIKE pattern rules out a btree
+CREATE INDEX CONCURRENTLY IF NOT EXISTS book_title_trgm_idx ON Book USING GIN (title gin_trgm_ops);
+-- seekByStatus, /search?status=
+CREATE INDEX CONCURRENTLY IF NOT EXISTS book_status_id_idx ON Book (status, id);
+-- findByPublicationYear*, seekByPublicationYear*, /search year range and YEAR sorts
+CREATE INDEX CONCURRENTLY IF NOT EXISTS book_publication_year_id_idx ON Book (publication_year, id);
+-- /search?sort=TITLE
+CREATE INDEX CONCURRENTLY IF NOT EXISTS book_title_id_idx ON Book (title, id);
+-- findTopByReviewCount, findPopularBooks, /search?sort=POPULAR
+CREATE INDEX CONCURRENTLY IF NOT EXISTS book_review_count_id_idx ON Book (review_count, id);
+-- findTopByAverageRating, findBooksWithAverageRatingAbove, /search?minRating=:
+-- only reviewed books can match, and the aggregates are read from the index alone
+CREATE INDEX CONCURRENTLY IF NOT EXISTS book_reviewed_id_idx ON Book (id) INCLUDE (review_count, rating_sum) WHERE review_count > 0;
+
+-- findBooksByGenreId, findBooksByGenreName, seekByGenre*, /search?genreIds=;
+-- the primary key (book_id, genre_id) only serves lookups by book
+CREATE INDEX CONCURRENTLY IF NOT EXISTS book_genre_genre_id_idx ON Book_Genre (genre_id, book_id);
+
+-- findByBookId, countByBookId, findByBookIdOrderByCreatedAtDesc
+CREATE INDEX CONCURRENTLY IF NOT EXISTS review_book_id_created_at_idx ON Review (book_id, created_at DESC, id DESC);
+-- findByBookIdOrderByRatingDesc, findAverageRatingByBookId (index-only)
+CREATE INDEX CONCURRENTLY IF NOT EXISTS review_book_id_rating_idx ON Review (book_id, rating DESC);
@@ -0,0 +1,8 @@
+-- Review feed per book, newest first: seeks on (created_at, id) within one book
+-- use review_book_id_created_at_idx from V3.
+
+-- Review feed per book, best rated first: seeks on (rating, id) within one book.
+-- Replaces (book_id, rating DESC), which left every rating tie to be sorted by id;
+-- the wider index still serves findByBookIdOrderByRatingDesc and findAverageRatingByBookId.
+CREATE INDEX IF NOT EXISTS review_book_id_rating_id_idx ON Review (book_id, rating DESC, id DESC);
+DROP INDEX IF EXISTS review_book_id_rating_idx;
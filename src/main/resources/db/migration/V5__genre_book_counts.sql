@@ -0,0 +1,40 @@
+-- Books per genre, so a genre page reports its size without counting its whole book_genre range.
+-- Kept by statement-level triggers: one upsert per genre touched by a statement, not one per row.
+CREATE TABLE IF NOT EXISTS Genre_Book_Count(
+	genre_id BIGINT PRIMARY KEY REFERENCES Genre(id) ON DELETE CASCADE,
+	book_count BIGINT NOT NULL DEFAULT 0
+);
+
+CREATE OR REPLACE FUNCTION genre_book_count_added() RETURNS trigger AS $$
+BEGIN
+	INSERT INTO genre_book_count (genre_id, book_count)
+	SELECT genre_id, COUNT(*) FROM added GROUP BY genre_id
+	ON CONFLICT (genre_id) DO UPDATE SET book_count = genre_book_count.book_count + EXCLUDED.book_count;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Update only: when a genre is deleted, its counter row is removed by the cascade and must not come back.
+CREATE OR REPLACE FUNCTION genre_book_count_removed() RETURNS trigger AS $$
+BEGIN
+	UPDATE genre_book_count c SET book_count = c.book_count - r.books
+	FROM (SELECT genre_id, COUNT(*) AS books FROM removed GROUP BY genre_id) r
+	WHERE c.genre_id = r.genre_id;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- book_genre rows are only ever inserted and deleted, never updated
+DROP TRIGGER IF EXISTS book_genre_count_insert ON Book_Genre;
+CREATE TRIGGER book_genre_count_insert AFTER INSERT ON Book_Genre
+	REFERENCING NEW TABLE AS added
+	FOR EACH STATEMENT EXECUTE FUNCTION genre_book_count_added();
+
+DROP TRIGGER IF EXISTS book_genre_count_delete ON Book_Genre;
+CREATE TRIGGER book_genre_count_delete AFTER DELETE ON Book_Genre
+	REFERENCING OLD TABLE AS removed
+	FOR EACH STATEMENT EXECUTE FUNCTION genre_book_count_removed();
+
+INSERT INTO genre_book_count (genre_id, book_count)
+SELECT genre_id, COUNT(*) FROM book_genre GROUP BY genre_id
+ON CONFLICT (genre_id) DO UPDATE SET book_count = EXCLUDED.book_count;
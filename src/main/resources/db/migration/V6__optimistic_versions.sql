@@ -0,0 +1,3 @@
+-- Optimistic lock versions. A constant default makes each ADD COLUMN a catalog-only change, no table rewrite.
+ALTER TABLE Book ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE Review ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
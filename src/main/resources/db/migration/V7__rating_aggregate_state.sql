@@ -0,0 +1,10 @@
+-- Review writes buffer their rating deltas in memory until the next flush. clean_shutdown is cleared
+-- on startup and set after the final flush, so finding it false means deltas were lost and the
+-- aggregates are rebuilt from the review table before requests are served.
+CREATE TABLE IF NOT EXISTS Rating_Aggregate_State(
+	id SMALLINT PRIMARY KEY CHECK (id = 1),
+	clean_shutdown BOOLEAN NOT NULL
+);
+
+-- Aggregates were written synchronously up to this version, so an existing database starts clean.
+INSERT INTO Rating_Aggregate_State (id, clean_shutdown) VALUES (1, TRUE) ON CONFLICT (id) DO NOTHING;
@@ -0,0 +1,32 @@
+-- One counter row per genre serializes every transaction that links a book to that genre on its row lock
+-- until commit. Split each counter into shards picked by the writing backend, so concurrent transactions
+-- (always on different backends) mostly update different rows; readers sum the shards of a genre.
+ALTER TABLE Genre_Book_Count ADD COLUMN IF NOT EXISTS shard SMALLINT NOT NULL DEFAULT 0;
+ALTER TABLE Genre_Book_Count DROP CONSTRAINT IF EXISTS genre_book_count_pkey;
+ALTER TABLE Genre_Book_Count ADD PRIMARY KEY (genre_id, shard);
+
+CREATE OR REPLACE FUNCTION genre_book_count_shard() RETURNS SMALLINT AS $$
+	SELECT CAST(pg_backend_pid() % 16 AS SMALLINT);
+$$ LANGUAGE sql STABLE;
+
+CREATE OR REPLACE FUNCTION genre_book_count_added() RETURNS trigger AS $$
+BEGIN
+	INSERT INTO genre_book_count (genre_id, shard, book_count)
+	SELECT genre_id, genre_book_count_shard(), COUNT(*) FROM added GROUP BY genre_id
+	ON CONFLICT (genre_id, shard) DO UPDATE SET book_count = genre_book_count.book_count + EXCLUDED.book_count;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- A shard may go negative; only the sum per genre is meaningful. The join skips genres deleted by the
+-- statement, whose counter rows are removed by the cascade and must not come back.
+CREATE OR REPLACE FUNCTION genre_book_count_removed() RETURNS trigger AS $$
+BEGIN
+	INSERT INTO genre_book_count (genre_id, shard, book_count)
+	SELECT r.genre_id, genre_book_count_shard(), -COUNT(*)
+	FROM removed r JOIN genre g ON g.id = r.genre_id
+	GROUP BY r.genre_id
+	ON CONFLICT (genre_id, shard) DO UPDATE SET book_count = genre_book_count.book_count + EXCLUDED.book_count;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
@@ -0,0 +1,7 @@
+-- Queued reviews are appended to a log file on the node that acknowledged them. Each log records here,
+-- in the transaction of every insert, the sequence number up to which its reviews are in the review
+-- table, so a log replayed after a crash writes exactly the reviews that were not written yet.
+CREATE TABLE IF NOT EXISTS Review_Ingest_Checkpoint(
+	log_id UUID PRIMARY KEY,
+	written_sequence BIGINT NOT NULL
+);
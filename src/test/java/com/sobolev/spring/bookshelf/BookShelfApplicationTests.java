@@ -2,8 +2,10 @@ package com.sobolev.spring.bookshelf;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
 
 @SpringBootTest
+@Import(TestcontainersConfiguration.class)
 class BookShelfApplicationTests {
 
     @Test
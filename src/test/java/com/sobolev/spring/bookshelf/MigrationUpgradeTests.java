@@ -0,0 +1,109 @@
+package com.sobolev.spring.bookshelf;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Migrates a database created from the schema the application had before Flyway, baselined at V1
+ * like {@code spring.flyway.baseline-on-migrate} does, and checks that it ends up with the V1 schema.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class MigrationUpgradeTests {
+
+    private static final String PRE_FLYWAY_SCHEMA = """
+            CREATE TABLE Genre(
+            	id SERIAL PRIMARY KEY,
+            	name VARCHAR(255) NOT NULL UNIQUE
+            );
+            CREATE TABLE Book (
+            	id SERIAL PRIMARY KEY,
+            	title VARCHAR(255) NOT NULL,
+            	author VARCHAR(255) NOT NULL,
+            	publication_year INTEGER,
+            	isbn VARCHAR(13) UNIQUE,
+            	status VARCHAR NOT NULL DEFAULT 'AVAILABLE'
+            );
+            CREATE TABLE Book_Genre(
+            	book_id INTEGER NOT NULL REFERENCES Book(id) ON DELETE CASCADE,
+            	genre_id INTEGER NOT NULL REFERENCES Genre(id) ON DELETE CASCADE,
+            	PRIMARY KEY(book_id, genre_id)
+            );
+            CREATE TABLE Review(
+            	id SERIAL PRIMARY KEY,
+            	content TEXT,
+            	rating INTEGER NOT NULL CHECK(rating >=1 AND rating <=5),
+            	createdAt TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+            	book_id INTEGER NOT NULL REFERENCES Book(id) ON DELETE CASCADE
+            );
+            """;
+
+    private final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    void migrateLegacyDatabase() {
+        postgres.start();
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        jdbcTemplate.execute(PRE_FLYWAY_SCHEMA);
+        jdbcTemplate.execute("INSERT INTO genre (name) VALUES ('Fantasy')");
+        jdbcTemplate.execute("INSERT INTO book (title, author) SELECT 'Book ' || i, 'Author' FROM generate_series(1, 3) AS i");
+        jdbcTemplate.execute("INSERT INTO book_genre (book_id, genre_id) SELECT id, 1 FROM book");
+        jdbcTemplate.execute("INSERT INTO review (rating, book_id) VALUES (5, 1), (3, 1), (4, 2)");
+
+        Flyway.configure()
+                .dataSource(dataSource)
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load()
+                .migrate();
+    }
+
+    @AfterAll
+    void stopDatabase() {
+        postgres.stop();
+    }
+
+    @Test
+    void sequencesAdvanceByAllocationSizePastExistingIds() {
+        for (String table : new String[]{"genre", "book", "review"}) {
+            assertThat(jdbcTemplate.queryForObject(
+                    "SELECT increment_by FROM pg_sequences WHERE sequencename = ?", Long.class, table + "_id_seq"))
+                    .as(table).isEqualTo(50);
+            Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM " + table, Long.class);
+            Long next = jdbcTemplate.queryForObject("SELECT nextval('" + table + "_id_seq')", Long.class);
+            // the pooled optimizer uses ids (next - 50, next]
+            assertThat(next - 50).as(table).isGreaterThanOrEqualTo(maxId);
+        }
+    }
+
+    @Test
+    void idsAreBigintAndColumnsMatchTheEntities() {
+        assertThat(jdbcTemplate.queryForList("SELECT table_name || '.' || column_name FROM information_schema.columns "
+                + "WHERE table_schema = current_schema() AND data_type = 'integer' AND column_name IN ('id', 'book_id', 'genre_id')",
+                String.class)).isEmpty();
+        assertThat(jdbcTemplate.queryForList("SELECT column_name FROM information_schema.columns "
+                + "WHERE table_schema = current_schema() AND table_name = 'review'", String.class))
+                .contains("created_at", "version")
+                .doesNotContain("createdat");
+    }
+
+    @Test
+    void ratingAggregatesAreBackfilledFromReviews() {
+        assertThat(jdbcTemplate.queryForList("SELECT id, review_count, rating_sum FROM book ORDER BY id"))
+                .extracting(row -> row.get("review_count") + "/" + row.get("rating_sum"))
+                .containsExactly("2/8", "1/4", "0/0");
+        assertThat(jdbcTemplate.queryForObject("SELECT SUM(book_count) FROM genre_book_count WHERE genre_id = 1", Long.class))
+                .isEqualTo(3);
+    }
+}
@@ -0,0 +1,176 @@
+package com.sobolev.spring.bookshelf.controller;
+
+import com.sobolev.spring.bookshelf.TestcontainersConfiguration;
+import com.sobolev.spring.bookshelf.dto.request.ReviewRequest;
+import com.sobolev.spring.bookshelf.model.Book;
+import com.sobolev.spring.bookshelf.model.BookStatus;
+import com.sobolev.spring.bookshelf.repository.BookRepository;
+import com.sobolev.spring.bookshelf.service.BookService;
+import com.sobolev.spring.bookshelf.service.ReviewService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * If-Match on PUT and PATCH, and what OptimisticRetry makes of version conflicts. Writes commit, so every
+ * test works on a book of its own.
+ */
+@SpringBootTest(properties = "bookshelf.writes.max-attempts=3")
+@AutoConfigureMockMvc
+@Import(TestcontainersConfiguration.class)
+class ConditionalWriteTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private ReviewService reviewService;
+
+    @MockitoSpyBean
+    private BookService bookService;
+
+    private Long bookId;
+
+    @BeforeEach
+    void saveBook() {
+        Book book = new Book();
+        book.setTitle("Conditional");
+        book.setAuthor("Conditional " + UUID.randomUUID());
+        book.setStatus(BookStatus.AVAILABLE);
+        bookId = bookRepository.save(book).getId();
+    }
+
+    @Test
+    void matchingIfMatchUpdatesAndReturnsTheNextVersion() throws Exception {
+        String tag = bookTag();
+
+        String next = putBook(tag, "Renamed")
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value("Renamed"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        assertThat(tag).startsWith("\"0-");
+        assertThat(next).startsWith("\"1-");
+    }
+
+    @Test
+    void staleIfMatchFailsWith412AndLeavesTheBook() throws Exception {
+        String tag = bookTag();
+        putBook(tag, "First").andExpect(status().isOk());
+
+        putBook(tag, "Second").andExpect(status().isPreconditionFailed());
+        mockMvc.perform(patch("/api/books/{id}", bookId)
+                        .header(HttpHeaders.IF_MATCH, tag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\":\"Third\"}"))
+                .andExpect(status().isPreconditionFailed());
+
+        assertThat(bookRepository.findById(bookId)).get()
+                .extracting(Book::getTitle).isEqualTo("First");
+    }
+
+    @Test
+    void malformedIfMatchFailsWith412() throws Exception {
+        for (String ifMatch : new String[]{"W/\"0-1\"", "0-1", "\"x-1\"", "\"0\""}) {
+            putBook(ifMatch, "Malformed").andExpect(status().isPreconditionFailed());
+        }
+        putBook("*", "Any version").andExpect(status().isOk());
+    }
+
+    @Test
+    void unconditionalWriteOverwritesWhateverIsCurrent() throws Exception {
+        putBook(bookTag(), "First").andExpect(status().isOk());
+
+        putBook(null, "Last writer").andExpect(status().isOk());
+
+        assertThat(bookRepository.findById(bookId)).get()
+                .extracting(Book::getTitle).isEqualTo("Last writer");
+    }
+
+    @Test
+    void conflictIsRetriedInAFreshTransaction() throws Exception {
+        doThrow(new ObjectOptimisticLockingFailureException(Book.class, bookId))
+                .doCallRealMethod()
+                .when(bookService).update(eq(bookId), any(), any());
+
+        putBook(null, "Retried").andExpect(status().isOk());
+
+        verify(bookService, times(2)).update(eq(bookId), any(), any());
+    }
+
+    @Test
+    void conflictAfterTheLastAttemptFailsWith409() throws Exception {
+        doThrow(new ObjectOptimisticLockingFailureException(Book.class, bookId))
+                .when(bookService).update(eq(bookId), any(), any());
+
+        putBook(null, "Never written")
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.status").value(409));
+
+        verify(bookService, times(3)).update(eq(bookId), any(), any());
+    }
+
+    @Test
+    void staleReviewIfMatchFailsWith412() throws Exception {
+        ReviewRequest request = new ReviewRequest();
+        request.setBookId(bookId);
+        request.setRating(3);
+        request.setContent("first");
+        Long reviewId = reviewService.create(request).getId();
+        String tag = mockMvc.perform(get("/api/reviews/{id}", reviewId))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        putReview(reviewId, tag, "second").andExpect(status().isOk());
+        putReview(reviewId, tag, "third").andExpect(status().isPreconditionFailed());
+    }
+
+    private String bookTag() throws Exception {
+        return mockMvc.perform(get("/api/books/{id}", bookId))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    private ResultActions putBook(String ifMatch, String title) throws Exception {
+        var request = put("/api/books/{id}", bookId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"title\":\"" + title + "\",\"author\":\"Conditional\",\"status\":\"READ\"}");
+        if (ifMatch != null) {
+            request.header(HttpHeaders.IF_MATCH, ifMatch);
+        }
+        return mockMvc.perform(request);
+    }
+
+    private ResultActions putReview(Long reviewId, String ifMatch, String content) throws Exception {
+        return mockMvc.perform(put("/api/reviews/{id}", reviewId)
+                .header(HttpHeaders.IF_MATCH, ifMatch)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"bookId\":" + bookId + ",\"rating\":4,\"content\":\"" + content + "\"}"));
+    }
+}
@@ -0,0 +1,117 @@
+package com.sobolev.spring.bookshelf.controller;
+
+import com.sobolev.spring.bookshelf.TestcontainersConfiguration;
+import com.sobolev.spring.bookshelf.exception.QueueFullException;
+import com.sobolev.spring.bookshelf.ingest.ReviewIngestQueue;
+import com.sobolev.spring.bookshelf.model.Book;
+import com.sobolev.spring.bookshelf.model.BookStatus;
+import com.sobolev.spring.bookshelf.repository.BookRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * How {@code POST /api/reviews} picks between the queue and a synchronous insert, and what it answers when
+ * the queue refuses. The queue itself is a mock; {@code ReviewIngestQueueTests} covers it.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@Import(TestcontainersConfiguration.class)
+class ReviewControllerAsyncTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @MockitoBean
+    private ReviewIngestQueue reviewIngestQueue;
+
+    private Long bookId;
+
+    @BeforeEach
+    void enableQueue() {
+        when(reviewIngestQueue.isEnabled()).thenReturn(true);
+        Book book = new Book();
+        book.setTitle("Queued");
+        book.setAuthor("Queued " + UUID.randomUUID());
+        book.setStatus(BookStatus.READ);
+        bookId = bookRepository.save(book).getId();
+    }
+
+    @Test
+    void respondAsyncIsRecognisedAmongOtherPreferencesAndWithParameters() throws Exception {
+        for (String prefer : new String[]{"respond-async", "wait=10, respond-async", "RESPOND-ASYNC",
+                "respond-async; foo=bar", "return=minimal,respond-async;x=1"}) {
+            postReview(prefer, "fine")
+                    .andExpect(status().isAccepted())
+                    .andExpect(header().string("Preference-Applied", "respond-async"));
+        }
+        verify(reviewIngestQueue, times(5)).submit(any());
+    }
+
+    @Test
+    void otherPreferencesAreWrittenSynchronously() throws Exception {
+        for (String prefer : new String[]{null, "return=minimal", "respond-asyncx", "wait=respond-async"}) {
+            postReview(prefer, "fine")
+                    .andExpect(status().isCreated())
+                    .andExpect(header().doesNotExist("Preference-Applied"))
+                    .andExpect(jsonPath("$.bookId").value(bookId));
+        }
+        verify(reviewIngestQueue, never()).submit(any());
+    }
+
+    @Test
+    void fullQueueAnswers503WithRetryAfter() throws Exception {
+        doThrow(new QueueFullException("Review queue is full, retry later")).when(reviewIngestQueue).submit(any());
+
+        postReview("respond-async", "fine")
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+                .andExpect(header().doesNotExist("Preference-Applied"))
+                .andExpect(jsonPath("$.status").value(503));
+    }
+
+    @Test
+    void contentWithNulIsRejectedBeforeItIsQueued() throws Exception {
+        postReview("respond-async", "bad\\u0000byte")
+                .andExpect(status().isBadRequest());
+        postReview(null, "bad\\u0000byte")
+                .andExpect(status().isBadRequest());
+
+        verify(reviewIngestQueue, never()).submit(any());
+    }
+
+    // content is embedded as is, so JSON escapes in it reach the parser
+    private ResultActions postReview(String prefer, String content) throws Exception {
+        var request = post("/api/reviews")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"bookId\":" + bookId + ",\"rating\":4,\"content\":\"" + content + "\"}");
+        if (prefer != null) {
+            request.header("Prefer", prefer);
+        }
+        return mockMvc.perform(request);
+    }
+}
@@ -0,0 +1,137 @@
+package com.sobolev.spring.bookshelf.ingest;
+
+import com.sobolev.spring.bookshelf.TestcontainersConfiguration;
+import com.sobolev.spring.bookshelf.dto.request.ReviewRequest;
+import com.sobolev.spring.bookshelf.model.Book;
+import com.sobolev.spring.bookshelf.model.BookStatus;
+import com.sobolev.spring.bookshelf.rating.PendingRatings;
+import com.sobolev.spring.bookshelf.rating.RatingDelta;
+import com.sobolev.spring.bookshelf.repository.BookRepository;
+import com.sobolev.spring.bookshelf.service.ReviewService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The queue's deltas on their way to the book table: recorded only after the insert commits, and flushed
+ * on shutdown because the queue drains in an earlier phase than RatingFlushJob stops in.
+ */
+@SpringBootTest(properties = {"bookshelf.reviews.async.enabled=true", "bookshelf.ratings.flush-interval=1h"})
+@Import(TestcontainersConfiguration.class)
+class ReviewIngestQueueShutdownTests {
+
+    @TempDir
+    static Path logDir;
+
+    @DynamicPropertySource
+    static void reviewLog(DynamicPropertyRegistry registry) {
+        registry.add("bookshelf.reviews.queue.log-dir", () -> logDir.toString());
+    }
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Autowired
+    private ReviewIngestQueue reviewIngestQueue;
+
+    @Autowired
+    private ReviewIngestLog reviewIngestLog;
+
+    @Autowired
+    private ReviewService reviewService;
+
+    @Autowired
+    private PendingRatings pendingRatings;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void deltaOfABatchIsPendingOnlyOnceItsInsertCommitted() {
+        Long bookId = saveBook();
+        List<AcceptedReview> batch = List.of(accepted(1, bookId, 2), accepted(2, bookId, 4));
+        UUID logId = UUID.randomUUID();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            reviewService.createAll(logId, batch);
+            assertThat(pendingRatings.pending(bookId).isEmpty()).isTrue();
+            status.setRollbackOnly();
+        });
+        assertThat(pendingRatings.pending(bookId).isEmpty()).isTrue();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            reviewService.createAll(logId, batch);
+            assertThat(pendingRatings.pending(bookId).isEmpty()).isTrue();
+        });
+        RatingDelta pending = pendingRatings.pending(bookId);
+        assertThat(pending.getCount()).isEqualTo(2);
+        assertThat(pending.getSum()).isEqualTo(6);
+        assertThat(reviewService.findWrittenSequence(logId)).isEqualTo(2);
+    }
+
+    @Test
+    @DirtiesContext
+    void stopDrainsTheQueueBeforeTheFinalRatingFlush() {
+        Long bookId = saveBook();
+        for (int i = 0; i < 50; i++) {
+            ReviewRequest request = new ReviewRequest();
+            request.setBookId(bookId);
+            request.setRating(i % 5 + 1);
+            request.setContent("queued " + i);
+            reviewIngestQueue.submit(request);
+        }
+
+        context.stop();
+
+        Map<String, Object> reviews = jdbcTemplate.queryForMap(
+                "SELECT COUNT(*) AS review_count, COALESCE(SUM(rating), 0) AS rating_sum FROM review WHERE book_id = ?",
+                bookId);
+        Map<String, Object> stored = jdbcTemplate.queryForMap(
+                "SELECT review_count, rating_sum FROM book WHERE id = ?", bookId);
+        assertThat(((Number) reviews.get("review_count")).longValue()).isEqualTo(50);
+        assertThat(((Number) stored.get("review_count")).longValue()).isEqualTo(50);
+        assertThat(((Number) stored.get("rating_sum")).longValue())
+                .isEqualTo(((Number) reviews.get("rating_sum")).longValue());
+        assertThat(pendingRatings.pending(bookId).isEmpty()).isTrue();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT clean_shutdown FROM rating_aggregate_state WHERE id = 1", Boolean.class)).isTrue();
+        assertThat(reviewService.findWrittenSequence(reviewIngestLog.getId())).isEqualTo(50);
+    }
+
+    private Long saveBook() {
+        Book book = new Book();
+        book.setTitle("Drained");
+        book.setAuthor("Drain " + UUID.randomUUID());
+        book.setStatus(BookStatus.READ);
+        return bookRepository.save(book).getId();
+    }
+
+    private static AcceptedReview accepted(long sequence, Long bookId, int rating) {
+        ReviewRequest request = new ReviewRequest();
+        request.setBookId(bookId);
+        request.setRating(rating);
+        return new AcceptedReview(sequence, request, LocalDateTime.now());
+    }
+}
@@ -0,0 +1,252 @@
+package com.sobolev.spring.bookshelf.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.sobolev.spring.bookshelf.dto.request.ReviewRequest;
+import com.sobolev.spring.bookshelf.exception.QueueFullException;
+import com.sobolev.spring.bookshelf.repository.BookRepository;
+import com.sobolev.spring.bookshelf.service.ReviewService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The queue with its log in a temporary directory and the database mocked. A restart is a new queue and log
+ * over the same directory, with {@code findWrittenSequence} standing in for the database checkpoint.
+ */
+class ReviewIngestQueueTests {
+
+    private static final ObjectMapper OBJECT_MAPPER = JsonMapper.builder().findAndAddModules().build();
+
+    @TempDir
+    Path logDir;
+
+    private final ReviewService reviewService = mock(ReviewService.class);
+    private final BookRepository bookRepository = mock(BookRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // contents of the reviews passed to successful createAll calls
+    private final List<String> written = new CopyOnWriteArrayList<>();
+    private ReviewIngestQueue queue;
+
+    @BeforeEach
+    void knowEveryBook() {
+        when(bookRepository.existsById(anyLong())).thenReturn(true);
+    }
+
+    @AfterEach
+    void stopQueue() {
+        if (queue != null) {
+            queue.stop();
+        }
+    }
+
+    @Test
+    void fullQueueRejectsWithoutAcceptingAndWritesWhatItAccepted() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(reviewService.createAll(any(), anyList())).thenAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return record(invocation.getArgument(1));
+        });
+        queue = start(1, 1, Duration.ofSeconds(30));
+
+        queue.submit(review("first"));
+        assertThat(writing.await(10, TimeUnit.SECONDS)).isTrue();
+        queue.submit(review("queued"));
+
+        assertThatThrownBy(() -> queue.submit(review("rejected"))).isInstanceOf(QueueFullException.class);
+        assertThat(meterRegistry.get("bookshelf.reviews.queue.rejected").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("bookshelf.reviews.queue.accepted").counter().count()).isEqualTo(2);
+
+        release.countDown();
+        queue.stop();
+        assertThat(written).containsExactly("first", "queued");
+        assertThat(outstanding()).isZero();
+        assertThat(logged()).doesNotContain("rejected");
+    }
+
+    @Test
+    void stoppedQueueRejects() {
+        queue = start(10, 10, Duration.ofSeconds(30));
+        queue.stop();
+
+        assertThatThrownBy(() -> queue.submit(review("late"))).isInstanceOf(QueueFullException.class);
+        assertThat(outstanding()).isZero();
+    }
+
+    @Test
+    void missingBookIsRejectedBeforeItIsLogged() throws Exception {
+        when(bookRepository.existsById(2L)).thenReturn(false);
+        queue = start(10, 10, Duration.ofSeconds(30));
+        ReviewRequest request = review("orphan");
+        request.setBookId(2L);
+
+        assertThatThrownBy(() -> queue.submit(request)).hasMessageContaining("Book not found");
+        assertThat(logged()).doesNotContain("orphan");
+    }
+
+    @Test
+    void transientFailureIsRetried() {
+        when(reviewService.createAll(any(), anyList()))
+                .thenThrow(new TransientDataAccessResourceException("connection lost"))
+                .thenAnswer(invocation -> record(invocation.getArgument(1)));
+        queue = start(10, 10, Duration.ofSeconds(30));
+
+        queue.submit(review("retried"));
+        queue.stop();
+
+        assertThat(written).containsExactly("retried");
+        verify(reviewService, atLeast(2)).createAll(any(), anyList());
+    }
+
+    @Test
+    void reviewTheDatabaseRefusesIsKeptAsideAndNotReplayed() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(reviewService.createAll(any(), anyList())).thenAnswer(invocation -> {
+            List<AcceptedReview> batch = invocation.getArgument(1);
+            List<String> contents = batch.stream().map(review -> review.getRequest().getContent()).toList();
+            if (contents.contains("first")) {
+                writing.countDown();
+                release.await();
+            }
+            if (contents.contains("refused")) {
+                throw new DataIntegrityViolationException("violates a constraint");
+            }
+            return record(batch);
+        });
+        queue = start(10, 10, Duration.ofSeconds(30));
+
+        queue.submit(review("first"));
+        assertThat(writing.await(10, TimeUnit.SECONDS)).isTrue();
+        // queued behind the blocked write, so they form one batch
+        for (String content : new String[]{"a", "b", "refused", "c", "d"}) {
+            queue.submit(review(content));
+        }
+        release.countDown();
+        queue.stop();
+
+        assertThat(written).containsExactlyInAnyOrder("first", "a", "b", "c", "d");
+        assertThat(unwritable()).isEqualTo(1);
+        assertThat(Files.readString(logDir.resolve("unwritable.log"))).contains("refused");
+        assertThat(outstanding()).isZero();
+
+        // the checkpoint only covers "first", yet a restart leaves the refused review where it is
+        when(reviewService.findWrittenSequence(any())).thenReturn(1L);
+        written.clear();
+        queue = start(10, 10, Duration.ofSeconds(30));
+        queue.stop();
+        assertThat(written).containsExactlyInAnyOrder("a", "b", "c", "d");
+        assertThat(unwritable()).isEqualTo(1);
+    }
+
+    @Test
+    void reviewsNotWrittenWithinTheDrainTimeoutAreWrittenOnTheNextStart() {
+        when(reviewService.createAll(any(), anyList())).thenThrow(new TransientDataAccessResourceException("database down"));
+        queue = start(10, 2, Duration.ofMillis(300));
+        for (int i = 1; i <= 5; i++) {
+            queue.submit(review("review " + i));
+        }
+
+        long started = System.nanoTime();
+        queue.stop();
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(5));
+        assertThat(written).isEmpty();
+        assertThat(outstanding()).isEqualTo(5);
+
+        // the database is back; it holds the first two, written by a commit the consumer did not see
+        doAnswer(invocation -> record(invocation.getArgument(1))).when(reviewService).createAll(any(), anyList());
+        when(reviewService.findWrittenSequence(any())).thenReturn(2L);
+        queue = start(10, 2, Duration.ofSeconds(30));
+        queue.submit(review("review 6"));
+        queue.stop();
+
+        assertThat(written).containsExactly("review 3", "review 4", "review 5", "review 6");
+    }
+
+    @Test
+    void writtenSegmentsAreDeleted() throws Exception {
+        when(reviewService.createAll(any(), anyList())).thenAnswer(invocation -> record(invocation.getArgument(1)));
+        queue = start(10, 1, Duration.ofSeconds(30), DataSize.ofKilobytes(1));
+        for (int i = 0; i < 20; i++) {
+            queue.submit(review("review " + i));
+        }
+        queue.stop();
+
+        assertThat(written).hasSize(20);
+        // segments hold a few entries each; only the one still appended to is left
+        try (var files = Files.list(logDir)) {
+            assertThat(files.filter(path -> path.getFileName().toString().startsWith("reviews-"))).hasSizeLessThanOrEqualTo(2);
+        }
+    }
+
+    private ReviewIngestQueue start(int capacity, int batchSize, Duration drainTimeout) {
+        return start(capacity, batchSize, drainTimeout, DataSize.ofMegabytes(1));
+    }
+
+    private ReviewIngestQueue start(int capacity, int batchSize, Duration drainTimeout, DataSize segmentSize) {
+        // the meters of the latest queue are the ones asserted on
+        meterRegistry.clear();
+        ReviewIngestQueue started = new ReviewIngestQueue(reviewService, bookRepository,
+                new ReviewIngestLog(OBJECT_MAPPER, logDir, segmentSize), meterRegistry,
+                true, capacity, batchSize, drainTimeout);
+        started.start();
+        return started;
+    }
+
+    private int record(List<AcceptedReview> batch) {
+        batch.forEach(review -> written.add(review.getRequest().getContent()));
+        return batch.size();
+    }
+
+    private String logged() throws Exception {
+        StringBuilder entries = new StringBuilder();
+        try (var files = Files.list(logDir)) {
+            for (Path path : files.filter(path -> path.getFileName().toString().startsWith("reviews-")).toList()) {
+                entries.append(Files.readString(path));
+            }
+        }
+        return entries.toString();
+    }
+
+    private double outstanding() {
+        return meterRegistry.get("bookshelf.reviews.queue.outstanding").gauge().value();
+    }
+
+    private double unwritable() {
+        return meterRegistry.get("bookshelf.reviews.queue.unwritable").gauge().value();
+    }
+
+    private static ReviewRequest review(String content) {
+        ReviewRequest request = new ReviewRequest();
+        request.setBookId(1L);
+        request.setRating(4);
+        request.setContent(content);
+        return request;
+    }
+}
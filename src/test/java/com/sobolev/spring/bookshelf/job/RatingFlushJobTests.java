@@ -0,0 +1,161 @@
+package com.sobolev.spring.bookshelf.job;
+
+import com.sobolev.spring.bookshelf.TestcontainersConfiguration;
+import com.sobolev.spring.bookshelf.dto.request.ReviewRequest;
+import com.sobolev.spring.bookshelf.model.Book;
+import com.sobolev.spring.bookshelf.model.BookStatus;
+import com.sobolev.spring.bookshelf.rating.PendingRatings;
+import com.sobolev.spring.bookshelf.rating.RatingDelta;
+import com.sobolev.spring.bookshelf.repository.BookRepository;
+import com.sobolev.spring.bookshelf.service.RatingAggregateService;
+import com.sobolev.spring.bookshelf.service.ReviewService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Drives the flush job by hand: the scheduled run is pushed out, and lifecycle callbacks are invoked directly.
+ * Reviews commit, so every test works on books of its own.
+ */
+@SpringBootTest(properties = {"bookshelf.ratings.flush-interval=1h", "bookshelf.ratings.flush-batch-size=2"})
+@Import(TestcontainersConfiguration.class)
+class RatingFlushJobTests {
+
+    @Autowired
+    private RatingFlushJob ratingFlushJob;
+
+    @Autowired
+    private PendingRatings pendingRatings;
+
+    @Autowired
+    private ReviewService reviewService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockitoSpyBean
+    private RatingAggregateService ratingAggregateService;
+
+    @AfterEach
+    void leaveCleanState() {
+        ratingFlushJob.run();
+        jdbcTemplate.update("UPDATE rating_aggregate_state SET clean_shutdown = FALSE WHERE id = 1");
+    }
+
+    @Test
+    void flushWritesDeltasInBatchesAndMatchesTheReviews() {
+        List<Long> books = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Long bookId = saveBook();
+            review(bookId, 5);
+            review(bookId, i + 1);
+            books.add(bookId);
+        }
+        for (Long bookId : books) {
+            assertThat(stored(bookId)).containsEntry("review_count", 0);
+            assertStoredPlusPendingMatchesReviews(bookId);
+        }
+
+        ratingFlushJob.run();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<RatingDelta>> batches = ArgumentCaptor.forClass(List.class);
+        verify(ratingAggregateService, atLeastOnce()).flush(batches.capture());
+        List<Long> flushed = new ArrayList<>();
+        for (List<RatingDelta> batch : batches.getAllValues()) {
+            assertThat(batch).hasSizeLessThanOrEqualTo(2);
+            batch.forEach(delta -> flushed.add(delta.getBookId()));
+        }
+        assertThat(flushed).containsAll(books);
+        for (Long bookId : books) {
+            assertThat(pendingRatings.pending(bookId).isEmpty()).isTrue();
+            assertStoredPlusPendingMatchesReviews(bookId);
+        }
+    }
+
+    @Test
+    void cleanShutdownFlagIsSetOnStopAndClearedOnStart() {
+        Long bookId = saveBook();
+        review(bookId, 4);
+
+        ratingFlushJob.stop();
+
+        assertThat(ratingFlushJob.isRunning()).isFalse();
+        assertThat(cleanShutdown()).isTrue();
+        assertThat(stored(bookId)).containsEntry("review_count", 1).containsEntry("rating_sum", 4L);
+
+        ratingFlushJob.start();
+
+        assertThat(ratingFlushJob.isRunning()).isTrue();
+        assertThat(cleanShutdown()).isFalse();
+    }
+
+    @Test
+    void startAfterAnUncleanShutdownRebuildsAggregatesFromReviews() {
+        Long bookId = saveBook();
+        review(bookId, 2);
+        review(bookId, 3);
+        ratingFlushJob.run();
+        // a crash lost a delta that was never flushed
+        jdbcTemplate.update("UPDATE book SET review_count = 1, rating_sum = 2 WHERE id = ?", bookId);
+        ratingFlushJob.stop();
+        jdbcTemplate.update("UPDATE rating_aggregate_state SET clean_shutdown = FALSE WHERE id = 1");
+
+        ratingFlushJob.start();
+
+        assertThat(stored(bookId)).containsEntry("review_count", 2).containsEntry("rating_sum", 5L);
+        assertStoredPlusPendingMatchesReviews(bookId);
+    }
+
+    private void assertStoredPlusPendingMatchesReviews(Long bookId) {
+        Map<String, Object> stored = stored(bookId);
+        RatingDelta pending = pendingRatings.pending(bookId);
+        Map<String, Object> reviews = jdbcTemplate.queryForMap(
+                "SELECT COUNT(*) AS review_count, COALESCE(SUM(rating), 0) AS rating_sum FROM review WHERE book_id = ?",
+                bookId);
+        assertThat(((Number) stored.get("review_count")).longValue() + pending.getCount())
+                .isEqualTo(((Number) reviews.get("review_count")).longValue());
+        assertThat(((Number) stored.get("rating_sum")).longValue() + pending.getSum())
+                .isEqualTo(((Number) reviews.get("rating_sum")).longValue());
+    }
+
+    private Map<String, Object> stored(Long bookId) {
+        return jdbcTemplate.queryForMap("SELECT review_count, rating_sum FROM book WHERE id = ?", bookId);
+    }
+
+    private boolean cleanShutdown() {
+        return jdbcTemplate.queryForObject("SELECT clean_shutdown FROM rating_aggregate_state WHERE id = 1", Boolean.class);
+    }
+
+    private Long saveBook() {
+        Book book = new Book();
+        book.setTitle("Flushed");
+        book.setAuthor("Flush " + UUID.randomUUID());
+        book.setStatus(BookStatus.READ);
+        return bookRepository.save(book).getId();
+    }
+
+    private void review(Long bookId, int rating) {
+        ReviewRequest request = new ReviewRequest();
+        request.setBookId(bookId);
+        request.setRating(rating);
+        reviewService.create(request);
+    }
+}
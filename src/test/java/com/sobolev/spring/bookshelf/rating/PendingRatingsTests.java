@@ -0,0 +1,151 @@
+package com.sobolev.spring.bookshelf.rating;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PendingRatingsTests {
+
+    private static final int BOOKS = 8;
+    private static final int WRITERS = 8;
+    private static final int ADDS_PER_WRITER = 200_000;
+
+    private final PendingRatings pendingRatings = new PendingRatings();
+
+    /**
+     * Writers add while a flusher moves deltas into a simulated book table and retires idle entries, and readers
+     * check that stored plus pending never exceeds what was added. At the end every delta is stored exactly once.
+     */
+    @Test
+    void concurrentAddsAreStoredExactlyOnceAndNeverReadTwice() throws Exception {
+        AtomicLongArray added = new AtomicLongArray(BOOKS);
+        AtomicLongArray stored = new AtomicLongArray(BOOKS);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 2);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < ADDS_PER_WRITER; i++) {
+                        int book = ThreadLocalRandom.current().nextInt(BOOKS);
+                        // announced before the add, so it is an upper bound for readers
+                        added.incrementAndGet(book);
+                        pendingRatings.add(book, 1, 1);
+                    }
+                }));
+            }
+            Future<?> flusher = executor.submit(() -> {
+                while (writing.get()) {
+                    flushOnce(stored);
+                }
+            });
+            Future<?> reader = executor.submit(() -> {
+                while (writing.get()) {
+                    int book = ThreadLocalRandom.current().nextInt(BOOKS);
+                    // like a request: the stored row first, then the pending delta
+                    long total = stored.get(book) + pendingRatings.pending(book).getCount();
+                    assertThat(total).as("stored + pending of book %d", book).isLessThanOrEqualTo(added.get(book));
+                }
+            });
+            for (Future<?> writer : writers) {
+                writer.get(1, TimeUnit.MINUTES);
+            }
+            writing.set(false);
+            flusher.get(1, TimeUnit.MINUTES);
+            reader.get(1, TimeUnit.MINUTES);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        flushOnce(stored);
+        for (int book = 0; book < BOOKS; book++) {
+            assertThat(stored.get(book)).as("stored of book %d", book).isEqualTo(added.get(book));
+            assertThat(pendingRatings.pending(book).isEmpty()).isTrue();
+        }
+        // two idle rounds: the first clears the touched flags
+        pendingRatings.retireIdle();
+        pendingRatings.retireIdle();
+        assertThat(pendingRatings.size()).isZero();
+    }
+
+    @Test
+    void inFlightDeltasAreNotPendingAndComeBackOnRollback() {
+        pendingRatings.add(1, 2, 9);
+        List<RatingDelta> batch = pendingRatings.unflushed();
+
+        pendingRatings.beginFlush(batch);
+        pendingRatings.add(1, 1, 5);
+        assertPending(1, 1, 5);
+
+        pendingRatings.endFlush(batch, false);
+        assertPending(1, 3, 14);
+
+        batch = pendingRatings.unflushed();
+        pendingRatings.beginFlush(batch);
+        pendingRatings.endFlush(batch, true);
+        assertPending(1, 0, 0);
+    }
+
+    @Test
+    void entriesInFlightOrReservedAreNotRetired() {
+        pendingRatings.add(1, 1, 4);
+        pendingRatings.reserve(2);
+        List<RatingDelta> batch = pendingRatings.unflushed();
+        pendingRatings.beginFlush(batch);
+
+        pendingRatings.retireIdle();
+        pendingRatings.retireIdle();
+        assertThat(pendingRatings.bookIdsBetween(1, 2)).containsExactlyInAnyOrder(1L, 2L);
+
+        pendingRatings.endFlush(batch, true);
+        pendingRatings.release(2);
+        pendingRatings.retireIdle();
+        assertThat(pendingRatings.bookIdsBetween(1, 2)).isEmpty();
+    }
+
+    @Test
+    void writeToAnEntryBeingRetiredIsKept() throws Exception {
+        for (int round = 0; round < 10_000; round++) {
+            long book = round;
+            pendingRatings.add(book, 1, 3);
+            List<RatingDelta> batch = pendingRatings.unflushed();
+            pendingRatings.beginFlush(batch);
+            pendingRatings.endFlush(batch, true);
+            pendingRatings.retireIdle();
+
+            Thread writer = new Thread(() -> pendingRatings.add(book, 1, 5));
+            writer.start();
+            pendingRatings.retireIdle();
+            writer.join();
+
+            assertPending(book, 1, 5);
+        }
+    }
+
+    private void flushOnce(AtomicLongArray stored) {
+        List<RatingDelta> batch = pendingRatings.unflushed();
+        pendingRatings.beginFlush(batch);
+        // the UPDATE: once it commits, readers see the delta in the row
+        for (RatingDelta delta : batch) {
+            stored.addAndGet((int) delta.getBookId(), delta.getCount());
+        }
+        pendingRatings.endFlush(batch, true);
+        pendingRatings.retireIdle();
+    }
+
+    private void assertPending(long bookId, long count, long sum) {
+        RatingDelta pending = pendingRatings.pending(bookId);
+        assertThat(pending.getCount()).isEqualTo(count);
+        assertThat(pending.getSum()).isEqualTo(sum);
+    }
+}
@@ -0,0 +1,187 @@
+package com.sobolev.spring.bookshelf.reactive.controller;
+
+import com.sobolev.spring.bookshelf.TestcontainersConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The book endpoints under the {@code reactive} profile, which also shows that the WebFlux context starts.
+ * Writes commit, so every test works on a book of its own, by an author of its own.
+ */
+@SpringBootTest
+@AutoConfigureWebTestClient
+@ActiveProfiles("reactive")
+@Import(TestcontainersConfiguration.class)
+class ReactiveBookControllerTests {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    private String author;
+    private Long bookId;
+
+    @BeforeEach
+    void createBook() {
+        author = "Reactive " + UUID.randomUUID();
+        bookId = webTestClient.post().uri("/api/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(book("Reactive", 1987))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Created.class)
+                .returnResult().getResponseBody().id();
+    }
+
+    @Test
+    void authorEndpointsPageAndCount() {
+        webTestClient.get().uri("/api/books/author/{author}", author)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.content[0].id").isEqualTo(bookId)
+                .jsonPath("$.totalElements").isEqualTo(1);
+
+        webTestClient.get().uri("/api/books/stats/author/{author}", author)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Long.class).isEqualTo(1L);
+    }
+
+    @Test
+    void yearRangeFindsTheBook() {
+        webTestClient.get().uri("/api/books/year-range?startYear=1987&endYear=1987&limit=100")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.content[?(@.id == " + bookId + ")]").exists();
+    }
+
+    @Test
+    void batchGetReturnsFoundBooksAndMissingIds() {
+        long missing = Long.MAX_VALUE;
+
+        webTestClient.post().uri("/api/books/batch-get")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"ids\":[" + missing + "," + bookId + "]}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.books.length()").isEqualTo(1)
+                .jsonPath("$.books[0].id").isEqualTo(bookId)
+                .jsonPath("$.missingIds[0]").isEqualTo(missing);
+    }
+
+    @Test
+    void patchChangesOnlyTheFieldsSent() {
+        webTestClient.patch().uri("/api/books/{id}", bookId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"title\":\"Patched\"}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists(HttpHeaders.ETAG)
+                .expectBody()
+                .jsonPath("$.title").isEqualTo("Patched")
+                .jsonPath("$.author").isEqualTo(author)
+                .jsonPath("$.publicationYear").isEqualTo(1987);
+    }
+
+    @Test
+    void staleIfMatchFailsWith412AndLeavesTheBook() {
+        String tag = bookTag();
+
+        String next = putBook(tag, "First")
+                .expectStatus().isOk()
+                .returnResult(Void.class).getResponseHeaders().getETag();
+        assertThat(tag).startsWith("\"0-");
+        assertThat(next).startsWith("\"1-");
+
+        putBook(tag, "Second").expectStatus().isEqualTo(412);
+        webTestClient.patch().uri("/api/books/{id}", bookId)
+                .header(HttpHeaders.IF_MATCH, tag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"title\":\"Third\"}")
+                .exchange()
+                .expectStatus().isEqualTo(412);
+
+        webTestClient.get().uri("/api/books/{id}", bookId)
+                .exchange()
+                .expectBody().jsonPath("$.title").isEqualTo("First");
+    }
+
+    @Test
+    void unconditionalWriteOverwritesWhateverIsCurrent() {
+        putBook(bookTag(), "First").expectStatus().isOk();
+
+        putBook(null, "Last writer").expectStatus().isOk();
+
+        webTestClient.get().uri("/api/books/{id}", bookId)
+                .exchange()
+                .expectBody().jsonPath("$.title").isEqualTo("Last writer");
+    }
+
+    @Test
+    void staleReviewIfMatchFailsWith412() {
+        Long reviewId = webTestClient.post().uri("/api/reviews")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(review("first"))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Created.class)
+                .returnResult().getResponseBody().id();
+        String tag = webTestClient.get().uri("/api/reviews/{id}", reviewId)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Void.class).getResponseHeaders().getETag();
+
+        putReview(reviewId, tag, "second").expectStatus().isOk();
+        putReview(reviewId, tag, "third").expectStatus().isEqualTo(412);
+    }
+
+    private String bookTag() {
+        return webTestClient.get().uri("/api/books/{id}", bookId)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Void.class).getResponseHeaders().getETag();
+    }
+
+    private WebTestClient.ResponseSpec putBook(String ifMatch, String title) {
+        var request = webTestClient.put().uri("/api/books/{id}", bookId)
+                .contentType(MediaType.APPLICATION_JSON);
+        if (ifMatch != null) {
+            request.header(HttpHeaders.IF_MATCH, ifMatch);
+        }
+        return request.bodyValue(book(title, 1987)).exchange();
+    }
+
+    private WebTestClient.ResponseSpec putReview(Long reviewId, String ifMatch, String content) {
+        return webTestClient.put().uri("/api/reviews/{id}", reviewId)
+                .header(HttpHeaders.IF_MATCH, ifMatch)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(review(content))
+                .exchange();
+    }
+
+    private String book(String title, int publicationYear) {
+        return "{\"title\":\"" + title + "\",\"author\":\"" + author + "\",\"publicationYear\":" + publicationYear
+                + ",\"status\":\"READ\"}";
+    }
+
+    private String review(String content) {
+        return "{\"bookId\":" + bookId + ",\"rating\":4,\"content\":\"" + content + "\"}";
+    }
+
+    private record Created(Long id) {
+    }
+}
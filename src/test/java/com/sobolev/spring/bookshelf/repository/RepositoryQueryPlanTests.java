@@ -0,0 +1,293 @@
+package com.sobolev.spring.bookshelf.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sobolev.spring.bookshelf.dto.request.BookFilter;
+import com.sobolev.spring.bookshelf.dto.request.BookSort;
+import com.sobolev.spring.bookshelf.model.BookStatus;
+import com.sobolev.spring.bookshelf.repository.specification.BookSpecifications;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs each repository query against a fixture large enough for the planner to prefer indexes,
+ * then EXPLAINs every statement it sent with the same bound parameters and fails on a sequential
+ * scan of book, review or book_genre.
+ * <p>
+ * Not covered, because reading most of a table is what they are for: findAll, findByStatus,
+ * countByStatus, findByStatusOrAuthor, findByPublicationYearAfter/Before, findByRating*,
+ * findBooksWithReviewCount, findPopularBooks, findBooksWithAverageRatingAbove,
+ * findTopByAverageRating, seekTopByAverageRating, streamAllBy, and the modifying queries.
+ */
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@Import(RepositoryQueryPlanTests.RecordingDataSourceConfig.class)
+class RepositoryQueryPlanTests {
+
+    private static final Set<String> LARGE_TABLES = Set.of("book", "review", "book_genre");
+
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    static {
+        // started before the per-class instance loads the Spring context
+        postgres.start();
+    }
+
+    @Autowired
+    private BookRepository books;
+
+    @Autowired
+    private ReviewRepository reviews;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private long bookId;
+    private long genreId;
+
+    @BeforeAll
+    void seedFixture() {
+        jdbcTemplate.execute("INSERT INTO genre (name) SELECT 'Genre ' || g FROM generate_series(1, 200) AS g");
+        jdbcTemplate.execute("INSERT INTO book (title, author, publication_year, isbn, status) " +
+                "SELECT 'Book ' || i, 'Author ' || (i % 20000), 1900 + i % 120, lpad(i::text, 13, '0'), " +
+                "       (ARRAY['AVAILABLE', 'READ', 'IN_PROGRESS'])[1 + i % 3] " +
+                "FROM generate_series(1, 200000) AS i");
+        jdbcTemplate.execute("INSERT INTO book_genre (book_id, genre_id) " +
+                "SELECT b.id, g.id FROM book b JOIN genre g ON g.name = 'Genre ' || (1 + b.isbn::int % 200)");
+        jdbcTemplate.execute("INSERT INTO review (content, rating, created_at, book_id) " +
+                "SELECT 'review ' || i, 1 + i % 5, now() - i * interval '1 minute', b.id " +
+                "FROM generate_series(1, 600000) AS i " +
+                "JOIN book b ON b.isbn = lpad((1 + (i % 50000) * 4)::text, 13, '0')");
+        jdbcTemplate.execute("UPDATE book b SET review_count = s.review_count, rating_sum = s.rating_sum " +
+                "FROM (SELECT book_id, COUNT(*) AS review_count, SUM(rating) AS rating_sum FROM review GROUP BY book_id) s " +
+                "WHERE b.id = s.book_id");
+        jdbcTemplate.execute("VACUUM ANALYZE");
+
+        bookId = jdbcTemplate.queryForObject("SELECT id FROM book WHERE isbn = lpad('4241', 13, '0')", Long.class);
+        genreId = jdbcTemplate.queryForObject("SELECT id FROM genre WHERE name = 'Genre 42'", Long.class);
+    }
+
+    Stream<Arguments> queries() {
+        BookFilter authorAndStatus = new BookFilter();
+        authorAndStatus.setAuthor("Author 42");
+        authorAndStatus.setStatus(BookStatus.READ);
+        BookFilter genreByYear = new BookFilter();
+        genreByYear.setGenreIds(Set.of(1L, 2L));
+        genreByYear.setYearFrom(1950);
+        genreByYear.setYearTo(1950);
+        genreByYear.setSort(BookSort.YEAR);
+
+        return Stream.of(
+                query("findByAuthor", () -> books.findByAuthor("Author 42", PageRequest.of(0, 20))),
+                query("findByAuthorIgnoreCase", () -> books.findByAuthorIgnoreCase("author 42")),
+                query("findByAuthorContaining", () -> books.findByAuthorContaining("thor 4242")),
+                query("findByAuthorContainingIgnoreCase", () -> books.findByAuthorContainingIgnoreCase("THOR 4242")),
+                query("findByPublicationYear", () -> books.findByPublicationYear(1950)),
+                query("findByPublicationYearBetween", () -> books.findByPublicationYearBetween(1950, 1950)),
+                query("findBooksByPublicationYearRange", () -> books.findBooksByPublicationYearRange(1950, 1950)),
+                query("findByIsbn", () -> books.findByIsbn("0000000004241")),
+                query("existsByIsbn", () -> books.existsByIsbn("0000000004241")),
+                query("findByStatusAndAuthor", () -> books.findByStatusAndAuthor(BookStatus.READ, "Author 42")),
+                query("findByTitleStartingWith", () -> books.findByTitleStartingWith("Book 12345")),
+                query("findByTitleEndingWith", () -> books.findByTitleEndingWith("12345")),
+                query("countByAuthor", () -> books.countByAuthor("Author 42")),
+                query("findByAuthorOrderByTitleAsc", () -> books.findByAuthorOrderByTitleAsc("Author 42")),
+                query("findByAuthorOrderByPublicationYearDesc", () -> books.findByAuthorOrderByPublicationYearDesc("Author 42")),
+                query("findBooksByGenreId", () -> books.findBooksByGenreId(genreId)),
+                query("findBooksByGenreName", () -> books.findBooksByGenreName("Genre 42")),
+                query("seekAll", () -> books.seekAll(0L, Limit.of(21))),
+                query("seekByStatus", () -> books.seekByStatus(BookStatus.READ, 0L, Limit.of(21))),
+                query("seekByPublicationYear", () -> books.seekByPublicationYear(1950, 0L, Limit.of(21))),
+                query("seekByPublicationYearBetween", () -> books.seekByPublicationYearBetween(1950, 1951, 1950, 0L, Limit.of(21))),
+                query("seekByGenreName", () -> books.seekByGenreName("Genre 42", 0L, Limit.of(21))),
+                query("seekIdsByGenreId", () -> books.seekIdsByGenreId(genreId, bookId, 21)),
+                query("findExistingIds", () -> books.findExistingIds(List.of(bookId, bookId + 50))),
+                query("findByIdIn", () -> books.findByIdIn(List.of(bookId, bookId + 50))),
+                query("findGenreIdsByBookId", () -> books.findGenreIdsByBookId(bookId)),
+                query("findTopByReviewCount", () -> books.findTopByReviewCount(Limit.of(1000))),
+                query("seekTopByReviewCount", () -> books.seekTopByReviewCount(3, Long.MAX_VALUE, Limit.of(21))),
+                query("findMaxId", () -> books.findMaxId()),
+                query("searchFullText", () -> books.searchFullText("\"author 4242\"", BigDecimal.valueOf(1_000_000_000L), Long.MAX_VALUE, 21)),
+                query("searchTrigram", () -> books.searchTrigram("Athor 4242", BigDecimal.valueOf(1_000_000_000L), Long.MAX_VALUE, 21)),
+                query("findBy author and status", () -> books.findBy(BookSpecifications.matching(authorAndStatus),
+                        q -> q.sortBy(BookSort.ID.toSort()).limit(21).all())),
+                query("findBy genres and year", () -> books.findBy(BookSpecifications.matching(genreByYear),
+                        q -> q.sortBy(BookSort.YEAR.toSort()).limit(21).all())),
+                query("findByBookId", () -> reviews.findByBookId(bookId)),
+                query("findViewById", () -> reviews.findViewById(1L)),
+                query("seekViews", () -> reviews.seekViews(0L, Limit.of(21))),
+                query("findViewsByBookId", () -> reviews.findViewsByBookId(bookId)),
+                query("findNewestByBookId", () -> reviews.findNewestByBookId(bookId, Limit.of(21))),
+                query("seekNewestByBookId", () -> reviews.seekNewestByBookId(bookId,
+                        LocalDateTime.now().minusDays(1), Long.MAX_VALUE, Limit.of(21))),
+                query("findBestRatedByBookId", () -> reviews.findBestRatedByBookId(bookId, Limit.of(21))),
+                query("seekBestRatedByBookId", () -> reviews.seekBestRatedByBookId(bookId, 3, Long.MAX_VALUE, Limit.of(21))),
+                query("findByIdGreaterThanOrderByIdAsc", () -> reviews.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(21))),
+                query("findByBookIdOrderByRatingDesc", () -> reviews.findByBookIdOrderByRatingDesc(bookId)),
+                query("findByBookIdOrderByCreatedAtDesc", () -> reviews.findByBookIdOrderByCreatedAtDesc(bookId)),
+                query("countByBookId", () -> reviews.countByBookId(bookId)),
+                query("findAverageRatingByBookId", () -> reviews.findAverageRatingByBookId(bookId))
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("queries")
+    void queryDoesNotScanLargeTables(String name, Runnable query) throws Exception {
+        StatementRecorder.STATEMENTS.clear();
+        query.run();
+        List<RecordedStatement> statements = List.copyOf(StatementRecorder.STATEMENTS);
+        assertThat(statements).as("statements of %s", name).isNotEmpty();
+
+        for (RecordedStatement statement : statements) {
+            JsonNode plan = explain(statement);
+            List<String> scanned = new ArrayList<>();
+            collectSeqScans(plan, scanned);
+            assertThat(scanned)
+                    .as("sequential scans of %s%n%s%n%s", name, statement.sql(), plan.toPrettyString())
+                    .isEmpty();
+        }
+    }
+
+    private JsonNode explain(RecordedStatement statement) throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement explain = connection.prepareStatement("EXPLAIN (FORMAT JSON) " + statement.sql())) {
+            for (Binding binding : statement.bindings()) {
+                binding.method().invoke(explain, binding.args());
+            }
+            try (ResultSet resultSet = explain.executeQuery()) {
+                resultSet.next();
+                return objectMapper.readTree(resultSet.getString(1)).get(0).get("Plan");
+            }
+        }
+    }
+
+    private static void collectSeqScans(JsonNode node, List<String> scanned) {
+        String relation = node.path("Relation Name").asText();
+        if ("Seq Scan".equals(node.path("Node Type").asText()) && LARGE_TABLES.contains(relation)) {
+            scanned.add(relation);
+        }
+        for (JsonNode child : node.path("Plans")) {
+            collectSeqScans(child, scanned);
+        }
+    }
+
+    private static Arguments query(String name, Runnable query) {
+        return Arguments.of(name, query);
+    }
+
+    record Binding(Method method, Object[] args) {
+    }
+
+    record RecordedStatement(String sql, List<Binding> bindings) {
+    }
+
+    /**
+     * Wraps the application DataSource so every executed prepared statement is recorded with its parameters.
+     */
+    static final class StatementRecorder {
+
+        static final List<RecordedStatement> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        private StatementRecorder() {
+        }
+
+        static DataSource wrap(DataSource dataSource) {
+            return proxy(DataSource.class, (p, method, args) -> {
+                Object result = invoke(dataSource, method, args);
+                return result instanceof Connection connection ? wrap(connection) : result;
+            });
+        }
+
+        private static Connection wrap(Connection connection) {
+            return proxy(Connection.class, (p, method, args) -> {
+                Object result = invoke(connection, method, args);
+                if (method.getName().equals("prepareStatement") && result instanceof PreparedStatement statement) {
+                    return wrap(statement, (String) args[0]);
+                }
+                return result;
+            });
+        }
+
+        private static PreparedStatement wrap(PreparedStatement statement, String sql) {
+            Map<Integer, Binding> bindings = new TreeMap<>();
+            return proxy(PreparedStatement.class, (p, method, args) -> {
+                String name = method.getName();
+                if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                    bindings.put(index, new Binding(method, args.clone()));
+                } else if (name.equals("clearParameters")) {
+                    bindings.clear();
+                } else if (name.startsWith("execute") && (args == null || args.length == 0)) {
+                    STATEMENTS.add(new RecordedStatement(sql, List.copyOf(bindings.values())));
+                }
+                return invoke(statement, method, args);
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    @TestConfiguration
+    static class RecordingDataSourceConfig {
+
+        @Bean
+        static BeanPostProcessor recordingDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource ? StatementRecorder.wrap(dataSource) : bean;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.sobolev.spring.bookshelf.service;
+
+import com.sobolev.spring.bookshelf.TestcontainersConfiguration;
+import com.sobolev.spring.bookshelf.dto.response.BookResponse;
+import com.sobolev.spring.bookshelf.dto.response.CursorPage;
+import com.sobolev.spring.bookshelf.model.Book;
+import com.sobolev.spring.bookshelf.model.BookStatus;
+import com.sobolev.spring.bookshelf.repository.BookRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.transaction.AfterTransaction;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Rankings hold two books here, so every listing has to continue from the stored aggregates. The books get
+ * aggregates far above anything other tests store, so they are the top four of both listings.
+ */
+@SpringBootTest(properties = "bookshelf.rankings.size=2")
+@Import(TestcontainersConfiguration.class)
+@Transactional
+class BookRankingServiceTests {
+
+    private static final int BASE = 1_000_000;
+
+    @Autowired
+    private BookRankingService bookRankingService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private final List<Long> ids = new ArrayList<>();
+
+    @BeforeEach
+    void rankFourBooks() {
+        // review counts 4, 3, 2, 1 (times BASE) and averages 9, 8.5, 8.25, 8.125: the same order in both rankings,
+        // above any average real reviews can produce
+        double[] averages = {9, 8.5, 8.25, 8.125};
+        for (int i = 0; i < averages.length; i++) {
+            Book book = new Book();
+            book.setTitle("Ranked " + i);
+            book.setAuthor("Ranking Author");
+            book.setStatus(BookStatus.READ);
+            Long id = bookRepository.save(book).getId();
+            long count = (long) (4 - i) * BASE;
+            entityManager.createNativeQuery("UPDATE book SET review_count = :count, rating_sum = :sum WHERE id = :id")
+                    .setParameter("count", count)
+                    .setParameter("sum", (long) (count * averages[i]))
+                    .setParameter("id", id)
+                    .executeUpdate();
+            ids.add(id);
+        }
+        entityManager.flush();
+        bookRankingService.reconcile();
+    }
+
+    @AfterTransaction
+    void resetRankings() {
+        bookRankingService.reconcile();
+    }
+
+    @Test
+    void pagesContinuePastTheRankingSize() {
+        assertThat(collect((after, limit) -> bookRankingService.findPopular(after, limit))).isEqualTo(ids);
+        assertThat(collect((after, limit) -> bookRankingService.findTopRated(8.1, after, limit))).isEqualTo(ids);
+    }
+
+    @Test
+    void pageIsToppedUpWhenRankedBooksWereDeleted() {
+        bookRepository.deleteById(ids.get(0));
+        bookRepository.flush();
+
+        CursorPage<BookResponse> page = bookRankingService.findPopular(null, 2);
+
+        assertThat(page.getContent()).extracting(BookResponse::getId).containsExactly(ids.get(1), ids.get(2));
+        assertThat(page.isHasNext()).isTrue();
+    }
+
+    @Test
+    void minRatingStopsTheStoredContinuation() {
+        CursorPage<BookResponse> page = bookRankingService.findTopRated(8.2, null, 10);
+
+        assertThat(page.getContent()).extracting(BookResponse::getId).containsExactly(ids.get(0), ids.get(1), ids.get(2));
+        assertThat(page.isHasNext()).isFalse();
+    }
+
+    /**
+     * Pages with one book each through the first four books of a listing.
+     */
+    private List<Long> collect(BiFunction<String, Integer, CursorPage<BookResponse>> listing) {
+        List<Long> seen = new ArrayList<>();
+        String after = null;
+        while (seen.size() < 4) {
+            CursorPage<BookResponse> page = listing.apply(after, 1);
+            assertThat(page.getContent()).hasSize(1);
+            seen.add(page.getContent().get(0).getId());
+            after = page.getNextCursor();
+        }
+        return seen;
+    }
+}
@@ -0,0 +1,262 @@
+package com.sobolev.spring.bookshelf.service;
+
+import com.sobolev.spring.bookshelf.TestcontainersConfiguration;
+import com.sobolev.spring.bookshelf.config.CacheConfig;
+import com.sobolev.spring.bookshelf.dto.request.BookPatchRequest;
+import com.sobolev.spring.bookshelf.dto.request.ReviewRequest;
+import com.sobolev.spring.bookshelf.dto.response.BookBatchResponse;
+import com.sobolev.spring.bookshelf.dto.response.BookResponse;
+import com.sobolev.spring.bookshelf.dto.response.GenreBooksResponse;
+import com.sobolev.spring.bookshelf.ingest.AcceptedReview;
+import com.sobolev.spring.bookshelf.model.Book;
+import com.sobolev.spring.bookshelf.model.BookStatus;
+import com.sobolev.spring.bookshelf.model.Genre;
+import com.sobolev.spring.bookshelf.repository.BookRepository;
+import com.sobolev.spring.bookshelf.repository.GenreRepository;
+import com.sobolev.spring.bookshelf.repository.ReviewRepository;
+import com.sobolev.spring.bookshelf.util.KeysetCursor;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.transaction.AfterTransaction;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(TestcontainersConfiguration.class)
+@Transactional
+class BookServiceStatementCountTests {
+
+    private static final int BOOKS = 30;
+    private static final String AUTHOR = "Statement Count Author";
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private GenreRepository genreRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private GenreService genreService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private ReviewService reviewService;
+
+    @Autowired
+    private BookRankingService bookRankingService;
+
+    @Autowired
+    private ReviewRepository reviewRepository;
+
+    private Genre genre;
+    private Genre other;
+    private final List<Long> bookIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        genre = new Genre();
+        genre.setName("statement-count-genre");
+        genreRepository.save(genre);
+        other = new Genre();
+        other.setName("statement-count-other");
+        genreRepository.save(other);
+
+        for (int i = 0; i < BOOKS; i++) {
+            Book book = new Book();
+            book.setTitle("Book " + i);
+            book.setAuthor(AUTHOR);
+            book.setPublicationYear(1900 + i);
+            book.setStatus(BookStatus.IN_PROGRESS);
+            book.getGenres().add(genre);
+            book.getGenres().add(other);
+            bookIds.add(bookRepository.save(book).getId());
+        }
+        entityManager.flush();
+    }
+
+    /**
+     * Rankings are process-wide; drop the rolled back books a test ranked.
+     */
+    @AfterTransaction
+    void resetRankings() {
+        bookRankingService.reconcile();
+    }
+
+    @Test
+    void listingEndpointsRunFixedNumberOfStatements() {
+        int limit = KeysetCursor.MAX_LIMIT;
+        assertStatements(2, () -> bookService.findByStatus(BookStatus.IN_PROGRESS, null, limit).getContent());
+        assertStatements(2, () -> bookService.findByPublicationYearBetween(1900, 1900 + BOOKS, null, limit).getContent());
+        assertStatements(2, () -> bookService.findBooksByGenreId(genre.getId(), null, limit).getContent());
+        assertStatements(2, () -> bookService.findBooksByGenreName(genre.getName(), null, limit).getContent());
+
+        // the rankings only hold reviewed books, and the page is then loaded in one statement
+        entityManager.createNativeQuery("UPDATE book SET review_count = 1, rating_sum = 4 WHERE author = :author")
+                .setParameter("author", AUTHOR)
+                .executeUpdate();
+        bookRankingService.reconcile();
+        assertStatements(1, () -> bookService.findPopularBooks(null, limit).getContent());
+        assertStatements(1, () -> bookService.findBooksWithAverageRatingAbove(0.0, null, limit).getContent());
+    }
+
+    @Test
+    void entityGraphFindersLoadGenresInSingleStatement() {
+        assertStatements(1, () -> bookRepository.findByStatus(BookStatus.IN_PROGRESS));
+        assertStatements(1, () -> bookRepository.findBooksByGenreId(genre.getId()));
+        assertStatements(1, bookRepository::findPopularBooks);
+    }
+
+    @Test
+    void pagedListingBatchesGenreLoading() {
+        assertStatements(3, () -> bookService.findByAuthor(AUTHOR, PageRequest.of(0, BOOKS)).getContent());
+    }
+
+    @Test
+    void batchGetLoadsAllBooksInSingleStatement() {
+        List<Long> ids = new ArrayList<>(bookIds);
+        ids.add(-1L);
+        assertStatements(1, () -> bookService.findAllById(ids).getBooks());
+
+        BookBatchResponse batch = bookService.findAllById(ids);
+        assertThat(batch.getBooks()).extracting(BookResponse::getId).containsExactlyElementsOf(bookIds);
+        assertThat(batch.getBooks()).allSatisfy(book -> assertThat(book.getGenres()).hasSize(2));
+        assertThat(batch.getMissingIds()).containsExactly(-1L);
+    }
+
+    @Test
+    void genrePageReadsBookCountFromCounterTable() {
+        assertStatements(4, () -> bookService.findGenreWithBooks(genre.getId(), null, KeysetCursor.MAX_LIMIT)
+                .orElseThrow().getBooks().getContent());
+
+        GenreBooksResponse page = bookService.findGenreWithBooks(genre.getId(), null, KeysetCursor.MAX_LIMIT).orElseThrow();
+        assertThat(page.getBookCount()).isEqualTo(BOOKS);
+        assertThat(page.getBooks().getContent()).extracting(BookResponse::getId).containsExactlyElementsOf(bookIds);
+    }
+
+    /**
+     * Typical genre edits through PATCH against the old clear()/addAll() replacement of Book.genres, which has to
+     * load the book's genres first; the diff reads only the genre ids and writes only the pairs that changed plus
+     * one version bump.
+     */
+    @Test
+    void genreEditsWriteOnlyChangedPairs() {
+        Genre third = new Genre();
+        third.setName("statement-count-third");
+        genreRepository.save(third);
+        entityManager.flush();
+        cacheManager.getCache(CacheConfig.GENRE_NAMES).invalidate();
+        genreService.findNamesById();
+
+        Long bookId = bookIds.get(0);
+        Set<Long> current = Set.of(genre.getId(), other.getId());
+        Map<String, Set<Long>> edits = Map.of(
+                "unchanged", current,
+                "add one", Set.of(genre.getId(), other.getId(), third.getId()),
+                "remove one", Set.of(genre.getId()),
+                "swap one", Set.of(genre.getId(), third.getId()));
+        Map<String, Long> budgets = Map.of("unchanged", 2L, "add one", 4L, "remove one", 4L, "swap one", 5L);
+
+        edits.forEach((edit, genreIds) -> {
+            replaceByCollection(bookId, current);
+            long replaced = statementsOf(() -> replaceByCollection(bookId, genreIds));
+
+            replaceByCollection(bookId, current);
+            BookPatchRequest patch = new BookPatchRequest();
+            patch.setGenreIds(genreIds);
+            long diffed = statementsOf(() -> bookService.patch(bookId, patch, null));
+
+            assertThat(diffed).as("%s: diff vs clear()/addAll() (%d statements)", edit, replaced)
+                    .isLessThanOrEqualTo(budgets.get(edit))
+                    .isLessThanOrEqualTo(replaced);
+            assertThat(bookRepository.findGenreIdsByBookId(bookId)).containsExactlyInAnyOrderElementsOf(genreIds);
+        });
+
+        BookPatchRequest titleOnly = new BookPatchRequest();
+        titleOnly.setTitle("Renamed");
+        assertThat(statementsOf(() -> bookService.patch(bookId, titleOnly, null))).isLessThanOrEqualTo(3);
+        assertThat(bookRepository.findGenreIdsByBookId(bookId)).containsExactlyInAnyOrderElementsOf(current);
+    }
+
+    @Test
+    void queuedReviewsAreWrittenWithOneInsertAndTheCheckpoint() {
+        List<AcceptedReview> queued = new ArrayList<>();
+        for (Long bookId : bookIds) {
+            queued.add(accepted(queued.size() + 1, bookId, 4));
+        }
+        queued.add(accepted(queued.size() + 1, bookIds.get(0), 2));
+        queued.add(accepted(queued.size() + 1, Long.MAX_VALUE, 5));
+        UUID logId = UUID.randomUUID();
+
+        int[] written = new int[1];
+        assertThat(statementsOf(() -> written[0] = reviewService.createAll(logId, queued))).isEqualTo(2);
+        assertThat(written[0]).isEqualTo(BOOKS + 1);
+        assertThat(reviewRepository.countByBookId(bookIds.get(0))).isEqualTo(2);
+        assertThat(reviewService.findWrittenSequence(logId)).isEqualTo(queued.size());
+    }
+
+    private static AcceptedReview accepted(long sequence, Long bookId, int rating) {
+        ReviewRequest request = new ReviewRequest();
+        request.setBookId(bookId);
+        request.setRating(rating);
+        request.setContent("queued");
+        return new AcceptedReview(sequence, request, LocalDateTime.now());
+    }
+
+    private void replaceByCollection(Long bookId, Set<Long> genreIds) {
+        Book book = bookRepository.findById(bookId).orElseThrow();
+        book.getGenres().clear();
+        genreIds.forEach(id -> book.getGenres().add(entityManager.getReference(Genre.class, id)));
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private long statementsOf(Runnable call) {
+        entityManager.clear();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        call.run();
+        entityManager.flush();
+
+        return statistics.getPrepareStatementCount();
+    }
+
+    private void assertStatements(long expected, Supplier<List<?>> call) {
+        entityManager.clear();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        call.get();
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,151 @@
+package com.sobolev.spring.bookshelf.service;
+
+import com.sobolev.spring.bookshelf.TestcontainersConfiguration;
+import com.sobolev.spring.bookshelf.dto.request.ImportFormat;
+import com.sobolev.spring.bookshelf.dto.response.ImportError;
+import com.sobolev.spring.bookshelf.dto.response.ImportReport;
+import com.sobolev.spring.bookshelf.job.RatingFlushJob;
+import com.sobolev.spring.bookshelf.model.Book;
+import com.sobolev.spring.bookshelf.model.BookStatus;
+import com.sobolev.spring.bookshelf.model.Genre;
+import com.sobolev.spring.bookshelf.rating.PendingRatings;
+import com.sobolev.spring.bookshelf.rating.RatingDelta;
+import com.sobolev.spring.bookshelf.repository.BookRepository;
+import com.sobolev.spring.bookshelf.repository.GenreRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Imports commit batch by batch, so these tests are not transactional and tag their rows with a unique author.
+ * The scheduled rating flush is pushed out so pending deltas stay observable until a test flushes them.
+ */
+@SpringBootTest(properties = {"bookshelf.import.batch-size=3", "bookshelf.ratings.flush-interval=1h"})
+@Import(TestcontainersConfiguration.class)
+class ImportServiceTests {
+
+    @Autowired
+    private ImportService importService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private GenreRepository genreRepository;
+
+    @Autowired
+    private PendingRatings pendingRatings;
+
+    @Autowired
+    private RatingFlushJob ratingFlushJob;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void importsBooksAcrossBatchesAndReportsBadRows() throws IOException {
+        String author = "Import " + UUID.randomUUID();
+        Genre genre = new Genre();
+        genre.setName("import-" + author);
+        genreRepository.save(genre);
+
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 7; i++) {
+            body.append(bookJson("Book " + i, author, genre.getName())).append('\n');
+        }
+        body.append("{\"author\":\"").append(author).append("\",\"status\":\"READ\"}\n");      // line 8: no title
+        body.append("{not json\n");                                                            // line 9
+        body.append(bookJson("Unknown genre", author, "no-such-genre")).append('\n');         // line 10
+
+        ImportReport report = importService.importBooks(stream(body.toString()), ImportFormat.NDJSON);
+
+        assertThat(report.getImported()).isEqualTo(7);
+        assertThat(report.getFailed()).isEqualTo(3);
+        assertThat(report.getErrors()).extracting(ImportError::getLine).containsExactly(8L, 9L, 10L);
+        assertThat(bookRepository.countByAuthor(author)).isEqualTo(7);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM book_genre WHERE genre_id = ?",
+                Long.class, genre.getId())).isEqualTo(7);
+    }
+
+    @Test
+    void failedBatchIsRetriedRowByRow() throws IOException {
+        String author = "Import " + UUID.randomUUID();
+        String isbn = String.valueOf(ThreadLocalRandom.current().nextLong(1_000_000_000_000L, 10_000_000_000_000L));
+        String body = "title,author,isbn,publicationYear,status,genres\n"
+                + "First," + author + "," + isbn + ",2001,READ,\n"
+                + "Duplicate," + author + "," + isbn + ",2002,READ,\n"
+                + "Third," + author + ",,2003,AVAILABLE,\n";
+
+        ImportReport report = importService.importBooks(stream(body), ImportFormat.CSV);
+
+        assertThat(report.getImported()).isEqualTo(2);
+        assertThat(report.getErrors()).extracting(ImportError::getLine).containsExactly(3L);
+        assertThat(bookRepository.countByAuthor(author)).isEqualTo(2);
+    }
+
+    @Test
+    void importedReviewsUpdateAggregatesOncePerBook() throws IOException {
+        Long first = saveBook();
+        Long second = saveBook();
+        String body = "bookId,rating,content\n"
+                + first + ",5,great\n"
+                + first + ",4,good\n"
+                + second + ",1,bad\n"
+                + first + ",3,fine\n"
+                + second + ",2,meh\n"
+                + "-1,5,no such book\n"      // line 7
+                + first + ",9,out of range\n"  // line 8
+                + first + ",2,\n";
+
+        ImportReport report = importService.importReviews(stream(body), ImportFormat.CSV);
+
+        assertThat(report.getImported()).isEqualTo(6);
+        assertThat(report.getErrors()).extracting(ImportError::getLine).containsExactlyInAnyOrder(7L, 8L);
+        assertPending(first, 4, 14);
+        assertPending(second, 2, 3);
+
+        ratingFlushJob.run();
+
+        assertPending(first, 0, 0);
+        assertThat(jdbcTemplate.queryForMap("SELECT review_count, rating_sum FROM book WHERE id = ?", first))
+                .containsEntry("review_count", 4)
+                .containsEntry("rating_sum", 14L);
+        assertThat(jdbcTemplate.queryForMap("SELECT review_count, rating_sum FROM book WHERE id = ?", second))
+                .containsEntry("review_count", 2)
+                .containsEntry("rating_sum", 3L);
+    }
+
+    private Long saveBook() {
+        Book book = new Book();
+        book.setTitle("Reviewed");
+        book.setAuthor("Import " + UUID.randomUUID());
+        book.setStatus(BookStatus.READ);
+        return bookRepository.save(book).getId();
+    }
+
+    private void assertPending(Long bookId, long count, long sum) {
+        RatingDelta pending = pendingRatings.pending(bookId);
+        assertThat(pending.getCount()).as("pending count of %d", bookId).isEqualTo(count);
+        assertThat(pending.getSum()).as("pending sum of %d", bookId).isEqualTo(sum);
+    }
+
+    private static String bookJson(String title, String author, String genre) {
+        return "{\"title\":\"" + title + "\",\"author\":\"" + author + "\",\"status\":\"READ\","
+                + "\"genres\":[\"" + genre + "\"]}";
+    }
+
+    private static InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}